@@ -1,13 +1,31 @@
 // Abstraction demonstration in Java
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 // Abstract class demonstrating abstraction
 abstract class Vehicle {
+    private static final AtomicInteger nextVehicleId = new AtomicInteger();
+    
     protected String brand;
     protected String model;
+    protected final int vehicleId;
+    private VehicleTelemetry telemetry;
     
     public Vehicle(String brand, String model) {
         this.brand = brand;
         this.model = model;
+        this.vehicleId = nextVehicleId.incrementAndGet();
+    }
+    
+    // Lifecycle events are published to the telemetry stream when one is attached
+    public void attachTelemetry(VehicleTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+    
+    protected void recordEvent(int eventType) {
+        if (telemetry != null) {
+            telemetry.publish(vehicleId, eventType);
+        }
     }
     
     // Abstract methods - must be implemented by concrete classes
@@ -18,7 +36,16 @@ abstract class Vehicle {
     
     // Concrete method that can be used by all vehicles
     public void displayInfo() {
-        System.out.println("Vehicle: " + brand + " " + model);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Vehicle: " + brand + " " + model);
+        }
+    }
+    
+    // Reports a lifecycle step; the line is only built when it will be shown
+    protected void report(String action) {
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + ": " + action);
+        }
     }
     
     // Abstract method for getting vehicle type
@@ -27,6 +54,7 @@ abstract class Vehicle {
     // Getters
     public String getBrand() { return brand; }
     public String getModel() { return model; }
+    public int getVehicleId() { return vehicleId; }
 }
 
 // Concrete implementation of abstract Vehicle class
@@ -42,22 +70,26 @@ class Car extends Vehicle {
     
     @Override
     public void startEngine() {
-        System.out.println(brand + " " + model + ": Turning key, engine starts with a gentle hum");
+        report("Turning key, engine starts with a gentle hum");
+        recordEvent(VehicleTelemetry.ENGINE_STARTED);
     }
     
     @Override
     public void stopEngine() {
-        System.out.println(brand + " " + model + ": Engine stopped, key removed");
+        report("Engine stopped, key removed");
+        recordEvent(VehicleTelemetry.ENGINE_STOPPED);
     }
     
     @Override
     public void accelerate() {
-        System.out.println(brand + " " + model + ": Pressing gas pedal, car accelerates smoothly");
+        report("Pressing gas pedal, car accelerates smoothly");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     @Override
     public void brake() {
-        System.out.println(brand + " " + model + ": Applying brakes, car slows down safely");
+        report("Applying brakes, car slows down safely");
+        recordEvent(VehicleTelemetry.BRAKED);
     }
     
     @Override
@@ -68,8 +100,10 @@ class Car extends Vehicle {
     @Override
     public void displayInfo() {
         super.displayInfo();
-        System.out.println("Type: " + getVehicleType());
-        System.out.println("Doors: " + numberOfDoors + ", Transmission: " + transmission);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Type: " + getVehicleType());
+            OutputSink.info("Doors: " + numberOfDoors + ", Transmission: " + transmission);
+        }
     }
     
     public int getNumberOfDoors() { return numberOfDoors; }
@@ -88,22 +122,26 @@ class Motorcycle extends Vehicle {
     
     @Override
     public void startEngine() {
-        System.out.println(brand + " " + model + ": Kick start or button press, engine roars to life");
+        report("Kick start or button press, engine roars to life");
+        recordEvent(VehicleTelemetry.ENGINE_STARTED);
     }
     
     @Override
     public void stopEngine() {
-        System.out.println(brand + " " + model + ": Engine stopped, motorcycle is quiet");
+        report("Engine stopped, motorcycle is quiet");
+        recordEvent(VehicleTelemetry.ENGINE_STOPPED);
     }
     
     @Override
     public void accelerate() {
-        System.out.println(brand + " " + model + ": Twisting throttle, motorcycle accelerates rapidly");
+        report("Twisting throttle, motorcycle accelerates rapidly");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     @Override
     public void brake() {
-        System.out.println(brand + " " + model + ": Using hand and foot brakes, motorcycle slows down");
+        report("Using hand and foot brakes, motorcycle slows down");
+        recordEvent(VehicleTelemetry.BRAKED);
     }
     
     @Override
@@ -114,8 +152,10 @@ class Motorcycle extends Vehicle {
     @Override
     public void displayInfo() {
         super.displayInfo();
-        System.out.println("Type: " + getVehicleType());
-        System.out.println("Engine: " + engineSize + "cc, ABS: " + (hasABS ? "Yes" : "No"));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Type: " + getVehicleType());
+            OutputSink.info("Engine: " + engineSize + "cc, ABS: " + (hasABS ? "Yes" : "No"));
+        }
     }
     
     public int getEngineSize() { return engineSize; }
@@ -124,8 +164,11 @@ class Motorcycle extends Vehicle {
 
 // Another abstraction example - Payment System
 abstract class PaymentProcessor {
+    private static final MetricsRegistry.Timer EXECUTE_TIMER = MetricsRegistry.timer("payment.executePayment");
+    
     protected double amount;
     protected String currency;
+    protected long transactionId;
     
     public PaymentProcessor(double amount, String currency) {
         this.amount = amount;
@@ -139,30 +182,49 @@ abstract class PaymentProcessor {
     
     // Concrete method with common logic
     public boolean executePayment() {
-        System.out.println("\n--- Starting payment process ---");
-        System.out.println("Amount: " + amount + " " + currency);
-        
-        if (!validatePayment()) {
-            System.out.println("Payment validation failed");
-            return false;
-        }
-        
-        if (!processPayment()) {
-            System.out.println("Payment processing failed");
-            return false;
+        long start = EXECUTE_TIMER.start();
+        try {
+            OutputSink.info("\n--- Starting payment process ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("Amount: " + amount + " " + currency);
+            }
+            
+            if (!validatePayment()) {
+                OutputSink.warn("Payment validation failed");
+                return false;
+            }
+            
+            if (!processPayment()) {
+                OutputSink.warn("Payment processing failed");
+                return false;
+            }
+            
+            sendConfirmation();
+            OutputSink.info("Payment completed successfully");
+            return true;
+        } finally {
+            EXECUTE_TIMER.stop(start);
         }
-        
-        sendConfirmation();
-        System.out.println("Payment completed successfully");
-        return true;
     }
     
     // Abstract method for getting payment method name
     public abstract String getPaymentMethod();
     
+    // Issues a unique transaction ID for this payment and reports it with the
+    // payment method's prefix; the text is only built when it will be shown
+    protected long issueTransactionId(String prefix) {
+        transactionId = TransactionIds.next();
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            StringBuilder line = new StringBuilder(40).append("Transaction ID: ").append(prefix);
+            OutputSink.info(TransactionIds.appendTo(line, transactionId).toString());
+        }
+        return transactionId;
+    }
+    
     // Getters
     public double getAmount() { return amount; }
     public String getCurrency() { return currency; }
+    public long getTransactionId() { return transactionId; }
 }
 
 class CreditCardProcessor extends PaymentProcessor {
@@ -179,32 +241,28 @@ class CreditCardProcessor extends PaymentProcessor {
     
     @Override
     public boolean validatePayment() {
-        System.out.println("Validating credit card details...");
-        // Simplified validation logic
-        if (cardNumber.length() != 16) {
-            System.out.println("Invalid card number length");
-            return false;
-        }
-        if (cvv.length() != 3) {
-            System.out.println("Invalid CVV");
+        OutputSink.debug("Validating credit card details...");
+        int failed = PaymentValidation.CREDIT_CARD.check(cardNumber, cvv);
+        if (failed != PaymentValidation.VALID) {
+            OutputSink.warn(PaymentValidation.CREDIT_CARD.message(failed));
             return false;
         }
-        System.out.println("Credit card validation successful");
+        OutputSink.info("Credit card validation successful");
         return true;
     }
     
     @Override
     public boolean processPayment() {
-        System.out.println("Processing credit card payment...");
-        System.out.println("Contacting bank for authorization...");
-        System.out.println("Payment authorized by bank");
+        OutputSink.info("Processing credit card payment...");
+        OutputSink.info("Contacting bank for authorization...");
+        OutputSink.info("Payment authorized by bank");
         return true;
     }
     
     @Override
     public void sendConfirmation() {
-        System.out.println("Credit card payment confirmation sent");
-        System.out.println("Transaction ID: CC" + System.currentTimeMillis());
+        OutputSink.info("Credit card payment confirmation sent");
+        issueTransactionId("CC");
     }
     
     @Override
@@ -225,31 +283,30 @@ class PayPalProcessor extends PaymentProcessor {
     
     @Override
     public boolean validatePayment() {
-        System.out.println("Validating PayPal credentials...");
-        if (!email.contains("@")) {
-            System.out.println("Invalid email format");
+        OutputSink.debug("Validating PayPal credentials...");
+        int failed = PaymentValidation.PAYPAL.check(email, password);
+        if (failed != PaymentValidation.VALID) {
+            OutputSink.warn(PaymentValidation.PAYPAL.message(failed));
             return false;
         }
-        if (password.length() < 6) {
-            System.out.println("Password too short");
-            return false;
-        }
-        System.out.println("PayPal validation successful");
+        OutputSink.info("PayPal validation successful");
         return true;
     }
     
     @Override
     public boolean processPayment() {
-        System.out.println("Processing PayPal payment...");
-        System.out.println("Connecting to PayPal servers...");
-        System.out.println("Payment processed through PayPal");
+        OutputSink.info("Processing PayPal payment...");
+        OutputSink.info("Connecting to PayPal servers...");
+        OutputSink.info("Payment processed through PayPal");
         return true;
     }
     
     @Override
     public void sendConfirmation() {
-        System.out.println("PayPal payment confirmation sent to " + email);
-        System.out.println("Transaction ID: PP" + System.currentTimeMillis());
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("PayPal payment confirmation sent to " + email);
+        }
+        issueTransactionId("PP");
     }
     
     @Override
@@ -270,31 +327,28 @@ class BankTransferProcessor extends PaymentProcessor {
     
     @Override
     public boolean validatePayment() {
-        System.out.println("Validating bank account details...");
-        if (accountNumber.length() < 8) {
-            System.out.println("Invalid account number");
+        OutputSink.debug("Validating bank account details...");
+        int failed = PaymentValidation.BANK_TRANSFER.check(accountNumber, routingNumber);
+        if (failed != PaymentValidation.VALID) {
+            OutputSink.warn(PaymentValidation.BANK_TRANSFER.message(failed));
             return false;
         }
-        if (routingNumber.length() != 9) {
-            System.out.println("Invalid routing number");
-            return false;
-        }
-        System.out.println("Bank account validation successful");
+        OutputSink.info("Bank account validation successful");
         return true;
     }
     
     @Override
     public boolean processPayment() {
-        System.out.println("Processing bank transfer...");
-        System.out.println("Initiating ACH transfer...");
-        System.out.println("Bank transfer initiated (may take 1-3 business days)");
+        OutputSink.info("Processing bank transfer...");
+        OutputSink.info("Initiating ACH transfer...");
+        OutputSink.info("Bank transfer initiated (may take 1-3 business days)");
         return true;
     }
     
     @Override
     public void sendConfirmation() {
-        System.out.println("Bank transfer confirmation sent");
-        System.out.println("Transaction ID: BT" + System.currentTimeMillis());
+        OutputSink.info("Bank transfer confirmation sent");
+        issueTransactionId("BT");
     }
     
     @Override
@@ -314,6 +368,8 @@ interface DatabaseConnection {
 
 // Abstract base class with interface implementation
 abstract class AbstractDatabaseConnection implements DatabaseConnection {
+    private static final MetricsRegistry.Timer OPERATION_TIMER = MetricsRegistry.timer("database.performOperation");
+    
     protected String host;
     protected int port;
     protected String database;
@@ -326,14 +382,23 @@ abstract class AbstractDatabaseConnection implements DatabaseConnection {
     
     // Concrete method with common functionality
     public void performOperation(String query) {
-        System.out.println("\n--- Database Operation ---");
-        if (connect()) {
-            System.out.println("Connected to database: " + database);
-            if (executeQuery(query)) {
-                java.util.List<java.util.Map<String, Object>> results = fetchResults();
-                System.out.println("Query executed successfully. Results: " + results.size() + " rows");
+        long start = OPERATION_TIMER.start();
+        try {
+            OutputSink.info("\n--- Database Operation ---");
+            if (connect()) {
+                if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                    OutputSink.info("Connected to database: " + database);
+                }
+                if (executeQuery(query)) {
+                    java.util.List<java.util.Map<String, Object>> results = fetchResults();
+                    if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                        OutputSink.info("Query executed successfully. Results: " + results.size() + " rows");
+                    }
+                }
+                disconnect();
             }
-            disconnect();
+        } finally {
+            OPERATION_TIMER.stop(start);
         }
     }
     
@@ -354,19 +419,23 @@ class MySQLConnection extends AbstractDatabaseConnection {
     
     @Override
     public boolean connect() {
-        System.out.println("Connecting to MySQL database at " + host + ":" + port + "...");
-        System.out.println("Using username: " + username);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Connecting to MySQL database at " + host + ":" + port + "...");
+            OutputSink.info("Using username: " + username);
+        }
         return true;
     }
     
     @Override
     public void disconnect() {
-        System.out.println("Disconnected from MySQL database");
+        OutputSink.info("Disconnected from MySQL database");
     }
     
     @Override
     public boolean executeQuery(String query) {
-        System.out.println("Executing MySQL query: " + query);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Executing MySQL query: " + query);
+        }
         return true;
     }
     
@@ -408,19 +477,23 @@ class PostgreSQLConnection extends AbstractDatabaseConnection {
     
     @Override
     public boolean connect() {
-        System.out.println("Connecting to PostgreSQL database at " + host + ":" + port + "...");
-        System.out.println("Using credentials for user: " + username);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Connecting to PostgreSQL database at " + host + ":" + port + "...");
+            OutputSink.info("Using credentials for user: " + username);
+        }
         return true;
     }
     
     @Override
     public void disconnect() {
-        System.out.println("Disconnected from PostgreSQL database");
+        OutputSink.info("Disconnected from PostgreSQL database");
     }
     
     @Override
     public boolean executeQuery(String query) {
-        System.out.println("Executing PostgreSQL query: " + query);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Executing PostgreSQL query: " + query);
+        }
         return true;
     }
     
@@ -454,9 +527,11 @@ public class Abstraction {
     
     // Function demonstrating abstraction usage
     public static void demonstrateVehicleAbstraction(Vehicle[] vehicles) {
-        System.out.println("=== Vehicle Abstraction Demo ===");
+        OutputSink.info("=== Vehicle Abstraction Demo ===");
         for (Vehicle vehicle : vehicles) {
-            System.out.println("\n--- " + vehicle.getVehicleType() + " Demo ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("\n--- " + vehicle.getVehicleType() + " Demo ---");
+            }
             vehicle.displayInfo();
             vehicle.startEngine();
             vehicle.accelerate();
@@ -466,17 +541,21 @@ public class Abstraction {
     }
     
     public static void demonstratePaymentAbstraction(PaymentProcessor[] processors) {
-        System.out.println("\n=== Payment Processing Abstraction Demo ===");
+        OutputSink.info("\n=== Payment Processing Abstraction Demo ===");
         for (PaymentProcessor processor : processors) {
-            System.out.println("\n--- " + processor.getPaymentMethod() + " ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("\n--- " + processor.getPaymentMethod() + " ---");
+            }
             processor.executePayment();
         }
     }
     
     public static void demonstrateDatabaseAbstraction(DatabaseConnection[] connections) {
-        System.out.println("\n=== Database Abstraction Demo ===");
+        OutputSink.info("\n=== Database Abstraction Demo ===");
         for (DatabaseConnection connection : connections) {
-            System.out.println("\n--- " + connection.getConnectionType() + " ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("\n--- " + connection.getConnectionType() + " ---");
+            }
             if (connection instanceof AbstractDatabaseConnection) {
                 ((AbstractDatabaseConnection) connection).performOperation("SELECT * FROM users WHERE active = true");
             }
@@ -494,11 +573,24 @@ public class Abstraction {
             new Motorcycle("Yamaha", "YZF-R3", 321, true)
         };
         
+        // Lifecycle calls are also captured as telemetry events
+        VehicleTelemetry telemetry = new VehicleTelemetry(1024);
+        VehicleTelemetry.Aggregator aggregator = new VehicleTelemetry.Aggregator();
+        telemetry.addHandler(aggregator);
+        telemetry.start();
+        for (Vehicle vehicle : vehicles) {
+            vehicle.attachTelemetry(telemetry);
+        }
+        
         demonstrateVehicleAbstraction(vehicles);
         
+        telemetry.shutdown();
+        System.out.println();
+        aggregator.displaySummary();
+        
         // Demonstrating payment processing abstraction
         PaymentProcessor[] paymentProcessors = {
-            new CreditCardProcessor(299.99, "USD", "1234567890123456", "12/25", "123"),
+            new CreditCardProcessor(299.99, "USD", "4111111111111111", "12/25", "123"),
             new PayPalProcessor(149.50, "USD", "user@example.com", "password123"),
             new BankTransferProcessor(500.00, "USD", "12345678901", "123456789")
         };
@@ -0,0 +1,421 @@
+// Account registry with sharded lookup by account number in Java
+//
+// Finds a BankAccount from Encapsulation.java by its full account number. A
+// number of up to 17 digits packs into one long, with the digit count kept in the
+// top bits so "0042" and "42" stay different accounts. The registry indexes
+// those longs directly, never boxed, so the per-account cost is one slot in two
+// parallel arrays.
+//
+// The key's hash picks one of a fixed number of shards. Each shard is an
+// open-addressing table (linear probing) behind a StampedLock:
+// - Readers take an optimistic stamp, probe without locking and only fall back to
+//   a read lock if a writer got in the way, so concurrent lookups do not contend.
+// - Writers lock just their own shard, and a resize only copies that shard.
+// loadAll() presizes every shard and fills each one under a single lock, so
+// millions of accounts can be loaded without repeated rehashing.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Encapsulation.java AccountRegistry.java && java -Xmx3g -cp bin AccountRegistry [accounts] [threads] [seconds]
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+public class AccountRegistry {
+    public static final int MAX_DIGITS = 17;
+    private static final int LENGTH_SHIFT = 57; // 10^17 < 2^57
+    private static final int MIN_CAPACITY = 16;
+
+    // One shard's arrays; replaced as a whole on resize so a reader never sees
+    // keys and values of different sizes
+    static final class Table {
+        final long[] keys; // 0 marks an empty slot
+        final BankAccount[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new BankAccount[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    static final class Shard {
+        final StampedLock lock = new StampedLock();
+        Table table = new Table(MIN_CAPACITY);
+        int size;
+
+        BankAccount get(long key, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            BankAccount found = find(table, key, hash);
+            if (lock.validate(stamp)) {
+                return found;
+            }
+            stamp = lock.readLock();
+            try {
+                return find(table, key, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Probes at most the whole table, so a torn optimistic read still ends
+        private static BankAccount find(Table table, long key, int hash) {
+            for (int i = 0, slot = hash & table.mask; i <= table.mask; i++, slot = (slot + 1) & table.mask) {
+                long candidate = table.keys[slot];
+                if (candidate == key) {
+                    return table.values[slot];
+                }
+                if (candidate == 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+
+        BankAccount putIfAbsent(long key, int hash, BankAccount account) {
+            long stamp = lock.writeLock();
+            try {
+                if (size + 1 > table.keys.length * 3 / 4) {
+                    table = rehash(table, table.keys.length * 2);
+                }
+                return insert(key, hash, account);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // Called with the write lock held
+        BankAccount insert(long key, int hash, BankAccount account) {
+            Table current = table;
+            int slot = hash & current.mask;
+            while (current.keys[slot] != 0) {
+                if (current.keys[slot] == key) {
+                    return current.values[slot];
+                }
+                slot = (slot + 1) & current.mask;
+            }
+            current.values[slot] = account;
+            current.keys[slot] = key;
+            size++;
+            return null;
+        }
+
+        BankAccount remove(long key, int hash) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                int slot = hash & current.mask;
+                while (current.keys[slot] != key) {
+                    if (current.keys[slot] == 0) {
+                        return null;
+                    }
+                    slot = (slot + 1) & current.mask;
+                }
+                BankAccount removed = current.values[slot];
+                // Shift later entries of the probe run back so no lookup stops early
+                int hole = slot;
+                for (int next = (hole + 1) & current.mask; current.keys[next] != 0; next = (next + 1) & current.mask) {
+                    int home = hashOf(current.keys[next]) & current.mask;
+                    if (((next - home) & current.mask) >= ((next - hole) & current.mask)) {
+                        current.keys[hole] = current.keys[next];
+                        current.values[hole] = current.values[next];
+                        hole = next;
+                    }
+                }
+                current.keys[hole] = 0;
+                current.values[hole] = null;
+                size--;
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private static Table rehash(Table old, int capacity) {
+            Table resized = new Table(capacity);
+            for (int i = 0; i < old.keys.length; i++) {
+                long key = old.keys[i];
+                if (key != 0) {
+                    int slot = hashOf(key) & resized.mask;
+                    while (resized.keys[slot] != 0) {
+                        slot = (slot + 1) & resized.mask;
+                    }
+                    resized.keys[slot] = key;
+                    resized.values[slot] = old.values[i];
+                }
+            }
+            return resized;
+        }
+    }
+
+    private final Shard[] shards;
+    private final int shardShift;
+
+    public AccountRegistry() {
+        this(64);
+    }
+
+    public AccountRegistry(int shardCount) {
+        if (shardCount < 1 || Integer.bitCount(shardCount) != 1) {
+            throw new IllegalArgumentException("Shard count must be a power of two: " + shardCount);
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard();
+        }
+        shardShift = 32 - Integer.numberOfTrailingZeros(shardCount);
+    }
+
+    // ---- Keys ----
+
+    // Packs an account number of 1 to MAX_DIGITS digits into a nonzero long
+    public static long key(CharSequence accountNumber) {
+        int length = accountNumber.length();
+        if (length < 1 || length > MAX_DIGITS) {
+            throw new IllegalArgumentException("Account numbers must have 1 to " + MAX_DIGITS + " digits");
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = accountNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new IllegalArgumentException("Account numbers must have 1 to " + MAX_DIGITS + " digits");
+            }
+            value = value * 10 + digit;
+        }
+        return ((long) length << LENGTH_SHIFT) | value;
+    }
+
+    static int hashOf(long key) {
+        long mixed = key * 0x9e3779b97f4a7c15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    // Top bits choose the shard, low bits the slot within it
+    private Shard shardFor(int hash) {
+        return shards[shardShift == 32 ? 0 : hash >>> shardShift];
+    }
+
+    // ---- Registry operations ----
+
+    // Adds the account unless its number is already taken; returns the account
+    // already registered under that number, or null
+    public BankAccount register(BankAccount account) {
+        long key = key(account.getFullAccountNumber());
+        int hash = hashOf(key);
+        return shardFor(hash).putIfAbsent(key, hash, account);
+    }
+
+    public BankAccount get(CharSequence accountNumber) {
+        long key;
+        try {
+            key = key(accountNumber);
+        } catch (IllegalArgumentException e) {
+            return null; // cannot be registered
+        }
+        return get(key);
+    }
+
+    // Lookup by a key from key(), for callers that keep account numbers packed
+    public BankAccount get(long key) {
+        int hash = hashOf(key);
+        return shardFor(hash).get(key, hash);
+    }
+
+    public BankAccount remove(CharSequence accountNumber) {
+        long key = key(accountNumber);
+        int hash = hashOf(key);
+        return shardFor(hash).remove(key, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                size += shard.size;
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    // Registers many accounts at once. Every shard is sized for its share first,
+    // then filled under one write lock; shards are filled in parallel. Returns how
+    // many accounts were skipped because their number was already registered.
+    public int loadAll(BankAccount[] accounts) {
+        long[] keys = new long[accounts.length];
+        int[] shardOf = new int[accounts.length];
+        int[] perShard = new int[shards.length];
+        for (int i = 0; i < accounts.length; i++) {
+            keys[i] = key(accounts[i].getFullAccountNumber());
+            int hash = hashOf(keys[i]);
+            shardOf[i] = shardShift == 32 ? 0 : hash >>> shardShift;
+            perShard[shardOf[i]]++;
+        }
+        // Group account indexes by shard
+        int[] start = new int[shards.length + 1];
+        for (int s = 0; s < shards.length; s++) {
+            start[s + 1] = start[s] + perShard[s];
+        }
+        int[] order = new int[accounts.length];
+        int[] fill = Arrays.copyOf(start, shards.length);
+        for (int i = 0; i < accounts.length; i++) {
+            order[fill[shardOf[i]]++] = i;
+        }
+
+        LongAdder duplicates = new LongAdder();
+        IntStream.range(0, shards.length).parallel().forEach(s -> {
+            Shard shard = shards[s];
+            long stamp = shard.lock.writeLock();
+            try {
+                int needed = shard.size + perShard[s];
+                if (needed > shard.table.keys.length * 3 / 4) {
+                    shard.table = Shard.rehash(shard.table, capacityFor(needed));
+                }
+                for (int j = start[s]; j < start[s + 1]; j++) {
+                    int i = order[j];
+                    if (shard.insert(keys[i], hashOf(keys[i]), accounts[i]) != null) {
+                        duplicates.increment();
+                    }
+                }
+            } finally {
+                shard.lock.unlockWrite(stamp);
+            }
+        });
+        return duplicates.intValue();
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = MIN_CAPACITY;
+        while (entries > capacity * 3 / 4) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    // Heap used by the index itself, assuming compressed object references:
+    // each table's two arrays plus the table and shard objects
+    public long indexBytes() {
+        long bytes = 16 + 4L * shards.length;
+        for (Shard shard : shards) {
+            long stamp = shard.lock.readLock();
+            try {
+                int capacity = shard.table.keys.length;
+                bytes += 64 + 24 + (16 + 8L * capacity) + (16 + 4L * capacity);
+            } finally {
+                shard.lock.unlockRead(stamp);
+            }
+        }
+        return bytes;
+    }
+
+    // ---- Benchmark ----
+
+    // Bulk-loads accounts, reports index memory per account against a
+    // ConcurrentHashMap keyed by the account number strings, then measures
+    // lookups from several threads in both
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        System.out.println("=== Account Registry ===");
+        System.out.println("Accounts: " + count + ", reader threads: " + threads + ", seconds per run: " + seconds);
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            PinVerifier.HashedPin pin = PinVerifier.hash("1234", 1);
+            BankAccount[] accounts = new BankAccount[count];
+            String[] numbers = new String[count];
+            for (int i = 0; i < count; i++) {
+                // Spread out 12-digit numbers, as issued by a real bank
+                numbers[i] = String.valueOf(100_000_000_000L + i * 7_919L);
+                accounts[i] = new BankAccount(numbers[i], "Holder " + i, 100, pin);
+            }
+
+            long before = usedHeap();
+            long start = System.nanoTime();
+            AccountRegistry registry = new AccountRegistry();
+            int duplicates = registry.loadAll(accounts);
+            long loadNanos = System.nanoTime() - start;
+            long registryHeap = usedHeap() - before;
+            System.out.println("Bulk load: " + String.format("%.1f", loadNanos / 1e6) + " ms (" +
+                               String.format("%.2f", count / (loadNanos / 1e9) / 1e6) + " million accounts/s), " +
+                               "duplicates: " + duplicates);
+
+            before = usedHeap();
+            Map<String, BankAccount> map = new ConcurrentHashMap<>();
+            for (int i = 0; i < count; i++) {
+                map.put(numbers[i], accounts[i]);
+            }
+            long mapHeap = usedHeap() - before;
+            System.out.println("Index memory per account: registry " +
+                               String.format("%.1f", registry.indexBytes() / (double) count) + " bytes (measured " +
+                               String.format("%.1f", registryHeap / (double) count) + "), ConcurrentHashMap<String> " +
+                               String.format("%.1f", mapHeap / (double) count) + " bytes (measured)");
+
+            int missing = 0;
+            for (int i = 0; i < count; i++) {
+                if (registry.get(numbers[i]) != accounts[i]) {
+                    missing++;
+                }
+            }
+            System.out.println("All accounts found: " + (missing == 0) +
+                               ", unknown number found: " + (registry.get("999999999999") != null));
+
+            // Lookups arrive as text, so they use separate String copies whose hash
+            // codes are not already cached
+            String[] queries = new String[count];
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                queries[i] = new String(numbers[i].toCharArray());
+                keys[i] = key(numbers[i]);
+            }
+            lookups("Registry lookups by number", i -> registry.get(queries[i]), count, threads, seconds);
+            lookups("Registry lookups by packed key", i -> registry.get(keys[i]), count, threads, seconds);
+            lookups("ConcurrentHashMap lookups", i -> map.get(queries[i]), count, threads, seconds);
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+
+    private static void lookups(String label, IntFunction<BankAccount> lookup, int count,
+                                int threads, int seconds) throws InterruptedException {
+        LongAdder total = new LongAdder();
+        CountDownLatch done = new CountDownLatch(threads);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long found = 0;
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < 1024; i++) {
+                        if (lookup.apply(random.nextInt(count)) != null) {
+                            found++;
+                        }
+                    }
+                }
+                total.add(found);
+                done.countDown();
+            }, "reader-" + t).start();
+        }
+        done.await();
+        System.out.println(label + ": " + String.format("%.1f", total.sum() / (double) seconds / 1e6) + " million/s");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -30,12 +30,16 @@ class Person {
     
     // Methods
     public void introduce() {
-        System.out.println("Hello, my name is " + name + " and I am " + age + " years old.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Hello, my name is " + name + " and I am " + age + " years old.");
+        }
     }
     
     public void celebrate() {
         age++;
-        System.out.println(name + " is now " + age + " years old! 🎉");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " is now " + age + " years old! 🎉");
+        }
     }
     
     // Getter methods
@@ -93,18 +97,24 @@ class Student {
     }
     
     public void study(String subject) {
-        System.out.println(name + " is studying " + subject);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " is studying " + subject);
+        }
     }
     
     public void takeExam(String examName, double score) {
-        System.out.println(name + " took " + examName + " and scored " + score);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " took " + examName + " and scored " + score);
+        }
         updateGPA(score);
     }
     
     private void updateGPA(double newScore) {
         // Simplified GPA calculation
         gpa = (gpa + (newScore / 25.0)) / 2; // Convert score to 4.0 scale
-        System.out.println(name + "'s new GPA: " + String.format("%.2f", gpa));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + "'s new GPA: " + String.format("%.2f", gpa));
+        }
     }
     
     // Getters
@@ -5,20 +5,31 @@ import java.util.List;
 
 // Class demonstrating encapsulation principles
 class BankAccount {
+    private static final MetricsRegistry.Timer DEPOSIT_TIMER = MetricsRegistry.timer("bank.deposit");
+    private static final MetricsRegistry.Timer WITHDRAW_TIMER = MetricsRegistry.timer("bank.withdraw");
+    private static final int HISTORY_PAGE_SIZE = 256;
+    
     // Private instance variables (encapsulated data)
     private String accountNumber;
     private String holderName;
     private double balance;
-    private String pin;
-    private List<String> transactionHistory;
+    private final PinVerifier pinVerifier; // holds only a salted hash of the PIN
+    private final TransactionHistory transactionHistory = new TransactionHistory();
+    private WriteAheadLog.Journal journal; // null unless registered with a WriteAheadLog
+    private int lastAccrualDay; // epoch day of the last InterestBatch run applied, 0 if none
     
     // Constructor
     public BankAccount(String accountNumber, String holderName, double initialBalance, String pin) {
+        this(accountNumber, holderName, initialBalance, PinVerifier.hash(pin));
+    }
+    
+    // Takes a PIN that is already hashed, as read back from a log, or shared by
+    // bulk runs that open many accounts and would otherwise hash the same PIN each time
+    BankAccount(String accountNumber, String holderName, double initialBalance, PinVerifier.HashedPin pin) {
         this.accountNumber = accountNumber;
         this.holderName = holderName;
         this.balance = initialBalance;
-        this.pin = pin;
-        this.transactionHistory = new ArrayList<>();
+        this.pinVerifier = new PinVerifier(pin);
         addTransaction("Account opened with initial balance: $" + initialBalance);
     }
     
@@ -28,104 +39,284 @@ class BankAccount {
         return accountNumber.substring(0, 4) + "****";
     }
     
+    // Unmasked number, for bookkeeping in this package such as AccountRegistry
+    String getFullAccountNumber() {
+        return accountNumber;
+    }
+    
     public String getHolderName() {
         return holderName;
     }
     
-    public double getBalance() {
+    public synchronized double getBalance() {
         return balance;
     }
     
     // Public methods that provide controlled access to private data
-    public boolean deposit(double amount) {
-        if (amount > 0) {
-            balance += amount;
-            String transaction = "Deposited: $" + String.format("%.2f", amount) + 
-                               ". New balance: $" + String.format("%.2f", balance);
-            System.out.println(transaction);
-            addTransaction(transaction);
+    public synchronized boolean deposit(double amount) {
+        long start = DEPOSIT_TIMER.start();
+        try {
+            if (amount > 0) {
+                if (journal != null) {
+                    journal.deposited(amount);
+                }
+                balance += amount;
+                recordTransaction("Deposited: $", amount, ". New balance: $", balance);
+                return true;
+            } else {
+                OutputSink.warn("Invalid deposit amount. Must be positive.");
+                return false;
+            }
+        } finally {
+            DEPOSIT_TIMER.stop(start);
+        }
+    }
+    
+    public synchronized boolean withdraw(double amount, String inputPin) {
+        long start = WITHDRAW_TIMER.start();
+        try {
+            if (checkPin(inputPin, "Invalid PIN. Transaction denied.",
+                         "Failed withdrawal attempt - Invalid PIN") != PinVerifier.Result.MATCHED) {
+                return false;
+            }
+            
+            if (amount <= 0) {
+                OutputSink.warn("Invalid withdrawal amount. Must be positive.");
+                return false;
+            }
+            
+            if (amount > balance) {
+                if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                    OutputSink.warn("Insufficient funds. Current balance: $" + String.format("%.2f", balance));
+                }
+                addTransaction("Failed withdrawal attempt - Insufficient funds");
+                return false;
+            }
+            
+            if (journal != null) {
+                journal.withdrew(amount);
+            }
+            balance -= amount;
+            recordTransaction("Withdrew: $", amount, ". New balance: $", balance);
             return true;
-        } else {
-            System.out.println("Invalid deposit amount. Must be positive.");
-            return false;
+        } finally {
+            WITHDRAW_TIMER.stop(start);
         }
     }
     
-    public boolean withdraw(double amount, String inputPin) {
-        if (!validatePin(inputPin)) {
-            System.out.println("Invalid PIN. Transaction denied.");
-            addTransaction("Failed withdrawal attempt - Invalid PIN");
-            return false;
+    // Moves money to another account in one step. TransferEngine calls this with
+    // both accounts' locks held, taken in its global lock order.
+    TransferEngine.Result transferTo(BankAccount target, double amount, String inputPin) {
+        PinVerifier.Result pin = checkPin(inputPin, "Invalid PIN. Transfer denied.",
+                                          "Failed transfer attempt - Invalid PIN");
+        if (pin != PinVerifier.Result.MATCHED) {
+            return pin == PinVerifier.Result.LOCKED_OUT ? TransferEngine.Result.LOCKED_OUT
+                                                        : TransferEngine.Result.INVALID_PIN;
         }
         
         if (amount <= 0) {
-            System.out.println("Invalid withdrawal amount. Must be positive.");
-            return false;
+            OutputSink.warn("Invalid transfer amount. Must be positive.");
+            return TransferEngine.Result.INVALID_AMOUNT;
         }
         
         if (amount > balance) {
-            System.out.println("Insufficient funds. Current balance: $" + String.format("%.2f", balance));
-            addTransaction("Failed withdrawal attempt - Insufficient funds");
-            return false;
+            if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                OutputSink.warn("Insufficient funds. Current balance: $" + String.format("%.2f", balance));
+            }
+            addTransaction("Failed transfer attempt - Insufficient funds");
+            return TransferEngine.Result.INSUFFICIENT_FUNDS;
         }
         
+        WriteAheadLog.Journal.transferred(journal, target.journal, amount);
         balance -= amount;
-        String transaction = "Withdrew: $" + String.format("%.2f", amount) + 
-                           ". New balance: $" + String.format("%.2f", balance);
-        System.out.println(transaction);
-        addTransaction(transaction);
-        return true;
+        target.balance += amount;
+        recordTransaction("Transferred: $", amount, " to " + target.getAccountNumber() + ". New balance: $", balance);
+        target.transactionHistory.append("Received: $", amount, " from " + getAccountNumber() + ". New balance: $",
+                                         target.balance);
+        return TransferEngine.Result.COMPLETED;
     }
     
     // Private method (internal logic, not accessible from outside)
-    private boolean validatePin(String inputPin) {
-        return pin.equals(inputPin);
+    // A wrong PIN gets deniedMessage and, if given, failedEntry in the history.
+    // While the account is locked out after repeated failures, attempts are
+    // refused without being checked or recorded.
+    private PinVerifier.Result checkPin(String inputPin, String deniedMessage, String failedEntry) {
+        PinVerifier.Result result = pinVerifier.verify(inputPin);
+        if (result == PinVerifier.Result.LOCKED_OUT) {
+            long seconds = (pinVerifier.getLockoutRemainingMillis() + 999) / 1000;
+            if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                OutputSink.warn("Too many failed PIN attempts. Try again in " + seconds + " seconds.");
+            }
+        } else if (result == PinVerifier.Result.MISMATCHED) {
+            OutputSink.warn(deniedMessage);
+            if (failedEntry != null) {
+                addTransaction(failedEntry);
+            }
+        }
+        return result;
     }
     
     // Private helper method
     private void addTransaction(String transaction) {
-        transactionHistory.add(java.time.LocalDateTime.now() + ": " + transaction);
+        transactionHistory.append(transaction);
+    }
+    
+    // Reports a completed transaction and adds it to the history; its amounts are
+    // only formatted if the report is shown or the history is read
+    private void recordTransaction(String before, double amount, String between, double newBalance) {
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(TransactionHistory.format(before, amount, between, newBalance));
+        }
+        transactionHistory.append(before, amount, between, newBalance);
     }
     
     // Method to change PIN (with validation)
-    public boolean changePin(String oldPin, String newPin) {
-        if (!validatePin(oldPin)) {
-            System.out.println("Current PIN is incorrect.");
-            addTransaction("Failed PIN change attempt");
+    public synchronized boolean changePin(String oldPin, String newPin) {
+        if (checkPin(oldPin, "Current PIN is incorrect.", "Failed PIN change attempt") != PinVerifier.Result.MATCHED) {
             return false;
         }
         
         if (newPin.length() < 4) {
-            System.out.println("New PIN must be at least 4 digits.");
+            OutputSink.warn("New PIN must be at least 4 digits.");
             return false;
         }
         
-        pin = newPin;
-        System.out.println("PIN changed successfully.");
+        PinVerifier.HashedPin hashed = PinVerifier.hash(newPin);
+        if (journal != null) {
+            journal.pinChanged(hashed.encode());
+        }
+        pinVerifier.change(hashed);
+        OutputSink.info("PIN changed successfully.");
         addTransaction("PIN changed successfully");
         return true;
     }
     
+    // Starts logging this account to a write-ahead log. A new account's current
+    // state becomes its first record; an account rebuilt from the log has none.
+    synchronized void attachJournal(WriteAheadLog log, boolean recovered) {
+        if (journal != null) {
+            throw new IllegalStateException("Account is already logged");
+        }
+        WriteAheadLog.Journal attached = log.newJournal(this, accountNumber);
+        if (!recovered) {
+            attached.opened(holderName, balance, pinVerifier.getHashedPin().encode());
+            if (lastAccrualDay != 0) {
+                attached.accrued(0, lastAccrualDay);
+            }
+        }
+        journal = attached;
+    }
+    
+    // Writes this account into a log snapshot. Holding the account's lock keeps
+    // the state in step with the journal's last LSN.
+    synchronized void writeSnapshot(java.io.DataOutput out) throws java.io.IOException {
+        if (journal != null) {
+            WriteAheadLog.writeAccount(out, accountNumber, holderName, balance, pinVerifier.getHashedPin().encode(),
+                                       lastAccrualDay, journal.lastLsn);
+        }
+    }
+    
+    // The balance a day's interest and fees would be worked out from, or NaN if
+    // that day has already been applied
+    synchronized double balanceForAccrual(int epochDay) {
+        return epochDay <= lastAccrualDay ? Double.NaN : balance;
+    }
+    
+    // Works out a day's interest and fees from the balance and applies them under
+    // one lock, at most once per day. Puts the interest and fee in cents into
+    // applied[0] and applied[1]. Returns -1 if the day was already applied, or
+    // else the LSN of the ACCRUED record (0 if the account is not logged), which
+    // is not yet on disk: pass it to awaitJournal(). There is no output and no
+    // history entry: InterestBatch keeps its own compact journal.
+    synchronized long accrue(int epochDay, InterestBatch.Policy policy, long[] applied) {
+        if (epochDay <= lastAccrualDay) {
+            return -1;
+        }
+        long interest = policy.interestCents(balance);
+        long fee = policy.feeCents(balance, interest);
+        applied[0] = interest;
+        applied[1] = fee;
+        return applyAccrual(epochDay, (interest - fee) / 100.0);
+    }
+    
+    // Re-applies a net change InterestBatch journalled earlier; returns as above
+    synchronized long accrue(int epochDay, double change) {
+        if (epochDay <= lastAccrualDay) {
+            return -1;
+        }
+        return applyAccrual(epochDay, change);
+    }
+    
+    private long applyAccrual(int epochDay, double change) {
+        long lsn = journal != null ? journal.accruedWithoutWaiting(change, epochDay) : 0;
+        balance += change;
+        lastAccrualDay = epochDay;
+        return lsn;
+    }
+    
+    // Waits until the record accrue() returned the LSN of has reached disk
+    void awaitJournal(long lsn) {
+        WriteAheadLog.Journal attached;
+        synchronized (this) {
+            attached = journal;
+        }
+        if (attached != null) {
+            attached.awaitDurable(lsn);
+        }
+    }
+    
+    // For an account rebuilt from a write-ahead log
+    synchronized void restoreAccrualDay(int epochDay) {
+        lastAccrualDay = epochDay;
+    }
+    
     // Method to get account summary (controlled information display)
     public void displayAccountSummary() {
-        System.out.println("Account Summary:");
-        System.out.println("Account Number: " + getAccountNumber());
-        System.out.println("Holder Name: " + holderName);
-        System.out.println("Balance: $" + String.format("%.2f", balance));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Account Summary:");
+            OutputSink.info("Account Number: " + getAccountNumber());
+            OutputSink.info("Holder Name: " + holderName);
+            OutputSink.info("Balance: $" + String.format("%.2f", balance));
+        }
     }
     
     // Method to display transaction history (controlled access)
     public void displayTransactionHistory(String inputPin) {
-        if (!validatePin(inputPin)) {
-            System.out.println("Invalid PIN. Cannot display transaction history.");
+        if (checkPin(inputPin, "Invalid PIN. Cannot display transaction history.", null) != PinVerifier.Result.MATCHED) {
             return;
         }
         
-        System.out.println("Transaction History for " + holderName + ":");
-        for (String transaction : transactionHistory) {
-            System.out.println(transaction);
+        if (!OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            return;
+        }
+        OutputSink.info("Transaction History for " + holderName + ":");
+        for (TransactionHistory.Page page = transactionHistory.all(HISTORY_PAGE_SIZE); ; page = page.next()) {
+            for (int i = 0; i < page.size(); i++) {
+                OutputSink.info(page.format(i));
+            }
+            if (!page.hasNext()) {
+                break;
+            }
         }
     }
+    
+    // Transactions from 'from' up to but not including 'to', oldest first, one
+    // page at a time; null if the PIN is wrong
+    public TransactionHistory.Page getTransactions(java.time.Instant from, java.time.Instant to, int pageSize,
+                                                   String inputPin) {
+        if (checkPin(inputPin, "Invalid PIN. Cannot read transaction history.", null) != PinVerifier.Result.MATCHED) {
+            return null;
+        }
+        return transactionHistory.between(from, to, pageSize);
+    }
+    
+    // The most recent 'count' transactions, oldest first; null if the PIN is wrong
+    public TransactionHistory.Page getRecentTransactions(int count, int pageSize, String inputPin) {
+        if (checkPin(inputPin, "Invalid PIN. Cannot read transaction history.", null) != PinVerifier.Result.MATCHED) {
+            return null;
+        }
+        return transactionHistory.last(count, pageSize);
+    }
 }
 
 // Another class demonstrating encapsulation
@@ -164,15 +355,17 @@ class Student {
     // Controlled method to add grades with validation
     public void addGrade(double grade) {
         if (!isActive) {
-            System.out.println("Cannot add grade. Student is not active.");
+            OutputSink.warn("Cannot add grade. Student is not active.");
             return;
         }
         
         if (grade >= 0 && grade <= 100) {
             grades.add(grade);
-            System.out.println("Grade " + grade + " added for " + name);
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("Grade " + grade + " added for " + name);
+            }
         } else {
-            System.out.println("Invalid grade. Must be between 0 and 100.");
+            OutputSink.warn("Invalid grade. Must be between 0 and 100.");
         }
     }
     
@@ -197,22 +390,24 @@ class Student {
     // Display grades without exposing internal structure
     public void displayGrades() {
         if (!isActive) {
-            System.out.println("Student is not active.");
+            OutputSink.warn("Student is not active.");
             return;
         }
         
         if (grades.isEmpty()) {
-            System.out.println(name + " has no grades yet.");
-        } else {
-            System.out.print(name + "'s grades: ");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info(name + " has no grades yet.");
+            }
+        } else if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            StringBuilder line = new StringBuilder(name).append("'s grades: ");
             for (int i = 0; i < grades.size(); i++) {
-                System.out.print(grades.get(i));
+                line.append(grades.get(i));
                 if (i < grades.size() - 1) {
-                    System.out.print(", ");
+                    line.append(", ");
                 }
             }
-            System.out.println();
-            System.out.println("Average: " + String.format("%.2f", getAverage()));
+            OutputSink.info(line.toString());
+            OutputSink.info("Average: " + String.format("%.2f", getAverage()));
         }
     }
     
@@ -220,10 +415,12 @@ class Student {
     public boolean updateEmail(String newEmail) {
         if (newEmail.contains("@") && newEmail.contains(".")) {
             email = newEmail;
-            System.out.println("Email updated successfully for " + name);
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("Email updated successfully for " + name);
+            }
             return true;
         } else {
-            System.out.println("Invalid email format.");
+            OutputSink.warn("Invalid email format.");
             return false;
         }
     }
@@ -231,18 +428,24 @@ class Student {
     // Method to deactivate student
     public void deactivateStudent() {
         isActive = false;
-        System.out.println(name + " has been deactivated.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " has been deactivated.");
+        }
     }
     
     // Method to reactivate student
     public void reactivateStudent() {
         isActive = true;
-        System.out.println(name + " has been reactivated.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " has been reactivated.");
+        }
     }
 }
 
 // Class demonstrating encapsulation with composition
 class Library {
+    private static final MetricsRegistry.Timer CHECK_OUT_TIMER = MetricsRegistry.timer("library.checkOutBook");
+    
     private String name;
     private List<Book> books;
     private int maxCapacity;
@@ -284,30 +487,43 @@ class Library {
     
     public boolean addBook(String title, String author, String isbn) {
         if (books.size() >= maxCapacity) {
-            System.out.println("Library is at maximum capacity.");
+            OutputSink.warn("Library is at maximum capacity.");
             return false;
         }
         
         books.add(new Book(title, author, isbn));
-        System.out.println("Book added: " + title);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Book added: " + title);
+        }
         return true;
     }
     
     public boolean checkOutBook(String isbn) {
-        for (Book book : books) {
-            if (book.getIsbn().equals(isbn)) {
-                if (book.isAvailable()) {
-                    book.checkOut();
-                    System.out.println("Checked out: " + book.getTitle());
-                    return true;
-                } else {
-                    System.out.println("Book is already checked out: " + book.getTitle());
-                    return false;
+        long start = CHECK_OUT_TIMER.start();
+        try {
+            for (Book book : books) {
+                if (book.getIsbn().equals(isbn)) {
+                    if (book.isAvailable()) {
+                        book.checkOut();
+                        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                            OutputSink.info("Checked out: " + book.getTitle());
+                        }
+                        return true;
+                    } else {
+                        if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                            OutputSink.warn("Book is already checked out: " + book.getTitle());
+                        }
+                        return false;
+                    }
                 }
             }
+            if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                OutputSink.warn("Book not found with ISBN: " + isbn);
+            }
+            return false;
+        } finally {
+            CHECK_OUT_TIMER.stop(start);
         }
-        System.out.println("Book not found with ISBN: " + isbn);
-        return false;
     }
     
     public boolean returnBook(String isbn) {
@@ -315,23 +531,32 @@ class Library {
             if (book.getIsbn().equals(isbn)) {
                 if (!book.isAvailable()) {
                     book.checkIn();
-                    System.out.println("Returned: " + book.getTitle());
+                    if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                        OutputSink.info("Returned: " + book.getTitle());
+                    }
                     return true;
                 } else {
-                    System.out.println("Book was not checked out: " + book.getTitle());
+                    if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                        OutputSink.warn("Book was not checked out: " + book.getTitle());
+                    }
                     return false;
                 }
             }
         }
-        System.out.println("Book not found with ISBN: " + isbn);
+        if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+            OutputSink.warn("Book not found with ISBN: " + isbn);
+        }
         return false;
     }
     
     public void displayAvailableBooks() {
-        System.out.println("Available books in " + name + ":");
+        if (!OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            return;
+        }
+        OutputSink.info("Available books in " + name + ":");
         for (Book book : books) {
             if (book.isAvailable()) {
-                System.out.println("- " + book);
+                OutputSink.info("- " + book);
             }
         }
     }
@@ -0,0 +1,418 @@
+// Event-sourced bank account in Java
+//
+// BankAccount from Encapsulation.java changes its balance in place and writes a
+// line of text to its history beside it, so nothing ties the two together.
+// EventSourcedAccount keeps the same rules, but what it stores is the list of
+// things that happened to it: Opened, Deposited, Withdrew and PinChanged events,
+// numbered from 1 in an EventStore. The balance, the PIN hash and the history
+// are all worked out from those events:
+// - An operation is checked against the current state, turned into an event,
+//   appended to the store, and only then applied. apply() is the only code
+//   that changes the balance, and replaying the same events always produces
+//   the same account.
+// - displayTransactionHistory() replays the events to write each line, so the
+//   history cannot disagree with the balance. Failed attempts change nothing
+//   and are not events; they are reported but not stored.
+// - PinChanged carries the salted hash from PinVerifier, never the PIN.
+//
+// Every snapshotEvery events the account records a snapshot of its state in the
+// store. rebuild() starts from the latest snapshot and replays only the events
+// after it, so a long-lived account loads in time proportional to the snapshot
+// interval rather than to its age.
+//
+// main() shows a short session, then writes millions of events to one account
+// and times rebuilding it from every event and from the latest snapshot.
+//
+// Compile and run from the javac directory:
+//   javac -d bin EventSourcedAccount.java && java -Xmx2g -cp bin EventSourcedAccount [events] [snapshotEvery]
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+public final class EventSourcedAccount {
+    static final int DEFAULT_SNAPSHOT_EVERY = 1_000;
+
+    private final String accountNumber;
+    private final EventStore store;
+    private final int snapshotEvery;
+
+    // The projection: everything below is derived from the events
+    private String holderName;
+    private double balance;
+    private long version;
+    private PinVerifier pinVerifier; // its lockout state is not an event and starts afresh on rebuild
+
+    private EventSourcedAccount(String accountNumber, EventStore store, int snapshotEvery) {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be positive: " + snapshotEvery);
+        }
+        this.accountNumber = accountNumber;
+        this.store = store;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    public static EventSourcedAccount open(String accountNumber, String holderName, double initialBalance, String pin) {
+        return open(accountNumber, holderName, initialBalance, PinVerifier.hash(pin), DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    static EventSourcedAccount open(String accountNumber, String holderName, double initialBalance,
+                                    PinVerifier.HashedPin pin, int snapshotEvery) {
+        EventSourcedAccount account = new EventSourcedAccount(accountNumber, new EventStore(), snapshotEvery);
+        account.record(new Opened(1, TransactionHistory.nowMicros(), holderName, initialBalance, pin));
+        return account;
+    }
+
+    // The account as its events leave it, starting from the latest snapshot
+    public static EventSourcedAccount rebuild(String accountNumber, EventStore store) {
+        return rebuild(accountNumber, store, DEFAULT_SNAPSHOT_EVERY, true);
+    }
+
+    static EventSourcedAccount rebuild(String accountNumber, EventStore store, int snapshotEvery,
+                                       boolean fromSnapshot) {
+        EventSourcedAccount account = new EventSourcedAccount(accountNumber, store, snapshotEvery);
+        synchronized (store) {
+            Snapshot snapshot = fromSnapshot ? store.latestSnapshot() : null;
+            if (snapshot != null) {
+                account.holderName = snapshot.holderName;
+                account.balance = snapshot.balance;
+                account.pinVerifier = new PinVerifier(snapshot.pin);
+                account.version = snapshot.version;
+            }
+            for (long next = account.version + 1; next <= store.size(); next++) {
+                store.event(next).applyTo(account);
+            }
+        }
+        return account;
+    }
+
+    // ---- Commands ----
+
+    public synchronized boolean deposit(double amount) {
+        if (amount <= 0) {
+            OutputSink.warn("Invalid deposit amount. Must be positive.");
+            return false;
+        }
+        record(new Deposited(version + 1, TransactionHistory.nowMicros(), amount));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Deposited: $" + String.format("%.2f", amount) + ". New balance: $" + String.format("%.2f", balance));
+        }
+        return true;
+    }
+
+    public synchronized boolean withdraw(double amount, String inputPin) {
+        if (!pinMatches(inputPin, "Invalid PIN. Transaction denied.")) {
+            return false;
+        }
+        if (amount <= 0) {
+            OutputSink.warn("Invalid withdrawal amount. Must be positive.");
+            return false;
+        }
+        if (amount > balance) {
+            if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                OutputSink.warn("Insufficient funds. Current balance: $" + String.format("%.2f", balance));
+            }
+            return false;
+        }
+        record(new Withdrew(version + 1, TransactionHistory.nowMicros(), amount));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Withdrew: $" + String.format("%.2f", amount) + ". New balance: $" + String.format("%.2f", balance));
+        }
+        return true;
+    }
+
+    public synchronized boolean changePin(String oldPin, String newPin) {
+        if (!pinMatches(oldPin, "Current PIN is incorrect.")) {
+            return false;
+        }
+        if (newPin.length() < 4) {
+            OutputSink.warn("New PIN must be at least 4 digits.");
+            return false;
+        }
+        record(new PinChanged(version + 1, TransactionHistory.nowMicros(), PinVerifier.hash(newPin)));
+        OutputSink.info("PIN changed successfully.");
+        return true;
+    }
+
+    public synchronized double getBalance() {
+        return balance;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public String getHolderName() {
+        return holderName;
+    }
+
+    public EventStore getStore() {
+        return store;
+    }
+
+    // One line per event, with the balance it left, worked out again from the events
+    public void displayTransactionHistory(String inputPin) {
+        if (!pinMatches(inputPin, "Invalid PIN. Cannot display transaction history.")) {
+            return;
+        }
+        if (!OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            return;
+        }
+        OutputSink.info("Transaction History for " + holderName + ":");
+        EventSourcedAccount replay = new EventSourcedAccount(accountNumber, store, snapshotEvery);
+        synchronized (store) {
+            for (long next = 1; next <= store.size(); next++) {
+                Event event = store.event(next);
+                event.applyTo(replay);
+                OutputSink.info(TransactionHistory.localTime(event.epochMicros) + ": " + event.describe(replay.balance));
+            }
+        }
+    }
+
+    private boolean pinMatches(String inputPin, String deniedMessage) {
+        PinVerifier.Result result = pinVerifier.verify(inputPin);
+        if (result == PinVerifier.Result.LOCKED_OUT) {
+            long seconds = (pinVerifier.getLockoutRemainingMillis() + 999) / 1000;
+            if (OutputSink.isEnabled(OutputSink.Level.WARN)) {
+                OutputSink.warn("Too many failed PIN attempts. Try again in " + seconds + " seconds.");
+            }
+        } else if (result == PinVerifier.Result.MISMATCHED) {
+            OutputSink.warn(deniedMessage);
+        }
+        return result == PinVerifier.Result.MATCHED;
+    }
+
+    // Stores the event, then applies it, then snapshots if an interval is complete
+    private void record(Event event) {
+        store.append(event);
+        event.applyTo(this);
+        if (version % snapshotEvery == 0) {
+            store.saveSnapshot(new Snapshot(version, holderName, balance, pinVerifier.getHashedPin()));
+        }
+    }
+
+    private void advance(Event event) {
+        if (event.version != version + 1) {
+            throw new IllegalStateException("Event " + event.version + " applied at version " + version);
+        }
+        version = event.version;
+    }
+
+    // ---- Events ----
+
+    public abstract static class Event {
+        final long version;
+        final long epochMicros;
+
+        Event(long version, long epochMicros) {
+            this.version = version;
+            this.epochMicros = epochMicros;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        // The only place the account's state changes
+        abstract void applyTo(EventSourcedAccount account);
+
+        // History text for the event, given the balance it left
+        abstract String describe(double balanceAfter);
+    }
+
+    public static final class Opened extends Event {
+        final String holderName;
+        final double initialBalance;
+        final PinVerifier.HashedPin pin;
+
+        Opened(long version, long epochMicros, String holderName, double initialBalance, PinVerifier.HashedPin pin) {
+            super(version, epochMicros);
+            this.holderName = holderName;
+            this.initialBalance = initialBalance;
+            this.pin = pin;
+        }
+
+        @Override
+        void applyTo(EventSourcedAccount account) {
+            account.advance(this);
+            account.holderName = holderName;
+            account.balance = initialBalance;
+            account.pinVerifier = new PinVerifier(pin);
+        }
+
+        @Override
+        String describe(double balanceAfter) {
+            return "Account opened with initial balance: $" + initialBalance;
+        }
+    }
+
+    public static final class Deposited extends Event {
+        final double amount;
+
+        Deposited(long version, long epochMicros, double amount) {
+            super(version, epochMicros);
+            this.amount = amount;
+        }
+
+        @Override
+        void applyTo(EventSourcedAccount account) {
+            account.advance(this);
+            account.balance += amount;
+        }
+
+        @Override
+        String describe(double balanceAfter) {
+            return "Deposited: $" + String.format("%.2f", amount) + ". New balance: $" + String.format("%.2f", balanceAfter);
+        }
+    }
+
+    public static final class Withdrew extends Event {
+        final double amount;
+
+        Withdrew(long version, long epochMicros, double amount) {
+            super(version, epochMicros);
+            this.amount = amount;
+        }
+
+        @Override
+        void applyTo(EventSourcedAccount account) {
+            account.advance(this);
+            account.balance -= amount;
+        }
+
+        @Override
+        String describe(double balanceAfter) {
+            return "Withdrew: $" + String.format("%.2f", amount) + ". New balance: $" + String.format("%.2f", balanceAfter);
+        }
+    }
+
+    public static final class PinChanged extends Event {
+        final PinVerifier.HashedPin pin;
+
+        PinChanged(long version, long epochMicros, PinVerifier.HashedPin pin) {
+            super(version, epochMicros);
+            this.pin = pin;
+        }
+
+        @Override
+        void applyTo(EventSourcedAccount account) {
+            account.advance(this);
+            account.pinVerifier.change(pin);
+        }
+
+        @Override
+        String describe(double balanceAfter) {
+            return "PIN changed successfully";
+        }
+    }
+
+    // ---- Store ----
+
+    // The state after a given event, so a rebuild can start there
+    static final class Snapshot {
+        final long version;
+        final String holderName;
+        final double balance;
+        final PinVerifier.HashedPin pin;
+
+        Snapshot(long version, String holderName, double balance, PinVerifier.HashedPin pin) {
+            this.version = version;
+            this.holderName = holderName;
+            this.balance = balance;
+            this.pin = pin;
+        }
+    }
+
+    // One account's events in order, and its most recent snapshot. Older
+    // snapshots are dropped, since a rebuild only ever needs the latest.
+    public static final class EventStore {
+        private final List<Event> events = new ArrayList<>();
+        private Snapshot latest;
+
+        synchronized void append(Event event) {
+            if (event.version != events.size() + 1) {
+                throw new IllegalStateException("Expected event " + (events.size() + 1) + ", got " + event.version);
+            }
+            events.add(event);
+        }
+
+        public synchronized long size() {
+            return events.size();
+        }
+
+        public synchronized Event event(long version) {
+            return events.get((int) (version - 1));
+        }
+
+        synchronized void saveSnapshot(Snapshot snapshot) {
+            latest = snapshot;
+        }
+
+        synchronized Snapshot latestSnapshot() {
+            return latest;
+        }
+    }
+
+    // ---- Benchmark ----
+
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int snapshotEvery = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SNAPSHOT_EVERY;
+
+        System.out.println("=== Event-Sourced Account ===");
+        EventSourcedAccount demo = open("123456789", "John Doe", 1000.0, "1234");
+        demo.deposit(500.0);
+        demo.withdraw(200.0, "1234");
+        demo.withdraw(100.0, "5678"); // Wrong PIN
+        demo.changePin("1234", "5678");
+        demo.withdraw(150.0, "5678");
+        demo.displayTransactionHistory("5678");
+        EventSourcedAccount rebuilt = rebuild("123456789", demo.getStore());
+        System.out.println("Rebuilt from " + rebuilt.getVersion() + " events, balance: $" +
+                           String.format("%.2f", rebuilt.getBalance()));
+
+        System.out.println();
+        System.out.println("Events: " + events + ", snapshot every: " + snapshotEvery);
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            PinVerifier.HashedPin pin = PinVerifier.hash("1234", 1);
+            EventSourcedAccount account = open("987654321", "Benchmark Holder", 1000.0, pin, snapshotEvery);
+            SplittableRandom random = new SplittableRandom(49L);
+            // Stops one event short of a snapshot, so the rebuild from the snapshot
+            // replays the longest tail it ever can
+            long start = System.nanoTime();
+            while (account.getVersion() < events || account.getVersion() % snapshotEvery != snapshotEvery - 1) {
+                double amount = 1 + random.nextInt(50_000) / 100.0;
+                if (random.nextBoolean() || !account.withdraw(amount, "1234")) {
+                    account.deposit(amount);
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("Wrote " + account.getVersion() + " events in " + String.format("%.1f", nanos / 1e6) +
+                               " ms (" + String.format("%.0f", account.getVersion() / (nanos / 1e9)) + "/s)");
+
+            for (int i = 0; i < 3; i++) {
+                rebuild("987654321", account.getStore(), snapshotEvery, false);
+                rebuild("987654321", account.getStore(), snapshotEvery, true);
+            }
+            timeRebuild("Rebuild from every event", account, snapshotEvery, false);
+            timeRebuild("Rebuild from the latest snapshot", account, snapshotEvery, true);
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+
+    private static void timeRebuild(String label, EventSourcedAccount account, int snapshotEvery, boolean fromSnapshot) {
+        int runs = fromSnapshot ? 1_000 : 3;
+        EventSourcedAccount rebuilt = null;
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            rebuilt = rebuild(account.accountNumber, account.getStore(), snapshotEvery, fromSnapshot);
+        }
+        long nanos = (System.nanoTime() - start) / runs;
+        Snapshot snapshot = account.getStore().latestSnapshot();
+        long replayed = account.getVersion() - (fromSnapshot && snapshot != null ? snapshot.version : 0);
+        System.out.println(label + ": " + String.format("%.3f", nanos / 1e6) + " ms, " + replayed +
+                           " events replayed, balance matches: " + (rebuilt.getBalance() == account.getBalance()));
+    }
+}
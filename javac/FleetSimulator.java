@@ -0,0 +1,266 @@
+// Fleet telemetry simulator in Java
+//
+// Drives large numbers of Car and Motorcycle instances from Abstraction.java through
+// trip profiles. Vehicles are partitioned across worker threads; each worker owns a
+// hashed time wheel and advances simulated time independently, because vehicles do
+// not interact with each other. Every lifecycle call goes through the abstract
+// Vehicle contract and, when enabled, into the VehicleTelemetry ring buffer.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Abstraction.java FleetSimulator.java && java -cp bin FleetSimulator [vehicles] [minutes] [workers]
+
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+
+public class FleetSimulator {
+    // One simulated tick is 10 ms
+    static final int TICK_MILLIS = 10;
+
+    // A trip is a fixed sequence of lifecycle calls with delays (in ms) before each one
+    static final class TripProfile {
+        final String name;
+        final int[] eventTypes;
+        final int[] delaysMillis;
+
+        TripProfile(String name, int[] eventTypes, int[] delaysMillis) {
+            this.name = name;
+            this.eventTypes = eventTypes;
+            this.delaysMillis = delaysMillis;
+        }
+
+        int length() { return eventTypes.length; }
+    }
+
+    static final TripProfile[] PROFILES = {
+        new TripProfile("City errand",
+            new int[] {VehicleTelemetry.ENGINE_STARTED, VehicleTelemetry.ACCELERATED, VehicleTelemetry.BRAKED,
+                       VehicleTelemetry.ACCELERATED, VehicleTelemetry.BRAKED, VehicleTelemetry.ENGINE_STOPPED},
+            new int[] {0, 2_000, 15_000, 5_000, 20_000, 3_000}),
+        new TripProfile("Highway run",
+            new int[] {VehicleTelemetry.ENGINE_STARTED, VehicleTelemetry.ACCELERATED, VehicleTelemetry.BRAKED,
+                       VehicleTelemetry.ENGINE_STOPPED},
+            new int[] {0, 3_000, 120_000, 4_000}),
+        new TripProfile("Stop and go",
+            new int[] {VehicleTelemetry.ENGINE_STARTED, VehicleTelemetry.ACCELERATED, VehicleTelemetry.BRAKED,
+                       VehicleTelemetry.ACCELERATED, VehicleTelemetry.BRAKED, VehicleTelemetry.ACCELERATED,
+                       VehicleTelemetry.BRAKED, VehicleTelemetry.ENGINE_STOPPED},
+            new int[] {0, 1_000, 4_000, 2_000, 4_000, 2_000, 4_000, 1_000})
+    };
+
+    // Hashed timing wheel over a partition's vehicles, using intrusive int linked lists
+    // so scheduling never allocates. Delays longer than the wheel are handled by
+    // re-checking the due tick when a slot comes round.
+    static final class TimeWheel {
+        private static final int NONE = -1;
+
+        private final int[] slotHeads;
+        private final int slotMask;
+        private final int[] nextInSlot;
+        private final long[] dueTick;
+
+        TimeWheel(int slots, int entities) {
+            this.slotHeads = new int[slots];
+            this.slotMask = slots - 1;
+            this.nextInSlot = new int[entities];
+            this.dueTick = new long[entities];
+            java.util.Arrays.fill(slotHeads, NONE);
+        }
+
+        void schedule(int entity, long tick) {
+            int slot = (int) (tick & slotMask);
+            dueTick[entity] = tick;
+            nextInSlot[entity] = slotHeads[slot];
+            slotHeads[slot] = entity;
+        }
+
+        // Detaches the slot for this tick; entities not yet due are put back
+        int takeDue(long tick) {
+            int slot = (int) (tick & slotMask);
+            int entity = slotHeads[slot];
+            slotHeads[slot] = NONE;
+            int dueHead = NONE;
+            while (entity != NONE) {
+                int next = nextInSlot[entity];
+                if (dueTick[entity] <= tick) {
+                    nextInSlot[entity] = dueHead;
+                    dueHead = entity;
+                } else {
+                    nextInSlot[entity] = slotHeads[slot];
+                    slotHeads[slot] = entity;
+                }
+                entity = next;
+            }
+            return dueHead;
+        }
+
+        int next(int entity) { return nextInSlot[entity]; }
+    }
+
+    // Simulates one partition of the fleet on its own thread
+    static final class Worker implements Runnable {
+        private final Vehicle[] vehicles;
+        private final int from;
+        private final int to;
+        private final long endTick;
+        private final CountDownLatch done;
+        private final SplittableRandom random;
+        private final TimeWheel wheel;
+        private final byte[] profileIndex;
+        private final int[] stepIndex;
+        private long eventsExecuted;
+        private long tripsCompleted;
+
+        Worker(Vehicle[] vehicles, int from, int to, long endTick, long seed, CountDownLatch done) {
+            this.vehicles = vehicles;
+            this.from = from;
+            this.to = to;
+            this.endTick = endTick;
+            this.done = done;
+            this.random = new SplittableRandom(seed);
+            int count = to - from;
+            this.wheel = new TimeWheel(4096, count);
+            this.profileIndex = new byte[count];
+            this.stepIndex = new int[count];
+        }
+
+        @Override
+        public void run() {
+            try {
+                // Stagger departures over the first simulated minute
+                for (int local = 0; local < to - from; local++) {
+                    beginTrip(local, random.nextInt(60_000 / TICK_MILLIS));
+                }
+                for (long tick = 0; tick < endTick; tick++) {
+                    int local = wheel.takeDue(tick);
+                    while (local != TimeWheel.NONE) {
+                        int next = wheel.next(local);
+                        runStep(local, tick);
+                        local = next;
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void beginTrip(int local, long tick) {
+            profileIndex[local] = (byte) random.nextInt(PROFILES.length);
+            stepIndex[local] = 0;
+            wheel.schedule(local, tick);
+        }
+
+        private void runStep(int local, long tick) {
+            TripProfile profile = PROFILES[profileIndex[local]];
+            int step = stepIndex[local];
+            Vehicle vehicle = vehicles[from + local];
+            switch (profile.eventTypes[step]) {
+                case VehicleTelemetry.ENGINE_STARTED: vehicle.startEngine(); break;
+                case VehicleTelemetry.ACCELERATED: vehicle.accelerate(); break;
+                case VehicleTelemetry.BRAKED: vehicle.brake(); break;
+                default: vehicle.stopEngine(); break;
+            }
+            eventsExecuted++;
+
+            if (++step < profile.length()) {
+                stepIndex[local] = step;
+                wheel.schedule(local, tick + Math.max(1, profile.delaysMillis[step] / TICK_MILLIS));
+            } else {
+                // Park between trips for up to five simulated minutes
+                tripsCompleted++;
+                beginTrip(local, tick + 1 + random.nextInt(300_000 / TICK_MILLIS));
+            }
+        }
+    }
+
+    public static Vehicle[] buildFleet(int size, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Vehicle[] fleet = new Vehicle[size];
+        for (int i = 0; i < size; i++) {
+            if (random.nextInt(4) == 0) {
+                fleet[i] = new Motorcycle("Yamaha", "MT-07", 689, random.nextBoolean());
+            } else {
+                fleet[i] = new Car("Toyota", "Corolla", 4, random.nextBoolean() ? "Automatic" : "Manual");
+            }
+        }
+        return fleet;
+    }
+
+    static final class Result {
+        final long events;
+        final long trips;
+
+        Result(long events, long trips) {
+            this.events = events;
+            this.trips = trips;
+        }
+    }
+
+    // Runs the fleet for the given simulated time and counts the lifecycle calls made
+    public static Result simulate(Vehicle[] fleet, long simulatedMillis, int workerCount) throws InterruptedException {
+        long endTick = simulatedMillis / TICK_MILLIS;
+        CountDownLatch done = new CountDownLatch(workerCount);
+        Worker[] workers = new Worker[workerCount];
+        for (int w = 0; w < workerCount; w++) {
+            int from = (int) ((long) fleet.length * w / workerCount);
+            int to = (int) ((long) fleet.length * (w + 1) / workerCount);
+            workers[w] = new Worker(fleet, from, to, endTick, 42L + w, done);
+            Thread thread = new Thread(workers[w], "fleet-worker-" + w);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        long events = 0;
+        long trips = 0;
+        for (Worker worker : workers) {
+            events += worker.eventsExecuted;
+            trips += worker.tripsCompleted;
+        }
+        return new Result(events, trips);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int vehicleCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int simulatedMinutes = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int workerCount = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println("=== Fleet Telemetry Simulation ===");
+        System.out.println("Vehicles: " + vehicleCount + ", simulated time: " + simulatedMinutes +
+                           " min, workers: " + workerCount);
+
+        Vehicle[] fleet = buildFleet(vehicleCount, 7L);
+        VehicleTelemetry telemetry = new VehicleTelemetry(1 << 16);
+        VehicleTelemetry.Aggregator aggregator = new VehicleTelemetry.Aggregator();
+        telemetry.addHandler(aggregator);
+        telemetry.start();
+        for (Vehicle vehicle : fleet) {
+            vehicle.attachTelemetry(telemetry);
+        }
+
+        // The vehicles narrate every call; silence that for the run
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        Result result;
+        long start = System.nanoTime();
+        try {
+            result = simulate(fleet, simulatedMinutes * 60_000L, workerCount);
+        } finally {
+            OutputSink.install(previous);
+        }
+        long elapsed = System.nanoTime() - start;
+        telemetry.shutdown();
+
+        double seconds = elapsed / 1e9;
+        long events = result.events;
+        System.out.println("Trips completed: " + result.trips);
+        System.out.println("Simulated events: " + events);
+        System.out.println("Wall time: " + String.format("%.3f", seconds) + "s");
+        System.out.println("Simulated events per second: " + String.format("%,.0f", events / seconds));
+        aggregator.displaySummary();
+        if (aggregator.getTotalEvents() != events) {
+            System.out.println("WARNING: telemetry recorded " + aggregator.getTotalEvents() + " events");
+        }
+        for (Throwable failure : telemetry.getFailures()) {
+            System.out.println("WARNING: telemetry handler failed: " + failure);
+        }
+    }
+}
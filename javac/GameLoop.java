@@ -0,0 +1,329 @@
+// Fixed-timestep game loop in Java
+//
+// Updates GameShape entities from Polymorphism.java in bulk. Positions and
+// velocities live in primitive arrays (an EntityBatch) and every frame integrates
+// all of them in one loop. Drawing is recorded as commands in a reusable
+// DrawCommandBuffer that a Renderer consumes, so a frame allocates nothing. The
+// GameShape objects are only brought up to date through move() when the caller
+// asks for it.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java GameLoop.java && java -cp bin GameLoop [entities] [frames]
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class GameLoop {
+    public static final double FRAME_SECONDS = 1.0 / 60.0;
+    // Most fixed steps a real-time frame runs to catch up; time beyond that is
+    // dropped, so a slow update() cannot make every later frame slower still
+    public static final int MAX_STEPS_PER_FRAME = 5;
+
+    // Structure-of-arrays storage for moving entities; grows when full
+    public static final class EntityBatch {
+        private GameShape[] shapes;
+        double[] x;
+        double[] y;
+        double[] vx;
+        double[] vy;
+        private int size;
+
+        public EntityBatch(int initialCapacity) {
+            int capacity = Math.max(1, initialCapacity);
+            this.shapes = new GameShape[capacity];
+            this.x = new double[capacity];
+            this.y = new double[capacity];
+            this.vx = new double[capacity];
+            this.vy = new double[capacity];
+        }
+
+        public int add(GameShape shape, double velocityX, double velocityY) {
+            if (size == shapes.length) {
+                int capacity = size * 2;
+                shapes = Arrays.copyOf(shapes, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                vx = Arrays.copyOf(vx, capacity);
+                vy = Arrays.copyOf(vy, capacity);
+            }
+            int index = size++;
+            shapes[index] = shape;
+            x[index] = shape.getX();
+            y[index] = shape.getY();
+            vx[index] = velocityX;
+            vy[index] = velocityY;
+            return index;
+        }
+
+        public int size() { return size; }
+
+        // Moves every entity by one timestep and bounces it off the world edges
+        public void integrate(double dt, double width, double height) {
+            double[] px = x;
+            double[] py = y;
+            double[] velocityX = vx;
+            double[] velocityY = vy;
+            for (int i = 0, n = size; i < n; i++) {
+                double nx = px[i] + velocityX[i] * dt;
+                double ny = py[i] + velocityY[i] * dt;
+                if (nx < 0 || nx > width) {
+                    velocityX[i] = -velocityX[i];
+                    nx = px[i];
+                }
+                if (ny < 0 || ny > height) {
+                    velocityY[i] = -velocityY[i];
+                    ny = py[i];
+                }
+                px[i] = nx;
+                py[i] = ny;
+            }
+        }
+
+        // Pushes the current positions back into the GameShape objects through move()
+        public void syncShapes() {
+            for (int i = 0; i < size; i++) {
+                shapes[i].move(x[i], y[i]);
+            }
+        }
+    }
+
+    // Reusable list of draw commands; cleared, not reallocated, every frame
+    public static final class DrawCommandBuffer {
+        private int[] entity;
+        private float[] x;
+        private float[] y;
+        private int count;
+
+        public DrawCommandBuffer(int initialCapacity) {
+            this.entity = new int[initialCapacity];
+            this.x = new float[initialCapacity];
+            this.y = new float[initialCapacity];
+        }
+
+        public void clear() {
+            count = 0;
+        }
+
+        public void add(int entityIndex, double drawX, double drawY) {
+            if (count == entity.length) {
+                int capacity = count * 2;
+                entity = Arrays.copyOf(entity, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+            }
+            entity[count] = entityIndex;
+            x[count] = (float) drawX;
+            y[count] = (float) drawY;
+            count++;
+        }
+
+        public int size() { return count; }
+        public int getEntity(int command) { return entity[command]; }
+        public float getX(int command) { return x[command]; }
+        public float getY(int command) { return y[command]; }
+    }
+
+    // Consumes one frame's draw commands
+    public interface Renderer {
+        void render(DrawCommandBuffer commands);
+    }
+
+    // Headless renderer: folds the commands into a checksum so the work is not optimised away
+    static final class ChecksumRenderer implements Renderer {
+        long checksum;
+
+        @Override
+        public void render(DrawCommandBuffer commands) {
+            long sum = 0;
+            for (int i = 0, n = commands.size(); i < n; i++) {
+                sum += commands.getEntity(i) + Float.floatToRawIntBits(commands.getX(i)) +
+                       Float.floatToRawIntBits(commands.getY(i));
+            }
+            checksum += sum;
+        }
+    }
+
+    // Per-frame measurements
+    public static final class FrameStats {
+        final long[] frameNanos;
+        long allocatedBytes = -1;
+        long steps;
+        long droppedNanos;
+
+        FrameStats(int frames) {
+            this.frameNanos = new long[frames];
+        }
+
+        long percentile(double fraction) {
+            long[] sorted = frameNanos.clone();
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, (int) (fraction * sorted.length))];
+        }
+
+        void display() {
+            long total = 0;
+            long max = 0;
+            int overBudget = 0;
+            long budget = (long) (FRAME_SECONDS * 1e9);
+            for (long nanos : frameNanos) {
+                total += nanos;
+                max = Math.max(max, nanos);
+                if (nanos > budget) {
+                    overBudget++;
+                }
+            }
+            System.out.println("Frames: " + frameNanos.length + ", simulation steps: " + steps +
+                               (droppedNanos > 0 ? ", dropped " + String.format("%.1f", droppedNanos / 1e6) + " ms" : ""));
+            System.out.println("Frame time avg " + String.format("%.3f", total / 1e6 / frameNanos.length) + " ms, p99 " +
+                               String.format("%.3f", percentile(0.99) / 1e6) + " ms, max " +
+                               String.format("%.3f", max / 1e6) + " ms (budget " +
+                               String.format("%.2f", budget / 1e6) + " ms, " + overBudget + " frames over)");
+            if (allocatedBytes >= 0) {
+                System.out.println("Allocated per frame: " + (allocatedBytes / frameNanos.length) + " bytes");
+            } else {
+                System.out.println("Allocated per frame: not available on this JVM");
+            }
+        }
+    }
+
+    private final EntityBatch entities;
+    private final DrawCommandBuffer commands;
+    private final Renderer renderer;
+    private final double worldWidth;
+    private final double worldHeight;
+
+    // Visible area; only entities inside it get a draw command
+    private double viewFromX;
+    private double viewFromY;
+    private double viewToX;
+    private double viewToY;
+
+    public GameLoop(EntityBatch entities, Renderer renderer, double worldWidth, double worldHeight) {
+        this.entities = entities;
+        this.renderer = renderer;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        this.commands = new DrawCommandBuffer(Math.max(16, entities.size()));
+        setViewport(0, 0, worldWidth, worldHeight);
+    }
+
+    public void setViewport(double fromX, double fromY, double toX, double toY) {
+        this.viewFromX = fromX;
+        this.viewFromY = fromY;
+        this.viewToX = toX;
+        this.viewToY = toY;
+    }
+
+    public void update(double dt) {
+        entities.integrate(dt, worldWidth, worldHeight);
+    }
+
+    public void draw() {
+        commands.clear();
+        double[] x = entities.x;
+        double[] y = entities.y;
+        for (int i = 0, n = entities.size(); i < n; i++) {
+            double px = x[i];
+            double py = y[i];
+            if (px >= viewFromX && px <= viewToX && py >= viewFromY && py <= viewToY) {
+                commands.add(i, px, py);
+            }
+        }
+        renderer.render(commands);
+    }
+
+    // Runs a fixed number of frames. In real-time mode the loop sleeps until each
+    // frame is due and catches up with extra fixed steps when it falls behind, at
+    // most MAX_STEPS_PER_FRAME a frame; otherwise frames run back to back, one
+    // step each, to measure the cost.
+    public FrameStats run(int frames, boolean realTime) throws InterruptedException {
+        FrameStats stats = new FrameStats(frames);
+        long stepNanos = (long) (FRAME_SECONDS * 1e9);
+        long allocatedBefore = allocatedBytes();
+        long previous = System.nanoTime();
+        long maxLag = MAX_STEPS_PER_FRAME * stepNanos;
+        long lag = 0;
+
+        for (int frame = 0; frame < frames; frame++) {
+            long frameStart = System.nanoTime();
+            if (realTime) {
+                lag += frameStart - previous;
+                previous = frameStart;
+                if (lag > maxLag) {
+                    stats.droppedNanos += lag - maxLag;
+                    lag = maxLag;
+                }
+                while (lag >= stepNanos) {
+                    update(FRAME_SECONDS);
+                    stats.steps++;
+                    lag -= stepNanos;
+                }
+            } else {
+                update(FRAME_SECONDS);
+                stats.steps++;
+            }
+            draw();
+            long frameEnd = System.nanoTime();
+            stats.frameNanos[frame] = frameEnd - frameStart;
+
+            if (realTime) {
+                long sleepNanos = stepNanos - (frameEnd - frameStart);
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+                }
+            }
+        }
+
+        long allocatedAfter = allocatedBytes();
+        if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+            stats.allocatedBytes = allocatedAfter - allocatedBefore;
+        }
+        return stats;
+    }
+
+    // Bytes allocated by the current thread, or -1 when the JVM cannot report it
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 600;
+        double worldWidth = 1920;
+        double worldHeight = 1080;
+        System.out.println("=== Batched Game Loop ===");
+        System.out.println("Movable entities: " + count);
+
+        SplittableRandom random = new SplittableRandom(8L);
+        EntityBatch batch = new EntityBatch(count);
+        for (int i = 0; i < count; i++) {
+            GameShape shape = new GameShape("Entity " + i, random.nextDouble() * worldWidth, random.nextDouble() * worldHeight);
+            batch.add(shape, random.nextDouble() * 200 - 100, random.nextDouble() * 200 - 100);
+        }
+
+        ChecksumRenderer renderer = new ChecksumRenderer();
+        GameLoop loop = new GameLoop(batch, renderer, worldWidth, worldHeight);
+
+        // Warm up so the JIT has compiled the frame before measuring
+        loop.run(120, false);
+        FrameStats stats = loop.run(frames, false);
+        stats.display();
+        System.out.println("Draw checksum: " + renderer.checksum);
+
+        // Write the final positions back to the GameShape objects once
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            batch.syncShapes();
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+}
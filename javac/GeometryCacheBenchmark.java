@@ -0,0 +1,111 @@
+// Memoized geometry benchmark in Java
+//
+// Runs the same aggregate queries (total area, total perimeter, largest area,
+// shapes above an area threshold) repeatedly over a large Shape collection from
+// Polymorphism.java, once through calculateArea()/calculatePerimeter() and once
+// through the memoized getArea()/getPerimeter(). Both paths, including the
+// query that fills the cache, are warmed up on a separate smaller collection
+// first, and the timed queries alternate between the two so neither runs on a
+// better-compiled VM than the other.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java ShapeStore.java GeometryCacheBenchmark.java && java -cp bin GeometryCacheBenchmark [shapes] [queries]
+
+public class GeometryCacheBenchmark {
+    // Result of one round of aggregate queries
+    static final class Aggregates {
+        double totalArea;
+        double totalPerimeter;
+        double largestArea;
+        int aboveThreshold;
+    }
+
+    static void queryComputed(Shape[] shapes, double threshold, Aggregates out) {
+        double totalArea = 0;
+        double totalPerimeter = 0;
+        double largestArea = 0;
+        int aboveThreshold = 0;
+        for (Shape shape : shapes) {
+            totalArea += shape.calculateArea();
+            totalPerimeter += shape.calculatePerimeter();
+            largestArea = Math.max(largestArea, shape.calculateArea());
+            if (shape.calculateArea() > threshold) {
+                aboveThreshold++;
+            }
+        }
+        out.totalArea = totalArea;
+        out.totalPerimeter = totalPerimeter;
+        out.largestArea = largestArea;
+        out.aboveThreshold = aboveThreshold;
+    }
+
+    static void queryMemoized(Shape[] shapes, double threshold, Aggregates out) {
+        double totalArea = 0;
+        double totalPerimeter = 0;
+        double largestArea = 0;
+        int aboveThreshold = 0;
+        for (Shape shape : shapes) {
+            totalArea += shape.getArea();
+            totalPerimeter += shape.getPerimeter();
+            largestArea = Math.max(largestArea, shape.getArea());
+            if (shape.getArea() > threshold) {
+                aboveThreshold++;
+            }
+        }
+        out.totalArea = totalArea;
+        out.totalPerimeter = totalPerimeter;
+        out.largestArea = largestArea;
+        out.aboveThreshold = aboveThreshold;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        System.out.println("=== Memoized Geometry Benchmark ===");
+        System.out.println("Shapes: " + count + ", repeated queries: " + queries);
+
+        Aggregates computed = new Aggregates();
+        Aggregates memoized = new Aggregates();
+        double threshold = 100.0;
+
+        // Fresh shapes each round, so the cache-filling path is compiled too
+        int warmupCount = Math.min(count, 200_000);
+        for (int round = 0; round < 5; round++) {
+            Shape[] warmup = ShapeStore.generateShapes(warmupCount, 6L + round);
+            for (int query = 0; query < 4; query++) {
+                queryComputed(warmup, threshold, computed);
+                queryMemoized(warmup, threshold, memoized);
+            }
+        }
+
+        Shape[] computedShapes = ShapeStore.generateShapes(count, 5L);
+        Shape[] memoizedShapes = ShapeStore.generateShapes(count, 5L);
+        long computedNanos = 0;
+        long memoizedNanos = 0;
+        long firstMemoizedNanos = 0;
+        for (int query = 0; query < queries; query++) {
+            long start = System.nanoTime();
+            queryComputed(computedShapes, threshold, computed);
+            long middle = System.nanoTime();
+            queryMemoized(memoizedShapes, threshold, memoized);
+            long end = System.nanoTime();
+            computedNanos += middle - start;
+            memoizedNanos += end - middle;
+            if (query == 0) {
+                firstMemoizedNanos = end - middle;
+            }
+        }
+
+        System.out.println("calculateArea/Perimeter: " + String.format("%.2f", computedNanos / 1e6) + " ms total, " +
+                           String.format("%.2f", computedNanos / 1e6 / queries) + " ms per query");
+        System.out.println("getArea/getPerimeter:    " + String.format("%.2f", memoizedNanos / 1e6) + " ms total, " +
+                           String.format("%.2f", firstMemoizedNanos / 1e6) + " ms for the first (filling) query, " +
+                           String.format("%.2f", (memoizedNanos - firstMemoizedNanos) / 1e6 / Math.max(1, queries - 1)) +
+                           " ms per cached query");
+        System.out.println("Speedup: " + String.format("%.2f", (double) computedNanos / memoizedNanos) + "x");
+        System.out.println("Results agree: " + (computed.totalArea == memoized.totalArea &&
+                           computed.totalPerimeter == memoized.totalPerimeter &&
+                           computed.largestArea == memoized.largestArea &&
+                           computed.aboveThreshold == memoized.aboveThreshold));
+    }
+}
@@ -0,0 +1,241 @@
+// Idempotent payment execution in Java
+//
+// Sits in front of PaymentProcessor.executePayment() from Abstraction.java. Every
+// request carries a client-chosen request ID; the first request with a given ID
+// runs the payment and every later one within the time window gets the same
+// outcome back instead of charging again. Requests that arrive while the first
+// is still running wait on its CompletableFuture rather than starting their own.
+//
+// Outcomes live in a ConcurrentHashMap. A FIFO queue of the same entries bounds
+// the cache: once it holds more than maxEntries, the oldest entries are dropped,
+// and entries whose payment finished more than the window ago are dropped as
+// they reach the head of the queue. An entry whose payment is still running is
+// never dropped or replaced, so eviction stops at it and the cache can run over
+// maxEntries by the payments in flight. A declined payment is an outcome like
+// any other and is replayed; a payment that throws is removed so the client can
+// retry it.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Abstraction.java IdempotentPayments.java && java -cp bin IdempotentPayments [requests] [copies] [threads]
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class IdempotentPayments {
+    // What a client gets back for a request ID
+    public static final class Outcome {
+        private final boolean successful;
+        private final long transactionId;
+        private final String paymentMethod;
+
+        Outcome(boolean successful, long transactionId, String paymentMethod) {
+            this.successful = successful;
+            this.transactionId = transactionId;
+            this.paymentMethod = paymentMethod;
+        }
+
+        public boolean isSuccessful() { return successful; }
+        public long getTransactionId() { return transactionId; }
+        public String getPaymentMethod() { return paymentMethod; }
+    }
+
+    private static final class Entry {
+        final String requestId;
+        final CompletableFuture<Outcome> outcome = new CompletableFuture<>();
+        // Set just before outcome completes; the window runs from here
+        volatile long completedNanos;
+
+        Entry(String requestId) {
+            this.requestId = requestId;
+        }
+
+        boolean isExpired(long now, long windowNanos) {
+            return outcome.isDone() && now - completedNanos >= windowNanos;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final long windowNanos;
+    private final int maxEntries;
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public IdempotentPayments(long window, TimeUnit unit, int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.windowNanos = unit.toNanos(window);
+        this.maxEntries = maxEntries;
+    }
+
+    // Runs the payment unless a request with the same ID is still running or
+    // finished within the window, in which case that request's outcome is returned
+    public Outcome execute(String requestId, PaymentProcessor processor) {
+        while (true) {
+            long now = System.nanoTime();
+            Entry existing = entries.get(requestId);
+            if (existing != null && !existing.isExpired(now, windowNanos)) {
+                return awaitDuplicate(existing);
+            }
+
+            Entry fresh = new Entry(requestId);
+            boolean claimed = existing == null
+                    ? entries.putIfAbsent(requestId, fresh) == null
+                    : entries.replace(requestId, existing, fresh);
+            if (!claimed) {
+                continue; // another thread got there first; use its entry
+            }
+            if (existing == null) {
+                size.incrementAndGet();
+            }
+            insertionOrder.offer(fresh);
+            evict(now);
+            return run(fresh, processor);
+        }
+    }
+
+    private Outcome awaitDuplicate(Entry entry) {
+        if (entry.outcome.isDone()) {
+            replays.increment();
+        } else {
+            coalesced.increment();
+        }
+        try {
+            return entry.outcome.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for payment " + entry.requestId, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Payment " + entry.requestId + " failed", cause);
+        }
+    }
+
+    private Outcome run(Entry entry, PaymentProcessor processor) {
+        executions.increment();
+        try {
+            boolean successful = processor.executePayment();
+            Outcome outcome = new Outcome(successful, processor.getTransactionId(), processor.getPaymentMethod());
+            entry.completedNanos = System.nanoTime();
+            entry.outcome.complete(outcome);
+            return outcome;
+        } catch (RuntimeException | Error e) {
+            // Not remembered: waiting duplicates see the failure, later retries run again
+            if (entries.remove(entry.requestId, entry)) {
+                size.decrementAndGet();
+            }
+            entry.outcome.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Drops entries from the head of the queue while the cache is over its bound
+    // or the head has outlived the window; stops at a payment still running
+    private void evict(long now) {
+        Entry head;
+        while ((head = insertionOrder.peek()) != null) {
+            boolean stale = entries.get(head.requestId) != head;
+            if (!stale && !head.outcome.isDone()) {
+                return;
+            }
+            boolean expired = head.isExpired(now, windowNanos);
+            if (!stale && !expired && size.get() <= maxEntries) {
+                return;
+            }
+            if (insertionOrder.remove(head) && !stale && entries.remove(head.requestId, head)) {
+                size.decrementAndGet();
+            }
+        }
+    }
+
+    public int size() { return size.get(); }
+    public long getExecutions() { return executions.sum(); }
+    public long getReplays() { return replays.sum(); }
+    public long getCoalesced() { return coalesced.sum(); }
+
+    static PaymentProcessor newProcessor(int request) {
+        double amount = 10 + request % 490;
+        switch (request % 3) {
+            case 0: return new CreditCardProcessor(amount, "USD", "4111111111111111", "12/25", "123");
+            case 1: return new PayPalProcessor(amount, "USD", "user@example.com", "password123");
+            default: return new BankTransferProcessor(amount, "USD", "12345678901", "123456789");
+        }
+    }
+
+    // Sends every request 'copies' times from 'threads' threads, copies of one
+    // request spread across threads so some of them overlap in flight
+    public static void main(String[] args) throws InterruptedException {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int copies = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        System.out.println("=== Idempotent Payments ===");
+        System.out.println("Unique requests: " + requests + ", copies of each: " + copies + ", threads: " + threads);
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            for (int round = 0; round < 2; round++) {
+                IdempotentPayments payments = new IdempotentPayments(10, TimeUnit.MINUTES, requests * 2);
+                AtomicLongArray transactionIds = new AtomicLongArray(requests);
+                AtomicInteger mismatches = new AtomicInteger();
+                CountDownLatch done = new CountDownLatch(threads);
+                long start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    int offset = t;
+                    new Thread(() -> {
+                        // Each thread walks all (request, copy) pairs it owns in request order
+                        for (int i = offset; i < requests * copies; i += threads) {
+                            int request = i / copies;
+                            Outcome outcome = payments.execute("req-" + request, newProcessor(request));
+                            long id = outcome.getTransactionId();
+                            if (!transactionIds.compareAndSet(request, 0, id) && transactionIds.get(request) != id) {
+                                mismatches.incrementAndGet();
+                            }
+                        }
+                        done.countDown();
+                    }, "client-" + t).start();
+                }
+                done.await();
+                long nanos = System.nanoTime() - start;
+
+                if (round == 1) {
+                    long total = (long) requests * copies;
+                    System.out.println("Handled " + total + " requests in " + String.format("%.1f", nanos / 1e6) +
+                                       " ms (" + String.format("%.0f", total / (nanos / 1e9)) + " requests/s)");
+                    System.out.println("Payments executed: " + payments.getExecutions() + ", replayed: " +
+                                       payments.getReplays() + ", coalesced in flight: " + payments.getCoalesced());
+                    System.out.println("Charged exactly once per request: " +
+                                       (payments.getExecutions() == requests && mismatches.get() == 0));
+                }
+            }
+
+            // Same traffic without the idempotency layer, for comparison
+            long start = System.nanoTime();
+            long charged = 0;
+            for (int i = 0; i < requests * copies; i++) {
+                if (newProcessor(i / copies).executePayment()) {
+                    charged++;
+                }
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("Without deduplication (one thread): " + charged + " charges in " +
+                               String.format("%.1f", nanos / 1e6) + " ms");
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+// Incremental payroll in Java
+//
+// Keeps a cached salary (in cents) for every registered Employee from
+// Polymorphism.java, plus running totals per employee category. Employees report
+// changes through EmployeeChangeListener; changed employees are queued once and
+// only they are recalculated by refresh(), so a re-run after a few updates costs
+// O(changes) rather than O(employees). An employee can be registered with one
+// payroll, once; registering it again is ignored.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java IncrementalPayroll.java && java -cp bin IncrementalPayroll [employees] [changes]
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class IncrementalPayroll {
+    private Employee[] employees;
+    private long[] cachedCents;
+    private byte[] categories;
+    private boolean[] dirty;
+    private int[] dirtyQueue;
+    private int size;
+    private int dirtyCount;
+
+    private final long[] centsByCategory = new long[PayrollEngine.CATEGORY_COUNT];
+    private final long[] countByCategory = new long[PayrollEngine.CATEGORY_COUNT];
+    private long totalCents;
+    private long recalculations;
+
+    public IncrementalPayroll(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.employees = new Employee[capacity];
+        this.cachedCents = new long[capacity];
+        this.categories = new byte[capacity];
+        this.dirty = new boolean[capacity];
+        this.dirtyQueue = new int[capacity];
+    }
+
+    // The listener an employee is given, which also marks it as registered here
+    private final class SlotListener implements EmployeeChangeListener {
+        private final int slot;
+
+        SlotListener(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public void employeeChanged(Employee employee) {
+            markDirty(slot);
+        }
+
+        IncrementalPayroll owner() {
+            return IncrementalPayroll.this;
+        }
+    }
+
+    // Starts tracking an employee and adds its current salary to the totals.
+    // Returns false if it is already registered here; throws if it has another
+    // listener, such as another payroll's.
+    public synchronized boolean register(Employee employee) {
+        EmployeeChangeListener existing = employee.getChangeListener();
+        if (existing instanceof SlotListener && ((SlotListener) existing).owner() == this) {
+            return false;
+        }
+        if (size == employees.length) {
+            grow();
+        }
+        int slot = size;
+        employee.setChangeListener(new SlotListener(slot));
+        size++;
+        employees[slot] = employee;
+        categories[slot] = (byte) PayrollEngine.categoryOf(employee);
+        long cents = PayrollEngine.toCents(employee.calculateSalary());
+        cachedCents[slot] = cents;
+        centsByCategory[categories[slot]] += cents;
+        countByCategory[categories[slot]]++;
+        totalCents += cents;
+        return true;
+    }
+
+    public void registerAll(Employee[] all) {
+        for (Employee employee : all) {
+            register(employee);
+        }
+    }
+
+    private void grow() {
+        int capacity = employees.length * 2;
+        employees = Arrays.copyOf(employees, capacity);
+        cachedCents = Arrays.copyOf(cachedCents, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+        dirty = Arrays.copyOf(dirty, capacity);
+        dirtyQueue = Arrays.copyOf(dirtyQueue, capacity);
+    }
+
+    // Queues a slot once, however many times its employee changes before refresh()
+    private synchronized void markDirty(int slot) {
+        if (!dirty[slot]) {
+            dirty[slot] = true;
+            dirtyQueue[dirtyCount++] = slot;
+        }
+    }
+
+    // Recalculates only the changed employees and applies the differences to the totals
+    public synchronized int refresh() {
+        int refreshed = dirtyCount;
+        for (int i = 0; i < dirtyCount; i++) {
+            int slot = dirtyQueue[i];
+            dirty[slot] = false;
+            long cents = PayrollEngine.toCents(employees[slot].calculateSalary());
+            long delta = cents - cachedCents[slot];
+            if (delta != 0) {
+                cachedCents[slot] = cents;
+                centsByCategory[categories[slot]] += delta;
+                totalCents += delta;
+            }
+        }
+        recalculations += dirtyCount;
+        dirtyCount = 0;
+        return refreshed;
+    }
+
+    public synchronized long getTotalCents() {
+        return totalCents;
+    }
+
+    public synchronized long getCents(int category) {
+        return centsByCategory[category];
+    }
+
+    public synchronized long getCount(int category) {
+        return countByCategory[category];
+    }
+
+    public synchronized int getPendingChanges() {
+        return dirtyCount;
+    }
+
+    public synchronized long getRecalculations() {
+        return recalculations;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public void displayTotals() {
+        for (int category = 0; category < PayrollEngine.CATEGORY_COUNT; category++) {
+            if (getCount(category) > 0) {
+                System.out.println("  " + PayrollEngine.CATEGORY_NAMES[category] + ": " + getCount(category) +
+                                   " employees, $" + PayrollEngine.appendCents(new StringBuilder(), getCents(category)));
+            }
+        }
+        System.out.println("  Total: $" + PayrollEngine.appendCents(new StringBuilder(), getTotalCents()));
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        System.out.println("=== Incremental Payroll ===");
+
+        Employee[] employees = PayrollEngine.generateEmployees(count, 7L);
+        IncrementalPayroll payroll = new IncrementalPayroll(count);
+        long start = System.nanoTime();
+        payroll.registerAll(employees);
+        System.out.println("Initial calculation of " + count + " employees: " +
+                           String.format("%.2f", (System.nanoTime() - start) / 1e6) + " ms");
+
+        // Update a handful of part-timers and contractors between runs
+        SplittableRandom random = new SplittableRandom(11L);
+        int applied = 0;
+        while (applied < changes) {
+            Employee employee = employees[random.nextInt(count)];
+            if (employee instanceof PartTimeEmployee) {
+                PartTimeEmployee partTimer = (PartTimeEmployee) employee;
+                partTimer.setHoursWorked(partTimer.getHoursWorked() + 1 + random.nextInt(8));
+                applied++;
+            } else if (employee instanceof Contractor) {
+                Contractor contractor = (Contractor) employee;
+                contractor.setProjectsCompleted(contractor.getProjectsCompleted() + 1);
+                applied++;
+            }
+        }
+
+        start = System.nanoTime();
+        int refreshed = payroll.refresh();
+        long incrementalNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        PayrollEngine.PayrollResult full = new PayrollEngine().calculate(employees);
+        long fullNanos = System.nanoTime() - start;
+
+        System.out.println("Incremental refresh of " + refreshed + " changed employees: " +
+                           String.format("%.3f", incrementalNanos / 1e6) + " ms");
+        System.out.println("Full recalculation: " + String.format("%.3f", fullNanos / 1e6) + " ms");
+        payroll.displayTotals();
+        System.out.println("Matches full recalculation: " + (full.getTotalCents() == payroll.getTotalCents()));
+    }
+}
@@ -1,11 +1,17 @@
 // Inheritance demonstration in Java
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 // Base class (Parent class)
 class Vehicle {
+    private static final AtomicInteger nextVehicleId = new AtomicInteger();
+    
     protected String brand;
     protected String model;
     protected int year;
     protected double price;
+    protected final int vehicleId;
+    private VehicleTelemetry telemetry;
     
     // Constructor
     public Vehicle(String brand, String model, int year, double price) {
@@ -13,25 +19,49 @@ class Vehicle {
         this.model = model;
         this.year = year;
         this.price = price;
+        this.vehicleId = nextVehicleId.incrementAndGet();
+    }
+    
+    // Lifecycle events are published to the telemetry stream when one is attached
+    public void attachTelemetry(VehicleTelemetry telemetry) {
+        this.telemetry = telemetry;
+    }
+    
+    protected void recordEvent(int eventType) {
+        if (telemetry != null) {
+            telemetry.publish(vehicleId, eventType);
+        }
+    }
+    
+    // Reports what the vehicle does; the line is only built when it will be shown
+    protected void report(String action) {
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + " " + action);
+        }
     }
     
     // Methods that can be inherited
     public void startEngine() {
-        System.out.println(brand + " " + model + " engine started!");
+        report("engine started!");
+        recordEvent(VehicleTelemetry.ENGINE_STARTED);
     }
     
     public void stopEngine() {
-        System.out.println(brand + " " + model + " engine stopped.");
+        report("engine stopped.");
+        recordEvent(VehicleTelemetry.ENGINE_STOPPED);
     }
     
     public void displayInfo() {
-        System.out.println("Vehicle: " + year + " " + brand + " " + model + " - $" + 
-                         String.format("%.2f", price));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Vehicle: " + year + " " + brand + " " + model + " - $" + 
+                             String.format("%.2f", price));
+        }
     }
     
     // Method that can be overridden
     public void accelerate() {
-        System.out.println(brand + " " + model + " is accelerating...");
+        report("is accelerating...");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     // Method that can be overridden
@@ -44,6 +74,7 @@ class Vehicle {
     public String getModel() { return model; }
     public int getYear() { return year; }
     public double getPrice() { return price; }
+    public int getVehicleId() { return vehicleId; }
 }
 
 // Derived class (Child class) - Single Inheritance
@@ -60,21 +91,24 @@ class Car extends Vehicle {
     
     // Method specific to Car class
     public void openTrunk() {
-        System.out.println(brand + " " + model + " trunk opened.");
+        report("trunk opened.");
     }
     
     // Overriding parent method
     @Override
     public void accelerate() {
-        System.out.println(brand + " " + model + " car is smoothly accelerating on the road...");
+        report("car is smoothly accelerating on the road...");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     // Overriding parent method with additional logic
     @Override
     public void displayInfo() {
         super.displayInfo(); // Call parent method
-        System.out.println("  - Doors: " + numberOfDoors);
-        System.out.println("  - Fuel Type: " + fuelType);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("  - Doors: " + numberOfDoors);
+            OutputSink.info("  - Fuel Type: " + fuelType);
+        }
     }
     
     // Overriding insurance calculation for cars
@@ -103,20 +137,23 @@ class Motorcycle extends Vehicle {
     
     // Method specific to Motorcycle
     public void wheelie() {
-        System.out.println(brand + " " + model + " is doing a wheelie! 🏍️");
+        report("is doing a wheelie! 🏍️");
     }
     
     // Overriding parent method
     @Override
     public void accelerate() {
-        System.out.println(brand + " " + model + " motorcycle is rapidly accelerating with a roar!");
+        report("motorcycle is rapidly accelerating with a roar!");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     @Override
     public void displayInfo() {
         super.displayInfo();
-        System.out.println("  - Engine Size: " + engineSize + "cc");
-        System.out.println("  - Has Sidecar: " + (hasSidecar ? "Yes" : "No"));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("  - Engine Size: " + engineSize + "cc");
+            OutputSink.info("  - Has Sidecar: " + (hasSidecar ? "Yes" : "No"));
+        }
     }
     
     // Different insurance calculation for motorcycles
@@ -146,26 +183,32 @@ class ElectricCar extends Car {
     
     // Method specific to electric cars
     public void chargeBattery() {
-        System.out.println(brand + " " + model + " is charging... Battery capacity: " + 
-                         batteryCapacity + "kWh");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + " is charging... Battery capacity: " + 
+                             batteryCapacity + "kWh");
+        }
     }
     
     // Overriding car's accelerate method
     @Override
     public void accelerate() {
-        System.out.println(brand + " " + model + " electric car is silently and instantly accelerating...");
+        report("electric car is silently and instantly accelerating...");
+        recordEvent(VehicleTelemetry.ACCELERATED);
     }
     
     @Override
     public void startEngine() {
-        System.out.println(brand + " " + model + " electric system activated silently.");
+        report("electric system activated silently.");
+        recordEvent(VehicleTelemetry.ENGINE_STARTED);
     }
     
     @Override
     public void displayInfo() {
         super.displayInfo();
-        System.out.println("  - Battery Capacity: " + batteryCapacity + "kWh");
-        System.out.println("  - Range: " + range + " miles");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("  - Battery Capacity: " + batteryCapacity + "kWh");
+            OutputSink.info("  - Range: " + range + " miles");
+        }
     }
     
     // Electric cars may have different insurance rates
@@ -194,13 +237,20 @@ abstract class Animal {
     // Abstract method - must be implemented by child classes
     public abstract void makeSound();
     
+    // Reports what the animal does; the line is only built when it will be shown
+    protected void report(String action) {
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " " + action);
+        }
+    }
+    
     // Concrete method that can be inherited
     public void sleep() {
-        System.out.println(name + " is sleeping...");
+        report("is sleeping...");
     }
     
     public void eat() {
-        System.out.println(name + " is eating...");
+        report("is eating...");
     }
     
     // Getters
@@ -218,11 +268,13 @@ class Dog extends Animal {
     
     @Override
     public void makeSound() {
-        System.out.println(name + " the " + breed + " barks: Woof! Woof!");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " the " + breed + " barks: Woof! Woof!");
+        }
     }
     
     public void fetch() {
-        System.out.println(name + " is fetching the ball!");
+        report("is fetching the ball!");
     }
     
     public String getBreed() { return breed; }
@@ -238,11 +290,11 @@ class Cat extends Animal {
     
     @Override
     public void makeSound() {
-        System.out.println(name + " meows: Meow! Meow!");
+        report("meows: Meow! Meow!");
     }
     
     public void purr() {
-        System.out.println(name + " is purring contentedly...");
+        report("is purring contentedly...");
     }
     
     public boolean isIndoor() { return isIndoor; }
@@ -265,17 +317,19 @@ class Bird extends Animal implements Flyable {
     
     @Override
     public void makeSound() {
-        System.out.println(name + " chirps: Tweet! Tweet!");
+        report("chirps: Tweet! Tweet!");
     }
     
     @Override
     public void fly() {
-        System.out.println(name + " is flying with wingspan of " + wingspan + " inches!");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " is flying with wingspan of " + wingspan + " inches!");
+        }
     }
     
     @Override
     public void land() {
-        System.out.println(name + " has landed gracefully.");
+        report("has landed gracefully.");
     }
     
     public double getWingspan() { return wingspan; }
@@ -285,23 +339,29 @@ public class Inheritance {
     
     // Method demonstrating polymorphism through inheritance
     public static void demonstrateVehicleOperations(Vehicle[] vehicles) {
-        System.out.println("\n=== Vehicle Operations Demo ===");
+        OutputSink.info("\n=== Vehicle Operations Demo ===");
         
         for (Vehicle vehicle : vehicles) {
-            System.out.println("\n--- " + vehicle.getBrand() + " " + vehicle.getModel() + " ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("\n--- " + vehicle.getBrand() + " " + vehicle.getModel() + " ---");
+            }
             vehicle.displayInfo();
             vehicle.startEngine();
             vehicle.accelerate(); // This will call the overridden method for each type
-            System.out.println("Insurance: $" + String.format("%.2f", vehicle.calculateInsurance()));
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("Insurance: $" + String.format("%.2f", vehicle.calculateInsurance()));
+            }
             vehicle.stopEngine();
         }
     }
     
     public static void demonstrateAnimalBehavior(Animal[] animals) {
-        System.out.println("\n=== Animal Behavior Demo ===");
+        OutputSink.info("\n=== Animal Behavior Demo ===");
         
         for (Animal animal : animals) {
-            System.out.println("\n--- " + animal.getName() + " ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("\n--- " + animal.getName() + " ---");
+            }
             animal.makeSound(); // Polymorphic behavior
             animal.eat();       // Inherited method
             animal.sleep();     // Inherited method
@@ -320,8 +380,22 @@ public class Inheritance {
         
         // Demonstrating inheritance - child classes have access to parent methods
         Vehicle[] vehicles = {sedan, sportBike, tesla};
+        
+        // Lifecycle calls are also captured as telemetry events
+        VehicleTelemetry telemetry = new VehicleTelemetry(1024);
+        VehicleTelemetry.Aggregator aggregator = new VehicleTelemetry.Aggregator();
+        telemetry.addHandler(aggregator);
+        telemetry.start();
+        for (Vehicle vehicle : vehicles) {
+            vehicle.attachTelemetry(telemetry);
+        }
+        
         demonstrateVehicleOperations(vehicles);
         
+        telemetry.shutdown();
+        System.out.println();
+        aggregator.displaySummary();
+        
         // Demonstrating specific methods available to child classes
         System.out.println("\n=== Specific Child Class Methods ===");
         sedan.openTrunk();
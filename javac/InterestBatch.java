@@ -0,0 +1,473 @@
+// Nightly interest and fees for BankAccount in Java
+//
+// Applies one day's interest and fees to every account from Encapsulation.java.
+// Going through deposit() would print a line and add a history entry for every
+// account, so the batch uses BankAccount.accrue() instead, which changes only
+// the balance. The accounts are split into fixed-size chunks by position, and
+// worker threads claim chunks until none are left. For each chunk a worker:
+// 1. has each account work out interest on a positive balance at the daily
+//    rate, and a flat fee if the balance is under the minimum, and apply the
+//    net change, all under the account's lock, so a withdrawal cannot change
+//    the balance between the fee being worked out and being charged;
+// 2. for accounts logged to a WriteAheadLog, waits once for the chunk's
+//    ACCRUED records to reach disk rather than once per account;
+// 3. appends what was applied to the day's journal as one block and forces it
+//    to disk.
+//
+// A journal block is a header (chunk, entries, accounts skipped, interest and
+// fee totals, CRC32) and then, per account, varints for the gap from the
+// previous account's position, the interest in cents and the fee in cents. An
+// account usually costs under five bytes.
+//
+// The blocks are also the checkpoints. Each account remembers the last day
+// applied to it, and accrue() applies a day at most once. A second run for the
+// same day reads the journal and re-applies every complete block; an account
+// already done is skipped, so this only matters for accounts rebuilt without
+// the day. The run then cuts off a torn block at the end and processes the
+// chunks with no block. If a run dies after applying a chunk but before its
+// block is written, the next run finds those accounts done and counts them as
+// skipped: their changes are in their balances, and in the WriteAheadLog if
+// they are logged, but not in this journal's totals. The accounts must be
+// passed in the same order on every run of a day, since chunks are positions.
+//
+// A run can be given a time window: workers stop claiming chunks when it closes,
+// and the next run for the day picks up where that one stopped. Only one run
+// for a given day may be active at a time.
+//
+// main() opens millions of accounts, runs the batch with a window too short to
+// finish, damages the end of the journal as a crash would, and then runs it
+// again to completion. It checks that every account got exactly one day of
+// interest and that the balances moved by exactly the journal's totals.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Encapsulation.java InterestBatch.java && java -Xmx3g -cp bin InterestBatch [accounts] [threads] [chunkSize]
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+public final class InterestBatch {
+    private static final int JOURNAL_MAGIC = 0x494e544a; // "INTJ"
+    private static final int FILE_HEADER = 16; // magic, epoch day, chunk size, account count
+    // Payload length, CRC32 of the rest, chunk, entries, skipped, interest and fee totals
+    private static final int BLOCK_HEADER = 4 + 4 + 4 + 4 + 4 + 8 + 8;
+    private static final int MAX_ENTRY = 5 + 10 + 10;
+
+    private final Path directory;
+    private final Policy policy;
+    private final int chunkSize;
+    private final int threads;
+
+    public InterestBatch(Path directory, Policy policy, int chunkSize, int threads) {
+        if (chunkSize < 1 || threads < 1) {
+            throw new IllegalArgumentException("Chunk size and threads must be positive");
+        }
+        this.directory = directory;
+        this.policy = policy;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    // ---- Policy ----
+
+    // Interest and fees in whole cents. Interest is paid on positive balances at
+    // annualRate / 365 a day; a balance under the minimum pays a flat fee, but
+    // never more than it holds after interest.
+    public static final class Policy {
+        private final double dailyRate;
+        private final long minimumBalanceCents;
+        private final long lowBalanceFeeCents;
+
+        public Policy(double annualRate, double minimumBalance, double lowBalanceFee) {
+            this.dailyRate = annualRate / 365;
+            this.minimumBalanceCents = Math.round(minimumBalance * 100);
+            this.lowBalanceFeeCents = Math.round(lowBalanceFee * 100);
+        }
+
+        long interestCents(double balance) {
+            return balance > 0 ? Math.round(balance * 100 * dailyRate) : 0;
+        }
+
+        long feeCents(double balance, long interestCents) {
+            long cents = Math.round(balance * 100);
+            if (cents >= minimumBalanceCents) {
+                return 0;
+            }
+            return Math.max(0, Math.min(lowBalanceFeeCents, cents + interestCents));
+        }
+    }
+
+    // ---- Runs ----
+
+    public static final class Summary {
+        final int chunks;
+        final int chunksFromJournal;
+        final int chunksProcessed;
+        final long accrued;
+        final long skipped;
+        final long interestCents;
+        final long feeCents;
+        final long journalBytes;
+        final long nanos;
+
+        Summary(int chunks, int chunksFromJournal, int chunksProcessed, long accrued, long skipped,
+                long interestCents, long feeCents, long journalBytes, long nanos) {
+            this.chunks = chunks;
+            this.chunksFromJournal = chunksFromJournal;
+            this.chunksProcessed = chunksProcessed;
+            this.accrued = accrued;
+            this.skipped = skipped;
+            this.interestCents = interestCents;
+            this.feeCents = feeCents;
+            this.journalBytes = journalBytes;
+            this.nanos = nanos;
+        }
+
+        public boolean isComplete() {
+            return chunksFromJournal + chunksProcessed == chunks;
+        }
+
+        @Override
+        public String toString() {
+            return (chunksFromJournal + chunksProcessed) + "/" + chunks + " chunks done (" + chunksFromJournal +
+                   " from the journal), " + accrued + " accounts accrued, " + skipped + " skipped, interest $" +
+                   String.format("%.2f", interestCents / 100.0) + ", fees $" + String.format("%.2f", feeCents / 100.0) +
+                   ", journal " + journalBytes + " bytes, " + String.format("%.1f", nanos / 1e6) + " ms";
+        }
+    }
+
+    // Running totals of one run, shared by its workers
+    private static final class Totals {
+        final AtomicInteger chunks = new AtomicInteger();
+        final LongAdder accrued = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder interestCents = new LongAdder();
+        final LongAdder feeCents = new LongAdder();
+    }
+
+    public Summary run(BankAccount[] accounts, LocalDate day) throws IOException, InterruptedException {
+        return run(accounts, day, Long.MAX_VALUE);
+    }
+
+    // Stops claiming chunks once windowMillis have passed; the summary says
+    // whether the day is complete
+    public Summary run(BankAccount[] accounts, LocalDate day, long windowMillis)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        long deadline = windowMillis >= TimeUnit.NANOSECONDS.toMillis(Long.MAX_VALUE / 2)
+                ? Long.MAX_VALUE : start + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        int epochDay = Math.toIntExact(day.toEpochDay());
+        int chunks = (int) (((long) accounts.length + chunkSize - 1) / chunkSize);
+        Files.createDirectories(directory);
+        Path file = directory.resolve("interest-" + day + ".journal");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                    StandardOpenOption.WRITE)) {
+            Totals fromJournal = new Totals();
+            BitSet done = new BitSet(chunks);
+            long[] end = { replayJournal(channel, accounts, epochDay, done, fromJournal) };
+
+            Totals totals = new Totals();
+            AtomicInteger nextChunk = new AtomicInteger();
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread worker = new Thread(() -> {
+                    Worker state = new Worker();
+                    try {
+                        while (System.nanoTime() < deadline && failure.get() == null) {
+                            int chunk = nextChunk.getAndIncrement();
+                            if (chunk >= chunks) {
+                                break;
+                            }
+                            if (!done.get(chunk)) {
+                                processChunk(chunk, accounts, epochDay, channel, end, state, totals);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }, "interest-" + t);
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            Throwable error = failure.get();
+            if (error instanceof IOException) {
+                throw (IOException) error;
+            } else if (error != null) {
+                throw new IllegalStateException("Interest batch failed", error);
+            }
+
+            return new Summary(chunks, fromJournal.chunks.get(), totals.chunks.get(),
+                               fromJournal.accrued.sum() + totals.accrued.sum(),
+                               fromJournal.skipped.sum() + totals.skipped.sum(),
+                               fromJournal.interestCents.sum() + totals.interestCents.sum(),
+                               fromJournal.feeCents.sum() + totals.feeCents.sum(),
+                               channel.size(), System.nanoTime() - start);
+        }
+    }
+
+    // Buffers one worker reuses for every chunk it processes
+    private final class Worker {
+        final ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER + chunkSize * MAX_ENTRY);
+        final int[] positions = new int[chunkSize];
+        final long[] lsns = new long[chunkSize];
+        final long[] applied = new long[2];
+        final CRC32 crc = new CRC32();
+    }
+
+    private void processChunk(int chunk, BankAccount[] accounts, int epochDay, FileChannel channel, long[] end,
+                              Worker worker, Totals totals) throws IOException {
+        int from = chunk * chunkSize;
+        int to = Math.min(from + chunkSize, accounts.length);
+        ByteBuffer block = worker.block;
+        block.clear();
+        block.position(BLOCK_HEADER);
+        int entries = 0;
+        int skipped = 0;
+        long interestTotal = 0;
+        long feeTotal = 0;
+        int previous = from;
+        for (int i = from; i < to; i++) {
+            long lsn = accounts[i].accrue(epochDay, policy, worker.applied);
+            if (lsn < 0) {
+                skipped++;
+                continue;
+            }
+            long interest = worker.applied[0];
+            long fee = worker.applied[1];
+            putVarLong(block, i - previous);
+            putVarLong(block, interest);
+            putVarLong(block, fee);
+            previous = i;
+            worker.positions[entries] = i;
+            worker.lsns[entries] = lsn;
+            entries++;
+            interestTotal += interest;
+            feeTotal += fee;
+        }
+        awaitJournals(accounts, worker.positions, worker.lsns, entries);
+
+        int payload = block.position() - BLOCK_HEADER;
+        block.putInt(0, payload);
+        block.putInt(8, chunk);
+        block.putInt(12, entries);
+        block.putInt(16, skipped);
+        block.putLong(20, interestTotal);
+        block.putLong(28, feeTotal);
+        worker.crc.reset();
+        worker.crc.update(block.array(), 8, BLOCK_HEADER - 8 + payload);
+        block.putInt(4, (int) worker.crc.getValue());
+        block.flip();
+        synchronized (end) {
+            while (block.hasRemaining()) {
+                end[0] += channel.write(block, end[0]);
+            }
+        }
+        channel.force(false);
+
+        totals.chunks.incrementAndGet();
+        totals.accrued.add(entries);
+        totals.skipped.add(skipped);
+        totals.interestCents.add(interestTotal);
+        totals.feeCents.add(feeTotal);
+    }
+
+    // Waits for the ACCRUED records of logged accounts to reach disk. LSNs rise
+    // within a log, so going backwards the first wait on each log covers the
+    // rest of it and the others return at once.
+    private static void awaitJournals(BankAccount[] accounts, int[] positions, long[] lsns, int entries) {
+        for (int k = entries - 1; k >= 0; k--) {
+            if (lsns[k] > 0) {
+                accounts[positions[k]].awaitJournal(lsns[k]);
+            }
+        }
+    }
+
+    // Re-applies every complete block in the journal, marks its chunk done and
+    // returns where the next block goes. A new journal gets its file header; a
+    // torn or damaged block is cut off with everything after it.
+    private long replayJournal(FileChannel channel, BankAccount[] accounts, int epochDay, BitSet done,
+                               Totals totals) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER);
+        if (channel.size() < FILE_HEADER) {
+            header.putInt(JOURNAL_MAGIC).putInt(epochDay).putInt(chunkSize).putInt(accounts.length).flip();
+            channel.truncate(0);
+            while (header.hasRemaining()) {
+                channel.write(header, FILE_HEADER - header.remaining());
+            }
+            channel.force(true);
+            return FILE_HEADER;
+        }
+        readFully(channel, header, 0);
+        if (header.getInt(0) != JOURNAL_MAGIC || header.getInt(4) != epochDay || header.getInt(8) != chunkSize ||
+                header.getInt(12) != accounts.length) {
+            throw new IOException("Journal was written for a different day, chunk size or number of accounts");
+        }
+
+        long position = FILE_HEADER;
+        long size = channel.size();
+        ByteBuffer blockHeader = ByteBuffer.allocate(BLOCK_HEADER);
+        CRC32 crc = new CRC32();
+        while (position + BLOCK_HEADER <= size) {
+            blockHeader.clear();
+            readFully(channel, blockHeader, position);
+            int payload = blockHeader.getInt(0);
+            if (payload < 0 || payload > chunkSize * MAX_ENTRY || position + BLOCK_HEADER + payload > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(payload);
+            readFully(channel, body, position + BLOCK_HEADER);
+            crc.reset();
+            crc.update(blockHeader.array(), 8, BLOCK_HEADER - 8);
+            crc.update(body.array(), 0, payload);
+            int chunk = blockHeader.getInt(8);
+            if ((int) crc.getValue() != blockHeader.getInt(4) || chunk < 0 || chunk * (long) chunkSize >= accounts.length) {
+                break;
+            }
+
+            int entries = blockHeader.getInt(12);
+            int index = chunk * chunkSize;
+            int[] positions = new int[entries];
+            long[] lsns = new long[entries];
+            for (int k = 0; k < entries; k++) {
+                index += (int) getVarLong(body);
+                long interest = getVarLong(body);
+                long fee = getVarLong(body);
+                positions[k] = index;
+                lsns[k] = accounts[index].accrue(epochDay, (interest - fee) / 100.0);
+            }
+            awaitJournals(accounts, positions, lsns, entries);
+            done.set(chunk);
+            totals.chunks.incrementAndGet();
+            totals.accrued.add(entries);
+            totals.skipped.add(blockHeader.getInt(16));
+            totals.interestCents.add(blockHeader.getLong(20));
+            totals.feeCents.add(blockHeader.getLong(28));
+            position += BLOCK_HEADER + payload;
+        }
+        if (position < size) {
+            channel.truncate(position);
+            channel.force(true);
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Journal ended early");
+            }
+        }
+        buffer.flip();
+    }
+
+    // Seven bits at a time, low bits first, high bit set on all but the last byte
+    private static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    // ---- Benchmark ----
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int chunkSize = args.length > 2 ? Integer.parseInt(args[2]) : 16_384;
+        Path directory = Files.createTempDirectory("interest-batch");
+        System.out.println("=== Nightly Interest Batch ===");
+        System.out.println("Accounts: " + count + ", threads: " + threads + ", chunk size: " + chunkSize +
+                           ", directory: " + directory);
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            // Balances from $0 to $5,000 in whole dollars, so some pay the fee
+            PinVerifier.HashedPin pin = PinVerifier.hash("1234", 1);
+            BankAccount[] accounts = new BankAccount[count];
+            for (int i = 0; i < count; i++) {
+                accounts[i] = new BankAccount(String.valueOf(100_000_000_000L + i), "Holder", openingBalance(i), pin);
+            }
+
+            Policy policy = new Policy(0.02, 100, 0.50);
+            InterestBatch batch = new InterestBatch(directory, policy, chunkSize, threads);
+            LocalDate day = LocalDate.of(2025, 1, 31);
+
+            Summary partial = batch.run(accounts, day, 150);
+            System.out.println("Run with a 150 ms window: " + partial);
+
+            // A crash part-way through writing a block leaves its start at the end
+            Path journal = directory.resolve("interest-" + day + ".journal");
+            Files.write(journal, new byte[] { 100, 0, 0, 0, 7, 7, 7, 7, 3 }, StandardOpenOption.APPEND);
+
+            Summary finished = batch.run(accounts, day);
+            System.out.println("Restarted run: " + finished);
+            System.out.println("Accounts per second in the restarted run: " +
+                               String.format("%.0f", (count - partial.accrued) / (finished.nanos / 1e9)));
+
+            long movedCents = 0;
+            int missed = 0;
+            for (int i = 0; i < count; i++) {
+                movedCents += Math.round((accounts[i].getBalance() - openingBalance(i)) * 100);
+                if (!Double.isNaN(accounts[i].balanceForAccrual((int) day.toEpochDay()))) {
+                    missed++;
+                }
+            }
+            System.out.println("Complete: " + finished.isComplete() + ", accounts without the day: " + missed +
+                               ", balances moved by the journal totals: " +
+                               (movedCents == finished.interestCents - finished.feeCents) + ", journal bytes per account: " +
+                               String.format("%.2f", finished.journalBytes / (double) count));
+
+            Summary again = batch.run(accounts, day);
+            System.out.println("Running the finished day again: " + again);
+        } finally {
+            OutputSink.install(previous);
+            deleteRecursively(directory);
+        }
+    }
+
+    private static double openingBalance(int i) {
+        return (i * 7_919L) % 5_001;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
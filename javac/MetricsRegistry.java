@@ -0,0 +1,314 @@
+// In-process metrics registry for the Java examples
+//
+// Domain operations (deposits, withdrawals, library checkouts, payments, database
+// operations, salary calculations) report to named counters and timers held here.
+// Counters are LongAdders so concurrent updates do not contend. Timers add a
+// latency histogram with log-linear buckets in the style of HdrHistogram: eight
+// sub-buckets per power of two, so any recorded value is known to within 12.5%
+// while the whole range from 1 ns to centuries fits in a fixed 488-slot array.
+//
+// Collection is off by default, and a disabled counter or timer costs a single
+// volatile read. It can be switched on with setEnabled(true) or from the command
+// line, which also lets an unmodified example export its numbers:
+//   -Dmetrics.enabled=true            collect
+//   -Dmetrics.file=bin/metrics.txt    write a snapshot to this file at exit
+//   -Dmetrics.jmx=true                publish the registry as a JMX MXBean
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public final class MetricsRegistry {
+    public static final String MBEAN_NAME = "dartorjava:type=MetricsRegistry";
+
+    // Value returned by Timer.start() while collection is off
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static volatile boolean enabled = Boolean.getBoolean("metrics.enabled");
+    private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    static {
+        String file = System.getProperty("metrics.file");
+        if (file != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    writeSnapshot(Paths.get(file));
+                } catch (IOException e) {
+                    System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+                }
+            }, "metrics-export"));
+        }
+        if (Boolean.getBoolean("metrics.jmx")) {
+            registerMBean();
+        }
+    }
+
+    private MetricsRegistry() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    // Returns the counter with this name, creating it on first use. Call sites keep
+    // the result in a static final field rather than looking it up on every call.
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Timer timer(String name) {
+        return timers.computeIfAbsent(name, Timer::new);
+    }
+
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+    }
+
+    // ---- Metric types ----
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+
+        Counter(String name) {
+            this.name = name;
+        }
+
+        public void increment() {
+            if (enabled) {
+                count.increment();
+            }
+        }
+
+        public void add(long amount) {
+            if (enabled) {
+                count.add(amount);
+            }
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count.sum(); }
+
+        void reset() {
+            count.reset();
+        }
+    }
+
+    // Counts calls and records how long each one took:
+    //   long start = TIMER.start();
+    //   try { ... } finally { TIMER.stop(start); }
+    public static final class Timer {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final Histogram histogram = new Histogram();
+
+        Timer(String name) {
+            this.name = name;
+        }
+
+        public long start() {
+            return enabled ? System.nanoTime() : NOT_TIMED;
+        }
+
+        public void stop(long start) {
+            if (start != NOT_TIMED) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                nanos = 0;
+            }
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            histogram.record(nanos);
+        }
+
+        public String getName() { return name; }
+        public long getCount() { return count.sum(); }
+        public long getTotalNanos() { return totalNanos.sum(); }
+        public long getMaxNanos() { return maxNanos.get(); }
+
+        // Upper bound of the bucket holding the given fraction of recorded values,
+        // capped at the largest value actually seen
+        public long getPercentileNanos(double fraction) {
+            return Math.min(histogram.percentile(fraction), getMaxNanos());
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+            histogram.reset();
+        }
+    }
+
+    // Log-linear histogram: values below 8 get their own bucket; above that each
+    // power of two [2^e, 2^(e+1)) is split into 8 equal sub-buckets
+    static final class Histogram {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        // Smallest value that falls into the bucket
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long subBucket = bucket % SUB_BUCKETS;
+            return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        }
+
+        void record(long value) {
+            buckets.incrementAndGet(bucketOf(value));
+        }
+
+        long percentile(double fraction) {
+            long[] counts = new long[BUCKETS];
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+        }
+    }
+
+    // ---- Export ----
+
+    // One line per metric, sorted by name
+    public static String snapshot() {
+        StringBuilder out = new StringBuilder(256);
+        out.append("# metrics snapshot ").append(java.time.Instant.now())
+           .append(enabled ? "" : " (collection disabled)").append('\n');
+        for (Counter counter : new TreeMap<>(counters).values()) {
+            out.append(counter.getName()).append(" count=").append(counter.getCount()).append('\n');
+        }
+        for (Timer timer : new TreeMap<>(timers).values()) {
+            long count = timer.getCount();
+            out.append(timer.getName()).append(" count=").append(count);
+            if (count > 0) {
+                out.append(" mean_us=").append(String.format("%.3f", timer.getTotalNanos() / 1e3 / count))
+                   .append(" p50_us=").append(String.format("%.3f", timer.getPercentileNanos(0.50) / 1e3))
+                   .append(" p99_us=").append(String.format("%.3f", timer.getPercentileNanos(0.99) / 1e3))
+                   .append(" max_us=").append(String.format("%.3f", timer.getMaxNanos() / 1e3));
+            }
+            out.append('\n');
+        }
+        return out.toString();
+    }
+
+    public static void writeSnapshot(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, snapshot().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Management interface seen by JMX clients such as jconsole
+    public interface MetricsMXBean {
+        boolean isEnabled();
+        void setEnabled(boolean enabled);
+        Map<String, Long> getCounts();
+        Map<String, Long> getP99Nanos();
+        String getSnapshot();
+        void reset();
+    }
+
+    static final class MetricsBean implements MetricsMXBean {
+        @Override public boolean isEnabled() { return MetricsRegistry.isEnabled(); }
+        @Override public void setEnabled(boolean on) { MetricsRegistry.setEnabled(on); }
+        @Override public String getSnapshot() { return snapshot(); }
+        @Override public void reset() { MetricsRegistry.reset(); }
+
+        @Override
+        public Map<String, Long> getCounts() {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Counter counter : counters.values()) {
+                counts.put(counter.getName(), counter.getCount());
+            }
+            for (Timer timer : timers.values()) {
+                counts.put(timer.getName(), timer.getCount());
+            }
+            return counts;
+        }
+
+        @Override
+        public Map<String, Long> getP99Nanos() {
+            Map<String, Long> p99 = new TreeMap<>();
+            for (Timer timer : timers.values()) {
+                p99.put(timer.getName(), timer.getPercentileNanos(0.99));
+            }
+            return p99;
+        }
+    }
+
+    // Publishes the registry on the platform MBean server; safe to call more than once
+    public static synchronized void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new MetricsBean(), name);
+            }
+        } catch (JMException e) {
+            OutputSink.warn("Could not register metrics MBean: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+// Output sink for the Java examples
+//
+// The domain classes report what they do through OutputSink instead of writing to
+// System.out directly. The default sink prints to the console exactly as before;
+// benchmarks and simulations can install a no-op sink, raise the level, or move
+// console I/O onto a background thread with the asynchronous batched sink.
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public abstract class OutputSink {
+    public enum Level { DEBUG, INFO, WARN, OFF }
+
+    private static volatile OutputSink current = console(Level.INFO);
+
+    private final Level threshold;
+
+    protected OutputSink(Level threshold) {
+        this.threshold = threshold;
+    }
+
+    // Writes one line; only called for levels at or above the threshold
+    protected abstract void write(Level level, String line);
+
+    public void flush() {
+    }
+
+    public void close() {
+        flush();
+    }
+
+    public Level getThreshold() {
+        return threshold;
+    }
+
+    // ---- Static access used by the domain classes ----
+
+    public static OutputSink current() {
+        return current;
+    }
+
+    // Replaces the active sink and returns the previous one so callers can restore it
+    public static OutputSink install(OutputSink sink) {
+        OutputSink previous = current;
+        previous.flush();
+        current = sink;
+        return previous;
+    }
+
+    // Lets callers skip building a message nobody will see
+    public static boolean isEnabled(Level level) {
+        return level.compareTo(current.threshold) >= 0 && level != Level.OFF;
+    }
+
+    public static void debug(String line) {
+        log(Level.DEBUG, line);
+    }
+
+    public static void info(String line) {
+        log(Level.INFO, line);
+    }
+
+    public static void warn(String line) {
+        log(Level.WARN, line);
+    }
+
+    private static void log(Level level, String line) {
+        OutputSink sink = current;
+        if (level.compareTo(sink.threshold) >= 0) {
+            sink.write(level, line);
+        }
+    }
+
+    // ---- Factories ----
+
+    public static OutputSink console(Level threshold) {
+        return new ConsoleSink(threshold);
+    }
+
+    public static OutputSink noOp() {
+        return NoOpSink.INSTANCE;
+    }
+
+    public static OutputSink async(Level threshold, int queueCapacity) {
+        return new AsyncBatchedSink(threshold, new FileOutputStream(FileDescriptor.out), queueCapacity);
+    }
+
+    public static OutputSink async(Level threshold, OutputStream target, int queueCapacity) {
+        return new AsyncBatchedSink(threshold, target, queueCapacity);
+    }
+
+    // Synchronous console output, one println per line (the original behaviour)
+    static final class ConsoleSink extends OutputSink {
+        ConsoleSink(Level threshold) {
+            super(threshold);
+        }
+
+        @Override
+        protected void write(Level level, String line) {
+            System.out.println(line);
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    }
+
+    // Discards everything; isEnabled() is false for every level
+    static final class NoOpSink extends OutputSink {
+        static final NoOpSink INSTANCE = new NoOpSink();
+
+        private NoOpSink() {
+            super(Level.OFF);
+        }
+
+        @Override
+        protected void write(Level level, String line) {
+        }
+    }
+
+    // Hands lines to a background writer thread, which drains them in batches and
+    // writes each batch with a single buffered write and flush. Callers only pay for
+    // a queue offer; they block only when the queue is full.
+    static final class AsyncBatchedSink extends OutputSink {
+        private static final int MAX_BATCH = 4096;
+
+        private final BlockingQueue<String> queue;
+        private final Writer writer;
+        private final Thread thread;
+        private final AtomicLong enqueued = new AtomicLong();
+        private final AtomicLong written = new AtomicLong();
+        // Notified by the writer thread after each batch and when it exits
+        private final Object progress = new Object();
+        private volatile boolean closed;
+
+        AsyncBatchedSink(Level threshold, OutputStream target, int queueCapacity) {
+            super(threshold);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.writer = new OutputStreamWriter(target, Charset.defaultCharset());
+            this.thread = new Thread(this::drainLoop, "output-sink-writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        @Override
+        protected void write(Level level, String line) {
+            if (closed) {
+                return;
+            }
+            enqueued.incrementAndGet();
+            try {
+                // Waits for room, but gives up once the sink closes, since the
+                // writer thread may already have stopped draining
+                while (!queue.offer(line, 10, TimeUnit.MILLISECONDS)) {
+                    if (closed) {
+                        enqueued.decrementAndGet();
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                enqueued.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drainLoop() {
+            try {
+                drain();
+            } finally {
+                synchronized (progress) {
+                    progress.notifyAll();
+                }
+            }
+        }
+
+        private void drain() {
+            List<String> batch = new ArrayList<>(MAX_BATCH);
+            StringBuilder text = new StringBuilder(64 * 1024);
+            while (!closed || !queue.isEmpty()) {
+                try {
+                    String first = queue.poll(10, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    for (int i = 0; i < batch.size(); i++) {
+                        text.append(batch.get(i)).append(System.lineSeparator());
+                    }
+                    writer.write(text.toString());
+                    writer.flush();
+                    written.addAndGet(batch.size());
+                } catch (InterruptedException e) {
+                    return;
+                } catch (IOException e) {
+                    // Nowhere left to report to; drop the batch and keep draining
+                    written.addAndGet(batch.size());
+                } finally {
+                    batch.clear();
+                    text.setLength(0);
+                }
+                synchronized (progress) {
+                    progress.notifyAll();
+                }
+            }
+        }
+
+        // Waits until every line handed to the sink so far has been written
+        @Override
+        public void flush() {
+            long target = enqueued.get();
+            synchronized (progress) {
+                while (written.get() < target && thread.isAlive()) {
+                    try {
+                        progress.wait(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            flush();
+            closed = true;
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+// Partitioned multi-threaded GameShape world in Java
+//
+// Splits the world into vertical strips, one per worker thread. Each worker owns
+// the GameShape entities inside its strip and moves them through move() in
+// parallel with the others. An entity whose new x maps to another strip is
+// written to an outbox addressed to that partition; the same partitionOf() test
+// picks both, so rounding at a strip edge cannot send an entity to its own outbox. After a barrier, each partition
+// collects the entities addressed to it. Only the source partition writes an
+// outbox, only the target reads it, and the two never overlap, so no locks are
+// needed beyond the two barriers per frame.
+//
+// A shape in a SpatialGrid updates the grid from move(), and the grid is not
+// thread-safe, so such shapes are refused: add() rejects them, and run() checks
+// again before starting in case one was inserted into a grid after it was added.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java PartitionedWorld.java && java -cp bin PartitionedWorld [entities] [frames] [maxWorkers]
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+public class PartitionedWorld {
+    // Growable structure-of-arrays list of entities with their velocities
+    static final class EntityList {
+        GameShape[] shapes = new GameShape[256];
+        double[] vx = new double[256];
+        double[] vy = new double[256];
+        int size;
+
+        void add(GameShape shape, double velocityX, double velocityY) {
+            if (size == shapes.length) {
+                int capacity = size * 2;
+                shapes = Arrays.copyOf(shapes, capacity);
+                vx = Arrays.copyOf(vx, capacity);
+                vy = Arrays.copyOf(vy, capacity);
+            }
+            shapes[size] = shape;
+            vx[size] = velocityX;
+            vy[size] = velocityY;
+            size++;
+        }
+
+        // Swap-remove; the caller must revisit index i afterwards
+        void removeAt(int i) {
+            int last = --size;
+            shapes[i] = shapes[last];
+            vx[i] = vx[last];
+            vy[i] = vy[last];
+            shapes[last] = null;
+        }
+
+        void clear() {
+            Arrays.fill(shapes, 0, size, null);
+            size = 0;
+        }
+    }
+
+    // One vertical strip of the world and the thread-confined state that goes with it
+    final class Partition {
+        final int index;
+        final EntityList entities = new EntityList();
+        // outboxes[target] holds entities leaving this strip for partition 'target'
+        final EntityList[] outboxes;
+
+        Partition(int index, int partitionCount) {
+            this.index = index;
+            this.outboxes = new EntityList[partitionCount];
+            for (int i = 0; i < partitionCount; i++) {
+                outboxes[i] = new EntityList();
+            }
+        }
+
+        void update(double dt) {
+            EntityList list = entities;
+            int i = 0;
+            while (i < list.size) {
+                GameShape shape = list.shapes[i];
+                double nx = shape.getX() + list.vx[i] * dt;
+                double ny = shape.getY() + list.vy[i] * dt;
+                if (nx < 0 || nx >= width) {
+                    list.vx[i] = -list.vx[i];
+                    nx = shape.getX();
+                }
+                if (ny < 0 || ny >= height) {
+                    list.vy[i] = -list.vy[i];
+                    ny = shape.getY();
+                }
+                shape.move(nx, ny);
+
+                int target = partitionOf(nx);
+                if (target != index) {
+                    outboxes[target].add(shape, list.vx[i], list.vy[i]);
+                    list.removeAt(i);
+                } else {
+                    i++;
+                }
+            }
+        }
+
+        // Collects everything the other partitions handed over during update()
+        void receive() {
+            for (Partition source : partitions) {
+                if (source == this) {
+                    continue;
+                }
+                EntityList inbox = source.outboxes[index];
+                for (int i = 0; i < inbox.size; i++) {
+                    entities.add(inbox.shapes[i], inbox.vx[i], inbox.vy[i]);
+                }
+                inbox.clear();
+            }
+        }
+    }
+
+    private final double width;
+    private final double height;
+    private final double stripWidth;
+    private final Partition[] partitions;
+
+    public PartitionedWorld(double width, double height, int partitionCount) {
+        this.width = width;
+        this.height = height;
+        this.stripWidth = width / partitionCount;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition(i, partitionCount);
+        }
+    }
+
+    int partitionOf(double x) {
+        int index = (int) (x / stripWidth);
+        return index < 0 ? 0 : (index >= partitions.length ? partitions.length - 1 : index);
+    }
+
+    public void add(GameShape shape, double velocityX, double velocityY) {
+        if (shape.isIndexed()) {
+            throw new IllegalArgumentException(shape.getName() + " is in a SpatialGrid, which partitions cannot update in parallel");
+        }
+        partitions[partitionOf(shape.getX())].entities.add(shape, velocityX, velocityY);
+    }
+
+    public int size() {
+        int total = 0;
+        for (Partition partition : partitions) {
+            total += partition.entities.size;
+        }
+        return total;
+    }
+
+    // True when every entity sits in the strip that owns it
+    public boolean isConsistent() {
+        for (Partition partition : partitions) {
+            for (int i = 0; i < partition.entities.size; i++) {
+                if (partitionOf(partition.entities.shapes[i].getX()) != partition.index) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // Runs the given number of frames with one thread per partition and returns
+    // the wall time of each frame in nanoseconds
+    public long[] run(int frames, double dt) throws InterruptedException {
+        return run(frames, dt, null);
+    }
+
+    // As run(frames, dt), also storing the entity count after each frame in
+    // frameSizes when it is not null
+    public long[] run(int frames, double dt, int[] frameSizes) throws InterruptedException {
+        for (Partition partition : partitions) {
+            for (int i = 0; i < partition.entities.size; i++) {
+                if (partition.entities.shapes[i].isIndexed()) {
+                    throw new IllegalStateException(partition.entities.shapes[i].getName() +
+                                                    " was added to a SpatialGrid while in the world");
+                }
+            }
+        }
+        long[] frameNanos = new long[frames];
+        long[] frameStart = {System.nanoTime()};
+        int[] frame = {0};
+        CyclicBarrier updated = new CyclicBarrier(partitions.length);
+        CyclicBarrier received = new CyclicBarrier(partitions.length, () -> {
+            long now = System.nanoTime();
+            if (frameSizes != null) {
+                frameSizes[frame[0]] = size();
+            }
+            frameNanos[frame[0]++] = now - frameStart[0];
+            frameStart[0] = now;
+        });
+
+        Thread[] threads = new Thread[partitions.length];
+        for (int p = 0; p < partitions.length; p++) {
+            Partition partition = partitions[p];
+            threads[p] = new Thread(() -> {
+                try {
+                    for (int f = 0; f < frames; f++) {
+                        partition.update(dt);
+                        updated.await();
+                        partition.receive();
+                        received.await();
+                    }
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "world-partition-" + p);
+            threads[p].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return frameNanos;
+    }
+
+    static PartitionedWorld build(int count, int partitionCount, double width, double height) {
+        SplittableRandom random = new SplittableRandom(21L);
+        PartitionedWorld world = new PartitionedWorld(width, height, partitionCount);
+        for (int i = 0; i < count; i++) {
+            GameShape shape = new GameShape("Entity " + i, random.nextDouble() * width, random.nextDouble() * height);
+            world.add(shape, random.nextDouble() * 400 - 200, random.nextDouble() * 400 - 200);
+        }
+        return world;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxWorkers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        double dt = 1.0 / 60.0;
+        System.out.println("=== Partitioned GameShape World ===");
+        System.out.println("Entities: " + count + ", frames: " + frames + ", available cores: " +
+                           Runtime.getRuntime().availableProcessors());
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            double baseline = 0;
+            // 1, 2, 4, ... workers, finishing with maxWorkers itself
+            for (int step = 1; ; step *= 2) {
+                int workers = Math.min(step, maxWorkers);
+                PartitionedWorld world = build(count, workers, 4000, 4000);
+                world.run(frames / 4, dt);
+                int[] frameSizes = new int[frames];
+                long[] frameNanos = world.run(frames, dt, frameSizes);
+                boolean kept = true;
+                for (int size : frameSizes) {
+                    kept &= size == count;
+                }
+                long total = 0;
+                for (long nanos : frameNanos) {
+                    total += nanos;
+                }
+                double average = total / 1e6 / frames;
+                if (workers == 1) {
+                    baseline = average;
+                }
+                System.out.println(workers + " worker(s): " + String.format("%.3f", average) + " ms per frame, speedup " +
+                                   String.format("%.2f", baseline / average) + "x, entities " + world.size() +
+                                   ", kept every frame " + kept + ", consistent " + world.isConsistent());
+                if (workers == maxWorkers) {
+                    break;
+                }
+            }
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+}
@@ -0,0 +1,324 @@
+// Per-payment-method rate limiting and circuit breaking in Java
+//
+// Wraps PaymentProcessor.executePayment() from Abstraction.java. Payments are
+// grouped by getPaymentMethod(), and every method gets its own token bucket and
+// circuit breaker, so one slow or failing backend sheds its own traffic without
+// holding up the others.
+//
+// Both are lock-free and keep their whole state in a single AtomicLong:
+// - The token bucket is kept as a "theoretical arrival time" (the generic cell
+//   rate algorithm): each payment pushes it forward by one token's worth of time,
+//   and a payment is refused if that would put it more than a burst ahead of now.
+// - The circuit breaker counts consecutive failures, where a call slower than the
+//   configured limit also counts as a failure. After enough of them it opens and
+//   refuses every call for a cool-down period. After that it lets one probe call
+//   through (half-open): success closes it again, failure re-opens it.
+//
+// FaultyProcessor is a local stub backend whose latency and failure rate can be
+// changed at runtime, used by main() to degrade one method while others stay up.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Abstraction.java PaymentGuard.java && java -cp bin PaymentGuard [threads] [seconds]
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class PaymentGuard {
+    public enum Result { COMPLETED, DECLINED, FAILED, RATE_LIMITED, CIRCUIT_OPEN }
+
+    // Limits applied to one payment method
+    public static final class Limits {
+        final double paymentsPerSecond;
+        final int burst;
+        final int failureThreshold;
+        final long slowCallNanos;
+        final long openNanos;
+
+        public Limits(double paymentsPerSecond, int burst, int failureThreshold, long slowCallMillis, long openMillis) {
+            if (paymentsPerSecond <= 0 || burst < 1 || failureThreshold < 1) {
+                throw new IllegalArgumentException("Rate, burst and failure threshold must be positive");
+            }
+            this.paymentsPerSecond = paymentsPerSecond;
+            this.burst = burst;
+            this.failureThreshold = failureThreshold;
+            this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+            this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        }
+    }
+
+    // Generic cell rate algorithm: state is the time at which the bucket would be full again
+    static final class TokenBucket {
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final AtomicLong theoreticalArrival;
+
+        TokenBucket(double perSecond, int burst) {
+            this.intervalNanos = Math.max(1, (long) (1e9 / perSecond));
+            this.burstNanos = intervalNanos * burst;
+            this.theoreticalArrival = new AtomicLong(System.nanoTime());
+        }
+
+        boolean tryAcquire(long now) {
+            while (true) {
+                long arrival = theoreticalArrival.get();
+                long next = Math.max(arrival - now, 0) + now + intervalNanos;
+                if (next - now > burstNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(arrival, next)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    static final class CircuitBreaker {
+        static final int CLOSED = 0;
+        static final int OPEN = 1;
+        static final int HALF_OPEN = 2;
+
+        private final Limits limits;
+        private final long origin = System.nanoTime();
+        // (nanos since origin when last opened << 2) | state
+        private final AtomicLong state = new AtomicLong(CLOSED);
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        CircuitBreaker(Limits limits) {
+            this.limits = limits;
+        }
+
+        int getState() {
+            return (int) (state.get() & 3);
+        }
+
+        // True if the call may go ahead. Exactly one caller gets through when an
+        // open breaker's cool-down has passed; it becomes the half-open probe.
+        boolean tryAcquire(long now) {
+            long current = state.get();
+            int status = (int) (current & 3);
+            if (status == CLOSED) {
+                return true;
+            }
+            if (status == OPEN && now - origin - (current >>> 2) >= limits.openNanos) {
+                return state.compareAndSet(current, (current & ~3L) | HALF_OPEN);
+            }
+            return false;
+        }
+
+        // Gives an unused half-open slot back without restarting the cool-down
+        void releaseProbe() {
+            long current = state.get();
+            if ((current & 3) == HALF_OPEN) {
+                state.compareAndSet(current, (current & ~3L) | OPEN);
+            }
+        }
+
+        void onSuccess() {
+            consecutiveFailures.set(0);
+            long current = state.get();
+            if ((current & 3) == HALF_OPEN) {
+                state.compareAndSet(current, CLOSED);
+            }
+        }
+
+        void onFailure(long now) {
+            long current = state.get();
+            int status = (int) (current & 3);
+            long opened = ((now - origin) << 2) | OPEN;
+            if (status == HALF_OPEN) {
+                state.compareAndSet(current, opened);
+            } else if (status == CLOSED && consecutiveFailures.incrementAndGet() >= limits.failureThreshold) {
+                if (state.compareAndSet(current, opened)) {
+                    consecutiveFailures.set(0);
+                }
+            }
+        }
+    }
+
+    // Everything kept for one payment method
+    static final class MethodGuard {
+        final String method;
+        final Limits limits;
+        final TokenBucket bucket;
+        final CircuitBreaker breaker;
+        final LongAdder[] results = new LongAdder[Result.values().length];
+
+        MethodGuard(String method, Limits limits) {
+            this.method = method;
+            this.limits = limits;
+            this.bucket = new TokenBucket(limits.paymentsPerSecond, limits.burst);
+            this.breaker = new CircuitBreaker(limits);
+            for (int i = 0; i < results.length; i++) {
+                results[i] = new LongAdder();
+            }
+        }
+
+        Result count(Result result) {
+            results[result.ordinal()].increment();
+            return result;
+        }
+    }
+
+    private final Limits defaultLimits;
+    private final Map<String, Limits> methodLimits = new ConcurrentHashMap<>();
+    private final Map<String, MethodGuard> guards = new ConcurrentHashMap<>();
+
+    public PaymentGuard(Limits defaultLimits) {
+        this.defaultLimits = defaultLimits;
+    }
+
+    // Overrides the limits for one method; takes effect before its first payment
+    public void configure(String paymentMethod, Limits limits) {
+        methodLimits.put(paymentMethod, limits);
+    }
+
+    public Result execute(PaymentProcessor processor) {
+        MethodGuard guard = guards.computeIfAbsent(processor.getPaymentMethod(),
+                method -> new MethodGuard(method, methodLimits.getOrDefault(method, defaultLimits)));
+        long now = System.nanoTime();
+        // Breaker first: an open circuit should not use up rate-limit tokens
+        if (!guard.breaker.tryAcquire(now)) {
+            return guard.count(Result.CIRCUIT_OPEN);
+        }
+        if (!guard.bucket.tryAcquire(now)) {
+            // A probe that is rate limited hands the half-open slot back
+            guard.breaker.releaseProbe();
+            return guard.count(Result.RATE_LIMITED);
+        }
+
+        boolean completed;
+        try {
+            completed = processor.executePayment();
+        } catch (RuntimeException e) {
+            guard.breaker.onFailure(System.nanoTime());
+            return guard.count(Result.FAILED);
+        }
+        long end = System.nanoTime();
+        if (end - now > guard.limits.slowCallNanos) {
+            guard.breaker.onFailure(end);
+        } else {
+            guard.breaker.onSuccess();
+        }
+        return guard.count(completed ? Result.COMPLETED : Result.DECLINED);
+    }
+
+    public long getCount(String paymentMethod, Result result) {
+        MethodGuard guard = guards.get(paymentMethod);
+        return guard == null ? 0 : guard.results[result.ordinal()].sum();
+    }
+
+    public String getCircuitState(String paymentMethod) {
+        MethodGuard guard = guards.get(paymentMethod);
+        int state = guard == null ? CircuitBreaker.CLOSED : guard.breaker.getState();
+        return state == CircuitBreaker.OPEN ? "open" : state == CircuitBreaker.HALF_OPEN ? "half-open" : "closed";
+    }
+
+    // Stub backend with adjustable latency and failure rate
+    static final class FaultyProcessor extends PaymentProcessor {
+        private final String method;
+        volatile long latencyMillis;
+        volatile double failureRate;
+
+        FaultyProcessor(String method, double amount) {
+            super(amount, "USD");
+            this.method = method;
+        }
+
+        @Override
+        public boolean validatePayment() {
+            return true;
+        }
+
+        @Override
+        public boolean processPayment() {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                throw new IllegalStateException(method + " backend unavailable");
+            }
+            return true;
+        }
+
+        @Override
+        public void sendConfirmation() {
+            issueTransactionId(method.substring(0, 2).toUpperCase());
+        }
+
+        @Override
+        public String getPaymentMethod() {
+            return method;
+        }
+    }
+
+    // Three backends under load from several threads. Halfway through, PayPal
+    // turns slow and flaky; its breaker should open and shed that traffic while
+    // card and bank-transfer payments carry on.
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        System.out.println("=== Payment Guard ===");
+        System.out.println("Client threads: " + threads + ", run time: " + seconds + " s");
+
+        FaultyProcessor[] backends = {
+            new FaultyProcessor("Credit Card", 120.00),
+            new FaultyProcessor("PayPal", 45.50),
+            new FaultyProcessor("Bank Transfer", 900.00)
+        };
+        PaymentGuard guard = new PaymentGuard(new Limits(20_000, 200, 5, 20, 250));
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        LongAdder paypalCallerNanos = new LongAdder();
+        LongAdder paypalCalls = new LongAdder();
+        try {
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            Thread[] clients = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                clients[t] = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < end) {
+                        FaultyProcessor backend = backends[random.nextInt(backends.length)];
+                        long start = System.nanoTime();
+                        guard.execute(backend);
+                        if (backend == backends[1]) {
+                            paypalCallerNanos.add(System.nanoTime() - start);
+                            paypalCalls.increment();
+                        }
+                    }
+                }, "payment-client-" + t);
+                clients[t].start();
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(seconds) / 2);
+            backends[1].latencyMillis = 100;
+            backends[1].failureRate = 0.5;
+            System.out.println("PayPal degraded: 100 ms latency, 50% failures");
+            for (Thread client : clients) {
+                client.join();
+            }
+        } finally {
+            OutputSink.install(previous);
+        }
+
+        for (FaultyProcessor backend : backends) {
+            String method = backend.getPaymentMethod();
+            StringBuilder line = new StringBuilder(method).append(": ");
+            for (Result result : Result.values()) {
+                line.append(result).append('=').append(guard.getCount(method, result)).append(' ');
+            }
+            System.out.println(line.append("circuit ").append(guard.getCircuitState(method)));
+        }
+        System.out.println("Average PayPal call as seen by clients: " +
+                           String.format("%.3f", paypalCallerNanos.sum() / 1e6 / Math.max(1, paypalCalls.sum())) + " ms");
+    }
+}
@@ -0,0 +1,189 @@
+// Payment credential validation in Java
+//
+// Used by validatePayment() in the payment processors from Abstraction.java. Each
+// payment method has one RuleSet, built once when the class loads: a rule for each
+// of its two credential fields and the message to show when that field fails.
+// - Card numbers must be 16 digits and pass the Luhn checksum; the CVV is 3 digits
+// - PayPal needs an address of the form local@domain.tld and a 6+ character password
+// - Bank transfers need an 8 to 17 digit account number and a 9 digit routing number
+//
+// Rules read the field a character at a time, either from any CharSequence or
+// from ASCII bytes in a caller's buffer, so checking a payment allocates nothing.
+
+public final class PaymentValidation {
+    // Returned by check() when every field passes
+    public static final int VALID = -1;
+
+    public static final RuleSet CREDIT_CARD = new RuleSet(
+            new Digits(16, 16, true), "Invalid card number",
+            new Digits(3, 3, false), "Invalid CVV");
+    public static final RuleSet PAYPAL = new RuleSet(
+            new Email(), "Invalid email format",
+            new Length(6, Integer.MAX_VALUE), "Password too short");
+    public static final RuleSet BANK_TRANSFER = new RuleSet(
+            new Digits(8, 17, false), "Invalid account number",
+            new Digits(9, 9, false), "Invalid routing number");
+
+    private PaymentValidation() {
+    }
+
+    // ---- Rule sets ----
+
+    public static final class RuleSet {
+        private final FieldRule[] rules;
+        private final String[] messages;
+
+        RuleSet(FieldRule first, String firstMessage, FieldRule second, String secondMessage) {
+            this.rules = new FieldRule[] { first, second };
+            this.messages = new String[] { firstMessage, secondMessage };
+        }
+
+        // Index of the first field that fails, or VALID
+        public int check(CharSequence first, CharSequence second) {
+            if (!rules[0].test(first, 0, first.length())) {
+                return 0;
+            }
+            return rules[1].test(second, 0, second.length()) ? VALID : 1;
+        }
+
+        public int check(byte[] data, int firstOffset, int firstLength, int secondOffset, int secondLength) {
+            if (!rules[0].test(data, firstOffset, firstOffset + firstLength)) {
+                return 0;
+            }
+            return rules[1].test(data, secondOffset, secondOffset + secondLength) ? VALID : 1;
+        }
+
+        public String message(int field) {
+            return messages[field];
+        }
+
+    }
+
+    // ---- Field rules ----
+
+    // A check on the characters [from, to) of a field
+    abstract static class FieldRule {
+        abstract boolean test(CharSequence value, int from, int to);
+
+        abstract boolean test(byte[] value, int from, int to);
+    }
+
+    // Only ASCII digits, optionally with a valid Luhn check digit at the end
+    static final class Digits extends FieldRule {
+        private final int minLength;
+        private final int maxLength;
+        private final boolean luhn;
+
+        Digits(int minLength, int maxLength, boolean luhn) {
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+            this.luhn = luhn;
+        }
+
+        @Override
+        boolean test(CharSequence value, int from, int to) {
+            int length = to - from;
+            if (length < minLength || length > maxLength) {
+                return false;
+            }
+            // Walks from the check digit leftwards, doubling every second digit
+            int sum = 0;
+            boolean doubled = false;
+            for (int i = to - 1; i >= from; i--) {
+                int digit = value.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+                sum += doubled ? LUHN_DOUBLED[digit] : digit;
+                doubled = !doubled;
+            }
+            return !luhn || sum % 10 == 0;
+        }
+
+        @Override
+        boolean test(byte[] value, int from, int to) {
+            int length = to - from;
+            if (length < minLength || length > maxLength) {
+                return false;
+            }
+            int sum = 0;
+            boolean doubled = false;
+            for (int i = to - 1; i >= from; i--) {
+                int digit = value[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return false;
+                }
+                sum += doubled ? LUHN_DOUBLED[digit] : digit;
+                doubled = !doubled;
+            }
+            return !luhn || sum % 10 == 0;
+        }
+    }
+
+    // Digit sum of 2 * d for each digit d
+    private static final int[] LUHN_DOUBLED = { 0, 2, 4, 6, 8, 1, 3, 5, 7, 9 };
+
+    static final class Length extends FieldRule {
+        private final int minLength;
+        private final int maxLength;
+
+        Length(int minLength, int maxLength) {
+            this.minLength = minLength;
+            this.maxLength = maxLength;
+        }
+
+        @Override
+        boolean test(CharSequence value, int from, int to) {
+            return to - from >= minLength && to - from <= maxLength;
+        }
+
+        @Override
+        boolean test(byte[] value, int from, int to) {
+            return to - from >= minLength && to - from <= maxLength;
+        }
+    }
+
+    // Exactly one '@' with something before it, and a '.' after it that has
+    // characters on both sides; no spaces anywhere
+    static final class Email extends FieldRule {
+        @Override
+        boolean test(CharSequence value, int from, int to) {
+            int at = -1;
+            int lastDot = -1;
+            for (int i = from; i < to; i++) {
+                char c = value.charAt(i);
+                if (c == '@') {
+                    if (at >= 0) {
+                        return false;
+                    }
+                    at = i;
+                } else if (c == '.' && at >= 0) {
+                    lastDot = i;
+                } else if (c <= ' ') {
+                    return false;
+                }
+            }
+            return at > from && lastDot > at + 1 && lastDot < to - 1;
+        }
+
+        @Override
+        boolean test(byte[] value, int from, int to) {
+            int at = -1;
+            int lastDot = -1;
+            for (int i = from; i < to; i++) {
+                int c = value[i] & 0xff;
+                if (c == '@') {
+                    if (at >= 0) {
+                        return false;
+                    }
+                    at = i;
+                } else if (c == '.' && at >= 0) {
+                    lastDot = i;
+                } else if (c <= ' ') {
+                    return false;
+                }
+            }
+            return at > from && lastDot > at + 1 && lastDot < to - 1;
+        }
+    }
+}
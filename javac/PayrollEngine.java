@@ -0,0 +1,301 @@
+// Parallel payroll engine in Java
+//
+// Computes payroll for very large Employee arrays from Polymorphism.java on a
+// fork-join pool. Each leaf task makes one pass over its slice, casting each
+// employee to its exact class (FullTimeEmployee, PartTimeEmployee or
+// Contractor) before calling calculateSalary(), so every call site only ever
+// sees one receiver class. Salaries are rounded to whole cents and summed as
+// longs, which keeps totals exact no matter how the work is split. With a single
+// core, or a single batch of work, the same pass runs on the calling thread:
+// splitting then only adds overhead.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java PayrollEngine.java && java -cp bin PayrollEngine [employees] [report]
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class PayrollEngine {
+    // Employee categories that the totals and the report are broken down by
+    static final int FULL_TIME = 0;
+    static final int PART_TIME = 1;
+    static final int CONTRACTOR = 2;
+    static final int OTHER = 3;
+    static final int CATEGORY_COUNT = 4;
+
+    static final String[] CATEGORY_NAMES = {"Full-time", "Part-time", "Contractor", "Other"};
+
+    // Exact payroll totals in cents, per category
+    public static final class PayrollResult {
+        final long[] centsByCategory = new long[CATEGORY_COUNT];
+        final long[] countByCategory = new long[CATEGORY_COUNT];
+
+        void set(int category, long cents, long count) {
+            centsByCategory[category] = cents;
+            countByCategory[category] = count;
+        }
+
+        void add(PayrollResult other) {
+            for (int i = 0; i < CATEGORY_COUNT; i++) {
+                centsByCategory[i] += other.centsByCategory[i];
+                countByCategory[i] += other.countByCategory[i];
+            }
+        }
+
+        public long getTotalCents() {
+            long total = 0;
+            for (long cents : centsByCategory) {
+                total += cents;
+            }
+            return total;
+        }
+
+        public long getEmployeeCount() {
+            long total = 0;
+            for (long count : countByCategory) {
+                total += count;
+            }
+            return total;
+        }
+
+        public long getCents(int category) { return centsByCategory[category]; }
+        public long getCount(int category) { return countByCategory[category]; }
+    }
+
+    private final ForkJoinPool pool;
+    private final int batchSize;
+
+    public PayrollEngine(ForkJoinPool pool, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.pool = pool;
+        this.batchSize = batchSize;
+    }
+
+    public PayrollEngine() {
+        this(ForkJoinPool.commonPool(), 8192);
+    }
+
+    // Splitting only pays when the slices can run at the same time, so one batch
+    // or one core gets the single-pass loop on the calling thread
+    public PayrollResult calculate(Employee[] employees) {
+        if (employees.length <= batchSize || pool.getParallelism() <= 1 ||
+                Runtime.getRuntime().availableProcessors() == 1) {
+            return sumRange(employees, 0, employees.length);
+        }
+        return pool.invoke(new PayrollTask(employees, 0, employees.length, batchSize));
+    }
+
+    // Salary in whole cents, rounded half-up like the two-decimal display
+    static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    static int categoryOf(Employee employee) {
+        Class<?> type = employee.getClass();
+        if (type == FullTimeEmployee.class) {
+            return FULL_TIME;
+        } else if (type == PartTimeEmployee.class) {
+            return PART_TIME;
+        } else if (type == Contractor.class) {
+            return CONTRACTOR;
+        }
+        return OTHER;
+    }
+
+    // Splits the array in halves until a slice fits in one batch
+    static final class PayrollTask extends RecursiveTask<PayrollResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final Employee[] employees;
+        private final int from;
+        private final int to;
+        private final int batchSize;
+
+        PayrollTask(Employee[] employees, int from, int to, int batchSize) {
+            this.employees = employees;
+            this.from = from;
+            this.to = to;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        protected PayrollResult compute() {
+            if (to - from <= batchSize) {
+                return sumRange(employees, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            PayrollTask left = new PayrollTask(employees, from, middle, batchSize);
+            PayrollTask right = new PayrollTask(employees, middle, to, batchSize);
+            left.fork();
+            PayrollResult result = right.compute();
+            result.add(left.join());
+            return result;
+        }
+    }
+
+    // One pass over a slice. Each branch casts to its exact class, so every
+    // calculateSalary() call site only ever sees one receiver class.
+    static PayrollResult sumRange(Employee[] employees, int from, int to) {
+        long fullTimeCents = 0;
+        long partTimeCents = 0;
+        long contractorCents = 0;
+        long otherCents = 0;
+        int fullTimeCount = 0;
+        int partTimeCount = 0;
+        int contractorCount = 0;
+        int otherCount = 0;
+        for (int i = from; i < to; i++) {
+            Employee employee = employees[i];
+            Class<?> type = employee.getClass();
+            if (type == FullTimeEmployee.class) {
+                fullTimeCents += toCents(((FullTimeEmployee) employee).calculateSalary());
+                fullTimeCount++;
+            } else if (type == PartTimeEmployee.class) {
+                partTimeCents += toCents(((PartTimeEmployee) employee).calculateSalary());
+                partTimeCount++;
+            } else if (type == Contractor.class) {
+                contractorCents += toCents(((Contractor) employee).calculateSalary());
+                contractorCount++;
+            } else {
+                otherCents += toCents(employee.calculateSalary());
+                otherCount++;
+            }
+        }
+        PayrollResult result = new PayrollResult();
+        result.set(FULL_TIME, fullTimeCents, fullTimeCount);
+        result.set(PART_TIME, partTimeCents, partTimeCount);
+        result.set(CONTRACTOR, contractorCents, contractorCount);
+        result.set(OTHER, otherCents, otherCount);
+        return result;
+    }
+
+    // The straightforward loop from Polymorphism.calculateTotalPayroll, without the output
+    public static double sequentialTotal(Employee[] employees) {
+        double totalPayroll = 0;
+        for (Employee employee : employees) {
+            totalPayroll += employee.calculateSalary();
+        }
+        return totalPayroll;
+    }
+
+    // Writes one line per employee followed by the per-category totals
+    public static void writeReport(Path file, Employee[] employees, PayrollResult result) throws IOException {
+        StringBuilder line = new StringBuilder(128);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("id,name,type,salary");
+            writer.newLine();
+            for (Employee employee : employees) {
+                line.setLength(0);
+                line.append(employee.getId()).append(',')
+                    .append(employee.getName()).append(',')
+                    .append(CATEGORY_NAMES[categoryOf(employee)]).append(',');
+                appendCents(line, toCents(employee.calculateSalary()));
+                writer.append(line);
+                writer.newLine();
+            }
+            writer.newLine();
+            for (int category = 0; category < CATEGORY_COUNT; category++) {
+                if (result.getCount(category) == 0) {
+                    continue;
+                }
+                line.setLength(0);
+                line.append("# ").append(CATEGORY_NAMES[category]).append(": ")
+                    .append(result.getCount(category)).append(" employees, $");
+                appendCents(line, result.getCents(category));
+                writer.append(line);
+                writer.newLine();
+            }
+            line.setLength(0);
+            line.append("# Total: ").append(result.getEmployeeCount()).append(" employees, $");
+            appendCents(line, result.getTotalCents());
+            writer.append(line);
+            writer.newLine();
+        }
+    }
+
+    // Formats cents as dollars with two decimals, without String.format
+    static StringBuilder appendCents(StringBuilder out, long cents) {
+        if (cents < 0) {
+            out.append('-');
+            cents = -cents;
+        }
+        long remainder = cents % 100;
+        out.append(cents / 100).append('.');
+        if (remainder < 10) {
+            out.append('0');
+        }
+        return out.append(remainder);
+    }
+
+    static Employee[] generateEmployees(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Employee[] employees = new Employee[count];
+        for (int i = 0; i < count; i++) {
+            int id = 100_000 + i;
+            switch (random.nextInt(3)) {
+                case 0:
+                    employees[i] = new FullTimeEmployee("Employee " + id, id,
+                            40_000 + random.nextInt(80_000), 5_000 + random.nextInt(20_000));
+                    break;
+                case 1:
+                    employees[i] = new PartTimeEmployee("Employee " + id, id,
+                            5 + random.nextInt(35), 15.0 + random.nextInt(3_500) / 100.0);
+                    break;
+                default:
+                    employees[i] = new Contractor("Employee " + id, id,
+                            1 + random.nextInt(12), 1_000 + random.nextInt(9_000));
+                    break;
+            }
+        }
+        return employees;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        System.out.println("=== Parallel Payroll Engine ===");
+        System.out.println("Employees: " + count + ", parallelism: " + ForkJoinPool.commonPool().getParallelism());
+
+        Employee[] employees = generateEmployees(count, 2024L);
+        PayrollEngine engine = new PayrollEngine();
+
+        // Warm up both paths before measuring
+        double sequential = 0;
+        PayrollResult result = null;
+        for (int round = 0; round < 5; round++) {
+            sequential = sequentialTotal(employees);
+            result = engine.calculate(employees);
+        }
+
+        int rounds = 10;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            sequential = sequentialTotal(employees);
+        }
+        long sequentialNanos = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            result = engine.calculate(employees);
+        }
+        long parallelNanos = (System.nanoTime() - start) / rounds;
+
+        System.out.println("Sequential loop: " + String.format("%.2f", sequentialNanos / 1e6) + " ms, total $" +
+                           String.format("%.2f", sequential));
+        System.out.println("Payroll engine:  " + String.format("%.2f", parallelNanos / 1e6) + " ms, total $" +
+                           appendCents(new StringBuilder(), result.getTotalCents()));
+        System.out.println("Speedup: " + String.format("%.2f", (double) sequentialNanos / parallelNanos) + "x");
+
+        Path report = Paths.get(args.length > 1 ? args[1] : "bin/payroll-report.csv");
+        writeReport(report, employees, result);
+        System.out.println("Report written to " + report.toAbsolutePath());
+    }
+}
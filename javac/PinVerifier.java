@@ -0,0 +1,412 @@
+// Hashed PIN verification for BankAccount in Java
+//
+// BankAccount from Encapsulation.java used to keep its PIN as plain text and
+// compare it with String.equals(). Now it keeps only a salted PBKDF2-HMAC-SHA256
+// hash of the PIN, and each account has a PinVerifier that checks attempts
+// against it:
+// - The stored hash and the hash of an attempt are compared with
+//   MessageDigest.isEqual(), which reads every byte whatever the outcome, so the
+//   time taken says nothing about how close a guess was.
+// - Every attempt is counted as a failure before the PIN is hashed, and a match
+//   clears the count. After maxFailures failures in a row the account is locked
+//   for a second, then two, four and so on up to 15 minutes, and a locked account
+//   refuses attempts without hashing them. Because attempts are counted first,
+//   many threads guessing at once get no more tries than one thread would.
+// - Hashing takes milliseconds on purpose. An account used many times a second
+//   should not pay that every time, so a correct PIN leaves a short-lived proof
+//   behind: an HMAC of the salt and PIN under a key made fresh in each process.
+//   Later attempts are checked against the proof first, which takes about a
+//   microsecond, and fall back to PBKDF2 only if it does not match. Changing the
+//   PIN discards the proof.
+//
+// A four-digit PIN has only 10,000 values, so no hash protects it from someone
+// who has copied the stored hashes. The salt and iteration count make that
+// slower; it is the lockout that stops guessing through the accounts themselves.
+// The iteration count can be set with -Dpin.hash.iterations=<n>.
+//
+// main() reports what hashing costs, verification throughput with and without
+// the proof cache, and how many guesses attacker threads get evaluated against
+// one account, with and without the lockout, while a legitimate caller keeps
+// using another.
+//
+// Compile and run from the javac directory:
+//   javac -d bin PinVerifier.java && java -cp bin PinVerifier [iterations] [attackers] [seconds]
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public final class PinVerifier {
+    public enum Result { MATCHED, MISMATCHED, LOCKED_OUT }
+
+    static final int DEFAULT_ITERATIONS = Integer.getInteger("pin.hash.iterations", 10_000);
+
+    private static final String ENCODING_PREFIX = "pbkdf2-sha256";
+    private static final String HMAC = "HmacSHA256";
+    private static final int SALT_BYTES = 16;
+
+    private static final int MAX_FAILURES = 3;
+    private static final long BASE_LOCKOUT_MILLIS = 1_000;
+    private static final long MAX_LOCKOUT_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final long PROOF_TTL_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    // The state word holds the failure count in its low bits and the time the
+    // lockout ends, in milliseconds on the CLOCK_ORIGIN clock, above them
+    private static final int FAILURE_BITS = 16;
+    private static final long FAILURE_MASK = (1L << FAILURE_BITS) - 1;
+    private static final long CLOCK_ORIGIN = System.nanoTime();
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    // Reinitialised with the PIN as its key for every hash
+    private static final ThreadLocal<Mac> PBKDF2_MACS = ThreadLocal.withInitial(() -> newMac(null));
+    // Keyed once with a random key that never leaves this process
+    private static final ThreadLocal<Mac> PROOF_MACS;
+    static {
+        byte[] proofKey = randomBytes(32);
+        PROOF_MACS = ThreadLocal.withInitial(() -> newMac(proofKey));
+    }
+
+    private static final MetricsRegistry.Counter CACHE_HITS = MetricsRegistry.counter("pin.verify.cacheHit");
+    private static final MetricsRegistry.Counter HASHED = MetricsRegistry.counter("pin.verify.hashed");
+    private static final MetricsRegistry.Counter REFUSED = MetricsRegistry.counter("pin.verify.lockedOut");
+
+    private final int maxFailures;
+    private final long baseLockoutMillis;
+    private final long proofTtlMillis;
+    private final AtomicLong state = new AtomicLong();
+    private volatile HashedPin hashed;
+    private volatile Proof proof; // null until a PIN matches
+
+    public PinVerifier(HashedPin hashed) {
+        this(hashed, MAX_FAILURES, BASE_LOCKOUT_MILLIS, PROOF_TTL_MILLIS);
+    }
+
+    // A policy other than the default, for benchmarks; a zero TTL turns the proof
+    // cache off
+    PinVerifier(HashedPin hashed, int maxFailures, long baseLockoutMillis, long proofTtlMillis) {
+        if (maxFailures < 1) {
+            throw new IllegalArgumentException("At least one failure must be allowed");
+        }
+        this.hashed = hashed;
+        this.maxFailures = maxFailures;
+        this.baseLockoutMillis = baseLockoutMillis;
+        this.proofTtlMillis = proofTtlMillis;
+    }
+
+    public Result verify(String pin) {
+        long now = now();
+        if (lockedUntil(state.get()) > now) {
+            REFUSED.increment();
+            return Result.LOCKED_OUT;
+        }
+        HashedPin current = hashed;
+        byte[] attempt = pin == null ? new byte[0] : pin.getBytes(StandardCharsets.UTF_8);
+
+        Proof cached = proof;
+        if (cached != null && cached.pin == current && cached.expiresAt > now &&
+                MessageDigest.isEqual(cached.mac, proof(current, attempt))) {
+            CACHE_HITS.increment();
+            clearFailures();
+            return Result.MATCHED;
+        }
+
+        if (!chargeAttempt(now)) {
+            REFUSED.increment();
+            return Result.LOCKED_OUT;
+        }
+        HASHED.increment();
+        if (!current.matches(attempt)) {
+            return Result.MISMATCHED;
+        }
+        clearFailures();
+        if (proofTtlMillis > 0) {
+            proof = new Proof(current, proof(current, attempt), now + proofTtlMillis);
+        }
+        return Result.MATCHED;
+    }
+
+    // Replaces the PIN. A proof left by the old one is bound to the old hash and
+    // salt, so it can never match again even if a verification still running
+    // stores it after this.
+    public void change(HashedPin newPin) {
+        hashed = newPin;
+        proof = null;
+    }
+
+    public HashedPin getHashedPin() {
+        return hashed;
+    }
+
+    public int getFailures() {
+        return (int) (state.get() & FAILURE_MASK);
+    }
+
+    // Zero when attempts are currently accepted
+    public long getLockoutRemainingMillis() {
+        return Math.max(0, lockedUntil(state.get()) - now());
+    }
+
+    // Counts the attempt as a failure before it is checked, and starts the lockout
+    // at once if this attempt reaches the limit, so concurrent guesses cannot
+    // slip in while it is being hashed. False if the account is locked.
+    private boolean chargeAttempt(long now) {
+        while (true) {
+            long current = state.get();
+            if (lockedUntil(current) > now) {
+                return false;
+            }
+            long failures = Math.min((current & FAILURE_MASK) + 1, FAILURE_MASK);
+            long until = failures >= maxFailures ? now + lockoutMillis(failures) : 0;
+            if (state.compareAndSet(current, until << FAILURE_BITS | failures)) {
+                return true;
+            }
+        }
+    }
+
+    private void clearFailures() {
+        if (state.get() != 0) {
+            state.set(0);
+        }
+    }
+
+    private long lockoutMillis(long failures) {
+        int doublings = (int) Math.min(failures - maxFailures, 30);
+        return Math.min(baseLockoutMillis << doublings, MAX_LOCKOUT_MILLIS);
+    }
+
+    private static long lockedUntil(long state) {
+        return state >>> FAILURE_BITS;
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - CLOCK_ORIGIN);
+    }
+
+    // ---- Hashes ----
+
+    // An encoded PIN hash: "pbkdf2-sha256$<iterations>$<base64 salt>$<base64 hash>"
+    public static final class HashedPin {
+        private final int iterations;
+        private final byte[] salt;
+        private final byte[] hash;
+
+        private HashedPin(int iterations, byte[] salt, byte[] hash) {
+            this.iterations = iterations;
+            this.salt = salt;
+            this.hash = hash;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        boolean matches(byte[] attempt) {
+            return MessageDigest.isEqual(hash, pbkdf2(attempt, salt, iterations));
+        }
+
+        public String encode() {
+            Base64.Encoder base64 = Base64.getEncoder().withoutPadding();
+            return ENCODING_PREFIX + '$' + iterations + '$' + base64.encodeToString(salt) + '$' +
+                   base64.encodeToString(hash);
+        }
+
+        public static HashedPin decode(String encoded) {
+            String[] parts = encoded.split("\\$");
+            if (parts.length != 4 || !parts[0].equals(ENCODING_PREFIX)) {
+                throw new IllegalArgumentException("Not an encoded PIN hash");
+            }
+            try {
+                int iterations = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] hash = Base64.getDecoder().decode(parts[3]);
+                if (iterations < 1 || hash.length != 32) {
+                    throw new IllegalArgumentException("Not an encoded PIN hash");
+                }
+                return new HashedPin(iterations, salt, hash);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Not an encoded PIN hash", e);
+            }
+        }
+    }
+
+    public static HashedPin hash(String pin) {
+        return hash(pin, DEFAULT_ITERATIONS);
+    }
+
+    public static HashedPin hash(String pin, int iterations) {
+        if (iterations < 1) {
+            throw new IllegalArgumentException("Iterations must be positive: " + iterations);
+        }
+        byte[] salt = randomBytes(SALT_BYTES);
+        return new HashedPin(iterations, salt, pbkdf2(pin.getBytes(StandardCharsets.UTF_8), salt, iterations));
+    }
+
+    // PBKDF2 from RFC 8018 with HMAC-SHA256, cut to the 32-byte result that fits in
+    // one block. It is written out so each thread can reuse one Mac; going through
+    // SecretKeyFactory builds a new one for every hash.
+    static byte[] pbkdf2(byte[] pin, byte[] salt, int iterations) {
+        Mac mac = PBKDF2_MACS.get();
+        try {
+            // HMAC pads its key with zeros, so an empty PIN is the same key as one zero byte
+            mac.init(new SecretKeySpec(pin.length == 0 ? new byte[1] : pin, HMAC));
+            mac.update(salt);
+            mac.update(new byte[] { 0, 0, 0, 1 });
+            byte[] block = mac.doFinal();
+            byte[] result = block.clone();
+            for (int i = 1; i < iterations; i++) {
+                mac.update(block);
+                mac.doFinal(block, 0);
+                for (int j = 0; j < result.length; j++) {
+                    result[j] ^= block[j];
+                }
+            }
+            return result;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PIN hashing failed", e);
+        }
+    }
+
+    // ---- Proof cache ----
+
+    // Evidence that 'pin' matched recently, without keeping anything that would
+    // reveal the PIN to someone who reads memory or a heap dump without the key
+    private static final class Proof {
+        final HashedPin pin;
+        final byte[] mac;
+        final long expiresAt;
+
+        Proof(HashedPin pin, byte[] mac, long expiresAt) {
+            this.pin = pin;
+            this.mac = mac;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static byte[] proof(HashedPin pin, byte[] attempt) {
+        Mac mac = PROOF_MACS.get();
+        mac.update(pin.salt);
+        return mac.doFinal(attempt);
+    }
+
+    private static Mac newMac(byte[] key) {
+        try {
+            Mac mac = Mac.getInstance(HMAC);
+            if (key != null) {
+                mac.init(new SecretKeySpec(key, HMAC));
+            }
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(HMAC + " is not available", e);
+        }
+    }
+
+    private static byte[] randomBytes(int count) {
+        byte[] bytes = new byte[count];
+        RANDOM.nextBytes(bytes);
+        return bytes;
+    }
+
+    // ---- Benchmark ----
+
+    public static void main(String[] args) throws InterruptedException {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+        int attackers = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        System.out.println("=== PIN Verification ===");
+        System.out.println("Iterations: " + iterations + ", attacker threads: " + attackers +
+                           ", seconds per run: " + seconds);
+
+        int hashes = 20;
+        for (int i = 0; i < hashes * 2; i++) {
+            hash("1234", iterations);
+        }
+        long start = System.nanoTime();
+        HashedPin pin = null;
+        for (int i = 0; i < hashes; i++) {
+            pin = hash("1234", iterations);
+        }
+        System.out.println("Hashing a PIN: " + String.format("%.2f", (System.nanoTime() - start) / 1e6 / hashes) + " ms");
+
+        PinVerifier cached = new PinVerifier(pin);
+        PinVerifier uncached = new PinVerifier(pin, MAX_FAILURES, BASE_LOCKOUT_MILLIS, 0);
+        System.out.println("Correct PIN, proof cache on: " + rate(cached, seconds) + " verifications/s");
+        System.out.println("Correct PIN, proof cache off: " + rate(uncached, seconds) + " verifications/s");
+
+        attack("Attack with lockout", new PinVerifier(hash("7391", iterations)), pin, attackers, seconds);
+        attack("Attack without lockout", new PinVerifier(hash("7391", iterations), Integer.MAX_VALUE, 0, PROOF_TTL_MILLIS),
+               pin, attackers, seconds);
+    }
+
+    private static String rate(PinVerifier verifier, int seconds) {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        long count = 0;
+        while (System.nanoTime() < end) {
+            if (verifier.verify("1234") != Result.MATCHED) {
+                throw new IllegalStateException("Correct PIN was refused");
+            }
+            count++;
+        }
+        return String.format("%.0f", count / ((System.nanoTime() - start) / 1e9));
+    }
+
+    // Attacker threads work through all 10,000 four-digit PINs against one account
+    // while a legitimate caller keeps verifying the correct PIN of another
+    private static void attack(String label, PinVerifier target, HashedPin otherPin, int attackers, int seconds)
+            throws InterruptedException {
+        PinVerifier other = new PinVerifier(otherPin);
+        AtomicInteger nextGuess = new AtomicInteger();
+        LongAdder[] results = new LongAdder[Result.values().length];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+        CountDownLatch done = new CountDownLatch(attackers);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int t = 0; t < attackers; t++) {
+            new Thread(() -> {
+                while (System.nanoTime() < end) {
+                    int guess = nextGuess.get();
+                    if (guess >= 10_000) {
+                        break;
+                    }
+                    Result result = target.verify(String.format("%04d", guess));
+                    results[result.ordinal()].increment();
+                    if (result == Result.MATCHED) {
+                        nextGuess.set(10_000);
+                    } else if (result == Result.MISMATCHED) {
+                        nextGuess.compareAndSet(guess, guess + 1);
+                    }
+                }
+                done.countDown();
+            }, "attacker-" + t).start();
+        }
+        long legitimate = 0;
+        long start = System.nanoTime();
+        while (System.nanoTime() < end) {
+            if (other.verify("1234") == Result.MATCHED) {
+                legitimate++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        done.await();
+
+        System.out.println(label + ":");
+        System.out.println("  Guesses evaluated: " + (results[Result.MISMATCHED.ordinal()].sum() +
+                           results[Result.MATCHED.ordinal()].sum()) + ", refused while locked: " +
+                           results[Result.LOCKED_OUT.ordinal()].sum() + ", PIN found: " +
+                           (results[Result.MATCHED.ordinal()].sum() > 0) + ", lockout remaining: " +
+                           target.getLockoutRemainingMillis() + " ms");
+        System.out.println("  Legitimate caller on another account: " +
+                           String.format("%.0f", legitimate / (nanos / 1e9)) + " verifications/s");
+    }
+}
@@ -4,6 +4,19 @@
 abstract class Shape {
     protected String color;
     
+    // Cached results of calculateArea()/calculatePerimeter() as doubleToLongBits(),
+    // which folds every NaN into one pattern, so a NaN result is cached like any
+    // other. NOT_CACHED is a NaN pattern it never returns. Valid because no shape
+    // changes its dimensions after construction. The fields are volatile because
+    // a plain long may be written in two halves: a reader on another thread then
+    // sees either NOT_CACHED or a whole value, and at worst computes it again.
+    private static final long NOT_CACHED = 0x7ff8000000000001L;
+    private volatile long cachedAreaBits = NOT_CACHED;
+    private volatile long cachedPerimeterBits = NOT_CACHED;
+    
+    // Placement in the plane; what the point means is up to each subclass
+    protected double x, y;
+    
     public Shape(String color) {
         this.color = color;
     }
@@ -12,16 +25,59 @@ abstract class Shape {
     public abstract double calculateArea();
     public abstract double calculatePerimeter();
     
+    // Axis-aligned bounding box of the placed shape
+    public abstract double getMinX();
+    public abstract double getMinY();
+    public abstract double getMaxX();
+    public abstract double getMaxY();
+    
+    // Exact point-in-shape test (edges count as inside)
+    public abstract boolean contains(double px, double py);
+    
+    public void placeAt(double x, double y) {
+        this.x = x;
+        this.y = y;
+    }
+    
+    public double getX() { return x; }
+    public double getY() { return y; }
+    
+    // Memoized area: computed once per instance, then read from the cache
+    public final double getArea() {
+        long bits = cachedAreaBits;
+        if (bits == NOT_CACHED) {
+            double area = calculateArea();
+            cachedAreaBits = Double.doubleToLongBits(area);
+            return area;
+        }
+        return Double.longBitsToDouble(bits);
+    }
+    
+    // Memoized perimeter, same rules as getArea()
+    public final double getPerimeter() {
+        long bits = cachedPerimeterBits;
+        if (bits == NOT_CACHED) {
+            double perimeter = calculatePerimeter();
+            cachedPerimeterBits = Double.doubleToLongBits(perimeter);
+            return perimeter;
+        }
+        return Double.longBitsToDouble(bits);
+    }
+    
     // Concrete method that can be overridden
     public void display() {
-        System.out.println("This is a " + color + " shape");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("This is a " + color + " shape");
+        }
     }
     
     // Method that uses polymorphic behavior
     public void showDetails() {
         display();
-        System.out.println("Area: " + String.format("%.2f", calculateArea()));
-        System.out.println("Perimeter: " + String.format("%.2f", calculatePerimeter()));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Area: " + String.format("%.2f", getArea()));
+            OutputSink.info("Perimeter: " + String.format("%.2f", getPerimeter()));
+        }
     }
     
     public String getColor() {
@@ -31,7 +87,7 @@ abstract class Shape {
 
 // Concrete implementation of Shape
 class Circle extends Shape {
-    private double radius;
+    private final double radius;
     
     public Circle(String color, double radius) {
         super(color);
@@ -50,7 +106,22 @@ class Circle extends Shape {
     
     @Override
     public void display() {
-        System.out.println("This is a " + color + " circle with radius " + radius);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("This is a " + color + " circle with radius " + radius);
+        }
+    }
+    
+    // A circle is placed by its center
+    @Override public double getMinX() { return x - radius; }
+    @Override public double getMinY() { return y - radius; }
+    @Override public double getMaxX() { return x + radius; }
+    @Override public double getMaxY() { return y + radius; }
+    
+    @Override
+    public boolean contains(double px, double py) {
+        double dx = px - x;
+        double dy = py - y;
+        return dx * dx + dy * dy <= radius * radius;
     }
     
     public double getRadius() {
@@ -59,8 +130,8 @@ class Circle extends Shape {
 }
 
 class Rectangle extends Shape {
-    private double width;
-    private double height;
+    private final double width;
+    private final double height;
     
     public Rectangle(String color, double width, double height) {
         super(color);
@@ -80,7 +151,20 @@ class Rectangle extends Shape {
     
     @Override
     public void display() {
-        System.out.println("This is a " + color + " rectangle with width " + width + " and height " + height);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("This is a " + color + " rectangle with width " + width + " and height " + height);
+        }
+    }
+    
+    // A rectangle is placed by its lower-left corner
+    @Override public double getMinX() { return x; }
+    @Override public double getMinY() { return y; }
+    @Override public double getMaxX() { return x + width; }
+    @Override public double getMaxY() { return y + height; }
+    
+    @Override
+    public boolean contains(double px, double py) {
+        return px >= x && px <= x + width && py >= y && py <= y + height;
     }
     
     public double getWidth() { return width; }
@@ -88,20 +172,35 @@ class Rectangle extends Shape {
 }
 
 class Triangle extends Shape {
-    private double side1, side2, side3;
+    private final double side1, side2, side3;
+    // Third vertex relative to the placement point (law of cosines)
+    private final double apexX, apexY;
     
+    // Sides must be positive and finite, and none longer than the other two
+    // together; a flat triangle, where one equals the sum of the others, is allowed
     public Triangle(String color, double side1, double side2, double side3) {
         super(color);
+        if (!(side1 > 0 && side2 > 0 && side3 > 0) ||
+                Double.isInfinite(side1) || Double.isInfinite(side2) || Double.isInfinite(side3)) {
+            throw new IllegalArgumentException("Triangle sides must be positive and finite: " +
+                                               side1 + ", " + side2 + ", " + side3);
+        }
+        if (side1 > side2 + side3 || side2 > side1 + side3 || side3 > side1 + side2) {
+            throw new IllegalArgumentException("Triangle sides break the triangle inequality: " +
+                                               side1 + ", " + side2 + ", " + side3);
+        }
         this.side1 = side1;
         this.side2 = side2;
         this.side3 = side3;
+        this.apexX = (side1 * side1 + side3 * side3 - side2 * side2) / (2 * side1);
+        this.apexY = Math.sqrt(Math.max(0, side3 * side3 - apexX * apexX));
     }
     
     @Override
     public double calculateArea() {
-        // Using Heron's formula
+        // Using Heron's formula; rounding can take a flat triangle's product just below zero
         double s = (side1 + side2 + side3) / 2;
-        return Math.sqrt(s * (s - side1) * (s - side2) * (s - side3));
+        return Math.sqrt(Math.max(0, s * (s - side1) * (s - side2) * (s - side3)));
     }
     
     @Override
@@ -111,7 +210,30 @@ class Triangle extends Shape {
     
     @Override
     public void display() {
-        System.out.println("This is a " + color + " triangle with sides " + side1 + ", " + side2 + ", " + side3);
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("This is a " + color + " triangle with sides " + side1 + ", " + side2 + ", " + side3);
+        }
+    }
+    
+    // A triangle is placed by its first vertex; side1 runs along the x axis from
+    // there, side2 joins its end to the apex and side3 closes back to the start
+    @Override public double getMinX() { return x + Math.min(0, apexX); }
+    @Override public double getMinY() { return y; }
+    @Override public double getMaxX() { return x + Math.max(side1, apexX); }
+    @Override public double getMaxY() { return y + apexY; }
+    
+    @Override
+    public boolean contains(double px, double py) {
+        // Same side of all three edges, using cross products
+        double ax = x, ay = y;
+        double bx = x + side1, by = y;
+        double cx = x + apexX, cy = y + apexY;
+        double d1 = (px - bx) * (ay - by) - (ax - bx) * (py - by);
+        double d2 = (px - cx) * (by - cy) - (bx - cx) * (py - cy);
+        double d3 = (px - ax) * (cy - ay) - (cx - ax) * (py - ay);
+        boolean hasNegative = d1 < 0 || d2 < 0 || d3 < 0;
+        boolean hasPositive = d1 > 0 || d2 > 0 || d3 > 0;
+        return !(hasNegative && hasPositive);
     }
     
     public double getSide1() { return side1; }
@@ -119,11 +241,17 @@ class Triangle extends Shape {
     public double getSide3() { return side3; }
 }
 
+// Notified when an employee's pay inputs change
+interface EmployeeChangeListener {
+    void employeeChanged(Employee employee);
+}
+
 // Another example of polymorphism with different class hierarchy
 abstract class Employee {
     protected String name;
     protected int id;
     protected double baseSalary;
+    private EmployeeChangeListener changeListener;
     
     public Employee(String name, int id, double baseSalary) {
         this.name = name;
@@ -131,13 +259,35 @@ abstract class Employee {
         this.baseSalary = baseSalary;
     }
     
+    // An employee has at most one listener: setting another while one is in
+    // place throws, so a listener is never silently cut off. Pass null to clear it.
+    public void setChangeListener(EmployeeChangeListener changeListener) {
+        if (changeListener != null && this.changeListener != null && this.changeListener != changeListener) {
+            throw new IllegalStateException(name + " already has a change listener");
+        }
+        this.changeListener = changeListener;
+    }
+    
+    EmployeeChangeListener getChangeListener() {
+        return changeListener;
+    }
+    
+    // Subclasses call this whenever a value used by calculateSalary() changes
+    protected void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.employeeChanged(this);
+        }
+    }
+    
     // Abstract method for calculating salary (polymorphic behavior)
     public abstract double calculateSalary();
     
     // Concrete method
     public void displayInfo() {
-        System.out.println("Employee: " + name + " (ID: " + id + ")");
-        System.out.println("Salary: $" + String.format("%.2f", calculateSalary()));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Employee: " + name + " (ID: " + id + ")");
+            OutputSink.info("Salary: $" + String.format("%.2f", calculateSalary()));
+        }
     }
     
     // Abstract method for work description
@@ -147,9 +297,18 @@ abstract class Employee {
     public String getName() { return name; }
     public int getId() { return id; }
     public double getBaseSalary() { return baseSalary; }
+    
+    public void setBaseSalary(double baseSalary) {
+        this.baseSalary = baseSalary;
+        notifyChanged();
+    }
 }
 
 class FullTimeEmployee extends Employee {
+    // calculateSalary() is too cheap to time per call, so it is only counted
+    private static final MetricsRegistry.Counter SALARY_CALCULATIONS =
+            MetricsRegistry.counter("payroll.calculateSalary.FullTimeEmployee");
+    
     private double benefits;
     
     public FullTimeEmployee(String name, int id, double baseSalary, double benefits) {
@@ -159,18 +318,29 @@ class FullTimeEmployee extends Employee {
     
     @Override
     public double calculateSalary() {
+        SALARY_CALCULATIONS.increment();
         return baseSalary + benefits;
     }
     
     @Override
     public void describeWork() {
-        System.out.println(name + " works full-time with benefits.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " works full-time with benefits.");
+        }
     }
     
     public double getBenefits() { return benefits; }
+    
+    public void setBenefits(double benefits) {
+        this.benefits = benefits;
+        notifyChanged();
+    }
 }
 
 class PartTimeEmployee extends Employee {
+    private static final MetricsRegistry.Counter SALARY_CALCULATIONS =
+            MetricsRegistry.counter("payroll.calculateSalary.PartTimeEmployee");
+    
     private int hoursWorked;
     private double hourlyRate;
     
@@ -182,19 +352,35 @@ class PartTimeEmployee extends Employee {
     
     @Override
     public double calculateSalary() {
+        SALARY_CALCULATIONS.increment();
         return hoursWorked * hourlyRate;
     }
     
     @Override
     public void describeWork() {
-        System.out.println(name + " works part-time for " + hoursWorked + " hours at $" + hourlyRate + "/hour.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " works part-time for " + hoursWorked + " hours at $" + hourlyRate + "/hour.");
+        }
     }
     
     public int getHoursWorked() { return hoursWorked; }
     public double getHourlyRate() { return hourlyRate; }
+    
+    public void setHoursWorked(int hoursWorked) {
+        this.hoursWorked = hoursWorked;
+        notifyChanged();
+    }
+    
+    public void setHourlyRate(double hourlyRate) {
+        this.hourlyRate = hourlyRate;
+        notifyChanged();
+    }
 }
 
 class Contractor extends Employee {
+    private static final MetricsRegistry.Counter SALARY_CALCULATIONS =
+            MetricsRegistry.counter("payroll.calculateSalary.Contractor");
+    
     private int projectsCompleted;
     private double ratePerProject;
     
@@ -206,17 +392,30 @@ class Contractor extends Employee {
     
     @Override
     public double calculateSalary() {
+        SALARY_CALCULATIONS.increment();
         return projectsCompleted * ratePerProject;
     }
     
     @Override
     public void describeWork() {
-        System.out.println(name + " is a contractor who completed " + projectsCompleted + 
-                         " projects at $" + ratePerProject + "/project.");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(name + " is a contractor who completed " + projectsCompleted + 
+                             " projects at $" + ratePerProject + "/project.");
+        }
     }
     
     public int getProjectsCompleted() { return projectsCompleted; }
     public double getRatePerProject() { return ratePerProject; }
+    
+    public void setProjectsCompleted(int projectsCompleted) {
+        this.projectsCompleted = projectsCompleted;
+        notifyChanged();
+    }
+    
+    public void setRatePerProject(double ratePerProject) {
+        this.ratePerProject = ratePerProject;
+        notifyChanged();
+    }
 }
 
 // Interface for demonstrating polymorphism
@@ -233,6 +432,10 @@ class GameShape implements Drawable, Movable {
     private String name;
     private double x, y;
     
+    // Spatial index this shape is registered with (if any) and its slot there
+    private SpatialGrid index;
+    private int indexSlot = -1;
+    
     public GameShape(String name, double x, double y) {
         this.name = name;
         this.x = x;
@@ -241,14 +444,36 @@ class GameShape implements Drawable, Movable {
     
     @Override
     public void draw() {
-        System.out.println("Drawing " + name + " at position (" + x + ", " + y + ")");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Drawing " + name + " at position (" + x + ", " + y + ")");
+        }
     }
     
     @Override
     public void move(double newX, double newY) {
-        System.out.println("Moving " + name + " from (" + x + ", " + y + ") to (" + newX + ", " + newY + ")");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info("Moving " + name + " from (" + x + ", " + y + ") to (" + newX + ", " + newY + ")");
+        }
         this.x = newX;
         this.y = newY;
+        if (index != null) {
+            index.update(indexSlot, newX, newY);
+        }
+    }
+    
+    // Called by SpatialGrid.insert so that move() keeps the index current
+    void attachIndex(SpatialGrid index, int slot) {
+        this.index = index;
+        this.indexSlot = slot;
+    }
+    
+    boolean isIndexed() {
+        return index != null;
+    }
+    
+    // This shape's slot in the grid, or -1 if it is not in that grid
+    int slotIn(SpatialGrid grid) {
+        return index == grid && grid != null ? indexSlot : -1;
     }
     
     public String getName() { return name; }
@@ -268,24 +493,32 @@ class Vehicle {
     
     // Method overloading - same method name, different parameters
     public void start() {
-        System.out.println(brand + " " + model + " started with default method");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + " started with default method");
+        }
     }
     
     public void start(boolean quickStart) {
         if (quickStart) {
-            System.out.println(brand + " " + model + " started quickly!");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info(brand + " " + model + " started quickly!");
+            }
         } else {
             start(); // Call the no-parameter version
         }
     }
     
     public void start(String startType) {
-        System.out.println(brand + " " + model + " started with " + startType + " start");
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + " started with " + startType + " start");
+        }
     }
     
     public void start(boolean quickStart, String startType) {
-        System.out.println(brand + " " + model + " started with " + startType + 
-                         (quickStart ? " (quick)" : " (normal)"));
+        if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+            OutputSink.info(brand + " " + model + " started with " + startType + 
+                             (quickStart ? " (quick)" : " (normal)"));
+        }
     }
     
     public String getBrand() { return brand; }
@@ -296,12 +529,12 @@ public class Polymorphism {
     
     // Function demonstrating runtime polymorphism
     public static void processShape(Shape shape) {
-        System.out.println("\n--- Processing Shape ---");
+        OutputSink.info("\n--- Processing Shape ---");
         shape.showDetails(); // The actual implementation depends on the runtime type
     }
     
     public static void processEmployee(Employee employee) {
-        System.out.println("\n--- Processing Employee ---");
+        OutputSink.info("\n--- Processing Employee ---");
         employee.displayInfo();
         employee.describeWork();
     }
@@ -309,33 +542,43 @@ public class Polymorphism {
     // Function demonstrating polymorphism with arrays
     public static void calculateTotalArea(Shape[] shapes) {
         double totalArea = 0;
-        System.out.println("\n=== Calculating Total Area ===");
+        boolean verbose = OutputSink.isEnabled(OutputSink.Level.INFO);
+        OutputSink.info("\n=== Calculating Total Area ===");
         
         for (Shape shape : shapes) {
-            double area = shape.calculateArea();
-            System.out.println(shape.getClass().getSimpleName() + ": " + String.format("%.2f", area));
+            double area = shape.getArea();
+            if (verbose) {
+                OutputSink.info(shape.getClass().getSimpleName() + ": " + String.format("%.2f", area));
+            }
             totalArea += area;
         }
         
-        System.out.println("Total Area: " + String.format("%.2f", totalArea));
+        if (verbose) {
+            OutputSink.info("Total Area: " + String.format("%.2f", totalArea));
+        }
     }
     
     public static void calculateTotalPayroll(Employee[] employees) {
         double totalPayroll = 0;
-        System.out.println("\n=== Calculating Total Payroll ===");
+        boolean verbose = OutputSink.isEnabled(OutputSink.Level.INFO);
+        OutputSink.info("\n=== Calculating Total Payroll ===");
         
         for (Employee employee : employees) {
             double salary = employee.calculateSalary();
-            System.out.println(employee.getName() + ": $" + String.format("%.2f", salary));
+            if (verbose) {
+                OutputSink.info(employee.getName() + ": $" + String.format("%.2f", salary));
+            }
             totalPayroll += salary;
         }
         
-        System.out.println("Total Payroll: $" + String.format("%.2f", totalPayroll));
+        if (verbose) {
+            OutputSink.info("Total Payroll: $" + String.format("%.2f", totalPayroll));
+        }
     }
     
     // Method demonstrating interface polymorphism
     public static void demonstrateDrawables(Drawable[] drawables) {
-        System.out.println("\n=== Drawable Objects Demo ===");
+        OutputSink.info("\n=== Drawable Objects Demo ===");
         for (Drawable drawable : drawables) {
             drawable.draw();
         }
@@ -0,0 +1,345 @@
+// Bounding-box R-tree over placed shapes in Java
+//
+// A static, bulk-loaded R-tree (Sort-Tile-Recursive packing) over the bounding
+// boxes of placed Circle, Rectangle and Triangle instances from Polymorphism.java.
+// Nodes live in flat primitive arrays. Point queries walk only the nodes whose
+// boxes contain the point and then run the exact Shape.contains() test, so a
+// lookup touches O(log n) nodes instead of every shape. The index is a snapshot:
+// rebuild it after shapes are moved with placeAt().
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java ShapeStore.java ShapeIndex.java && java -cp bin ShapeIndex [shapes]
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class ShapeIndex {
+    private static final int NODE_CAPACITY = 16;
+
+    private final Shape[] shapes;
+
+    // Node boxes and children; children of node n are childRefs[firstChild[n] .. + childCount[n]]
+    private double[] nodeMinX;
+    private double[] nodeMinY;
+    private double[] nodeMaxX;
+    private double[] nodeMaxY;
+    private int[] firstChild;
+    private int[] childCount;
+    private boolean[] leafNode;
+    private int nodeCount;
+    private int[] childRefs;
+    private int childRefCount;
+    private int root = -1;
+    private int height;
+
+    // Query scratch space; queries are meant to run from one thread at a time
+    private int[] stack = new int[256];
+
+    public ShapeIndex(Shape[] shapes) {
+        this.shapes = shapes.clone();
+        build();
+    }
+
+    public int size() { return shapes.length; }
+    public int getHeight() { return height; }
+    public Shape getShape(int index) { return shapes[index]; }
+
+    private void build() {
+        int n = shapes.length;
+        int estimatedNodes = n / (NODE_CAPACITY - 1) + 16;
+        nodeMinX = new double[estimatedNodes];
+        nodeMinY = new double[estimatedNodes];
+        nodeMaxX = new double[estimatedNodes];
+        nodeMaxY = new double[estimatedNodes];
+        firstChild = new int[estimatedNodes];
+        childCount = new int[estimatedNodes];
+        leafNode = new boolean[estimatedNodes];
+        childRefs = new int[n + estimatedNodes];
+        if (n == 0) {
+            return;
+        }
+
+        // Level 0 items are the shapes themselves
+        double[] minX = new double[n];
+        double[] minY = new double[n];
+        double[] maxX = new double[n];
+        double[] maxY = new double[n];
+        int[] refs = new int[n];
+        for (int i = 0; i < n; i++) {
+            Shape shape = shapes[i];
+            minX[i] = shape.getMinX();
+            minY[i] = shape.getMinY();
+            maxX[i] = shape.getMaxX();
+            maxY[i] = shape.getMaxY();
+            refs[i] = i;
+        }
+
+        boolean leaves = true;
+        int count = n;
+        while (true) {
+            int[] order = strOrder(minX, minY, maxX, maxY, count);
+            int parents = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            double[] parentMinX = new double[parents];
+            double[] parentMinY = new double[parents];
+            double[] parentMaxX = new double[parents];
+            double[] parentMaxY = new double[parents];
+            int[] parentRefs = new int[parents];
+
+            for (int p = 0; p < parents; p++) {
+                int from = p * NODE_CAPACITY;
+                int to = Math.min(count, from + NODE_CAPACITY);
+                int node = newNode(leaves);
+                firstChild[node] = childRefCount;
+                childCount[node] = to - from;
+                double boxMinX = Double.POSITIVE_INFINITY;
+                double boxMinY = Double.POSITIVE_INFINITY;
+                double boxMaxX = Double.NEGATIVE_INFINITY;
+                double boxMaxY = Double.NEGATIVE_INFINITY;
+                for (int k = from; k < to; k++) {
+                    int item = order[k];
+                    childRefs[childRefCount++] = refs[item];
+                    boxMinX = Math.min(boxMinX, minX[item]);
+                    boxMinY = Math.min(boxMinY, minY[item]);
+                    boxMaxX = Math.max(boxMaxX, maxX[item]);
+                    boxMaxY = Math.max(boxMaxY, maxY[item]);
+                }
+                nodeMinX[node] = boxMinX;
+                nodeMinY[node] = boxMinY;
+                nodeMaxX[node] = boxMaxX;
+                nodeMaxY[node] = boxMaxY;
+                parentMinX[p] = boxMinX;
+                parentMinY[p] = boxMinY;
+                parentMaxX[p] = boxMaxX;
+                parentMaxY[p] = boxMaxY;
+                parentRefs[p] = node;
+            }
+
+            height++;
+            if (parents == 1) {
+                root = parentRefs[0];
+                return;
+            }
+            minX = parentMinX;
+            minY = parentMinY;
+            maxX = parentMaxX;
+            maxY = parentMaxY;
+            refs = parentRefs;
+            count = parents;
+            leaves = false;
+        }
+    }
+
+    private int newNode(boolean leaf) {
+        if (nodeCount == nodeMinX.length) {
+            int capacity = nodeCount * 2;
+            nodeMinX = Arrays.copyOf(nodeMinX, capacity);
+            nodeMinY = Arrays.copyOf(nodeMinY, capacity);
+            nodeMaxX = Arrays.copyOf(nodeMaxX, capacity);
+            nodeMaxY = Arrays.copyOf(nodeMaxY, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            childCount = Arrays.copyOf(childCount, capacity);
+            leafNode = Arrays.copyOf(leafNode, capacity);
+            childRefs = Arrays.copyOf(childRefs, childRefs.length + capacity);
+        }
+        leafNode[nodeCount] = leaf;
+        return nodeCount++;
+    }
+
+    // Sort-Tile-Recursive order: sort by center x, cut into vertical slices, then
+    // sort each slice by center y. Sorting packs a quantized center and the item
+    // index into one long, so plain primitive sorts can be used.
+    private static int[] strOrder(double[] minX, double[] minY, double[] maxX, double[] maxY, int count) {
+        double lowX = Double.POSITIVE_INFINITY, highX = Double.NEGATIVE_INFINITY;
+        double lowY = Double.POSITIVE_INFINITY, highY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double cx = (minX[i] + maxX[i]) * 0.5;
+            double cy = (minY[i] + maxY[i]) * 0.5;
+            lowX = Math.min(lowX, cx);
+            highX = Math.max(highX, cx);
+            lowY = Math.min(lowY, cy);
+            highY = Math.max(highY, cy);
+        }
+        double scaleX = highX > lowX ? 2_000_000_000.0 / (highX - lowX) : 0;
+        double scaleY = highY > lowY ? 2_000_000_000.0 / (highY - lowY) : 0;
+
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            long quantized = (long) (((minX[i] + maxX[i]) * 0.5 - lowX) * scaleX);
+            keys[i] = (quantized << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int leafCount = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(leafCount));
+        int sliceSize = slices * NODE_CAPACITY;
+        int[] order = new int[count];
+        for (int from = 0; from < count; from += sliceSize) {
+            int to = Math.min(count, from + sliceSize);
+            for (int k = from; k < to; k++) {
+                int i = (int) keys[k];
+                long quantized = (long) (((minY[i] + maxY[i]) * 0.5 - lowY) * scaleY);
+                keys[k] = (quantized << 32) | i;
+            }
+            Arrays.sort(keys, from, to);
+            for (int k = from; k < to; k++) {
+                order[k] = (int) keys[k];
+            }
+        }
+        return order;
+    }
+
+    private int push(int depth, int node) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth] = node;
+        return depth + 1;
+    }
+
+    // Shapes that contain the point. Returns how many were found; at most out.length
+    // shape indexes are written.
+    public int findContaining(double px, double py, int[] out) {
+        if (root < 0) {
+            return 0;
+        }
+        int found = 0;
+        int depth = push(0, root);
+        while (depth > 0) {
+            int node = stack[--depth];
+            if (px < nodeMinX[node] || px > nodeMaxX[node] || py < nodeMinY[node] || py > nodeMaxY[node]) {
+                continue;
+            }
+            int start = firstChild[node];
+            int end = start + childCount[node];
+            if (leafNode[node]) {
+                for (int k = start; k < end; k++) {
+                    Shape shape = shapes[childRefs[k]];
+                    if (px >= shape.getMinX() && px <= shape.getMaxX() &&
+                            py >= shape.getMinY() && py <= shape.getMaxY() && shape.contains(px, py)) {
+                        if (found < out.length) {
+                            out[found] = childRefs[k];
+                        }
+                        found++;
+                    }
+                }
+            } else {
+                for (int k = start; k < end; k++) {
+                    depth = push(depth, childRefs[k]);
+                }
+            }
+        }
+        return found;
+    }
+
+    // Shapes whose bounding boxes overlap the rectangle
+    public int findOverlapping(double fromX, double fromY, double toX, double toY, int[] out) {
+        if (root < 0) {
+            return 0;
+        }
+        int found = 0;
+        int depth = push(0, root);
+        while (depth > 0) {
+            int node = stack[--depth];
+            if (toX < nodeMinX[node] || fromX > nodeMaxX[node] || toY < nodeMinY[node] || fromY > nodeMaxY[node]) {
+                continue;
+            }
+            int start = firstChild[node];
+            int end = start + childCount[node];
+            if (leafNode[node]) {
+                for (int k = start; k < end; k++) {
+                    Shape shape = shapes[childRefs[k]];
+                    if (toX >= shape.getMinX() && fromX <= shape.getMaxX() &&
+                            toY >= shape.getMinY() && fromY <= shape.getMaxY()) {
+                        if (found < out.length) {
+                            out[found] = childRefs[k];
+                        }
+                        found++;
+                    }
+                }
+            } else {
+                for (int k = start; k < end; k++) {
+                    depth = push(depth, childRefs[k]);
+                }
+            }
+        }
+        return found;
+    }
+
+    static Shape[] generatePlacedShapes(int count, double worldSize, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Shape[] shapes = ShapeStore.generateShapes(count, seed);
+        for (Shape shape : shapes) {
+            shape.placeAt(random.nextDouble() * worldSize, random.nextDouble() * worldSize);
+        }
+        return shapes;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        double worldSize = 20_000;
+        System.out.println("=== Shape Bounding-Box Index ===");
+
+        Shape[] shapes = generatePlacedShapes(count, worldSize, 17L);
+        long start = System.nanoTime();
+        ShapeIndex index = new ShapeIndex(shapes);
+        long buildNanos = System.nanoTime() - start;
+        System.out.println("Indexed " + count + " shapes in " + String.format("%.1f", buildNanos / 1e6) +
+                           " ms, tree height " + index.getHeight());
+
+        SplittableRandom random = new SplittableRandom(4L);
+        int[] results = new int[1024];
+        int queries = 100_000;
+        long hits = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            hits += index.findContaining(random.nextDouble() * worldSize, random.nextDouble() * worldSize, results);
+        }
+        long pointNanos = (System.nanoTime() - start) / queries;
+
+        start = System.nanoTime();
+        long overlaps = 0;
+        for (int q = 0; q < queries; q++) {
+            double x = random.nextDouble() * worldSize;
+            double y = random.nextDouble() * worldSize;
+            overlaps += index.findOverlapping(x, y, x + 200, y + 200, results);
+        }
+        long overlapNanos = (System.nanoTime() - start) / queries;
+
+        // Linear scan for comparison (few queries; it is slow)
+        int scans = 20;
+        long scanHits = 0;
+        start = System.nanoTime();
+        for (int q = 0; q < scans; q++) {
+            double px = random.nextDouble() * worldSize;
+            double py = random.nextDouble() * worldSize;
+            for (Shape shape : shapes) {
+                if (shape.contains(px, py)) {
+                    scanHits++;
+                }
+            }
+        }
+        long scanNanos = (System.nanoTime() - start) / scans;
+
+        // Cross-check the index against the linear scan on a few points
+        boolean agrees = true;
+        for (int q = 0; q < scans; q++) {
+            double px = random.nextDouble() * worldSize;
+            double py = random.nextDouble() * worldSize;
+            int expected = 0;
+            for (Shape shape : shapes) {
+                if (shape.contains(px, py)) {
+                    expected++;
+                }
+            }
+            agrees &= index.findContaining(px, py, results) == expected;
+        }
+
+        System.out.println("Point query: " + String.format("%.2f", pointNanos / 1e3) + " us (" +
+                           String.format("%.3f", (double) hits / queries) + " hits on average)");
+        System.out.println("200x200 overlap query: " + String.format("%.2f", overlapNanos / 1e3) + " us (" +
+                           String.format("%.1f", (double) overlaps / queries) + " hits on average)");
+        System.out.println("Linear scan point query: " + String.format("%.2f", scanNanos / 1e3) + " us (" +
+                           scanHits + " hits over " + scans + " queries)");
+        System.out.println("Index agrees with linear scan: " + agrees);
+    }
+}
@@ -0,0 +1,241 @@
+// Columnar shape store in Java
+//
+// Holds Circle, Rectangle and Triangle geometry from Polymorphism.java in primitive
+// columns, one group of arrays per shape kind, instead of as objects. Area and
+// perimeter totals are then plain loops over double arrays with no virtual calls
+// and no pointer chasing. The loops keep four independent accumulators so the
+// floating-point additions are not serialised on a single register.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java ShapeStore.java && java -cp bin ShapeStore [shapes]
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class ShapeStore {
+    private double[] radius = new double[16];
+    private int circleCount;
+
+    private double[] width = new double[16];
+    private double[] height = new double[16];
+    private int rectangleCount;
+
+    private double[] side1 = new double[16];
+    private double[] side2 = new double[16];
+    private double[] side3 = new double[16];
+    private int triangleCount;
+
+    public void addCircle(double r) {
+        if (circleCount == radius.length) {
+            radius = Arrays.copyOf(radius, circleCount * 2);
+        }
+        radius[circleCount++] = r;
+    }
+
+    public void addRectangle(double w, double h) {
+        if (rectangleCount == width.length) {
+            width = Arrays.copyOf(width, rectangleCount * 2);
+            height = Arrays.copyOf(height, rectangleCount * 2);
+        }
+        width[rectangleCount] = w;
+        height[rectangleCount++] = h;
+    }
+
+    public void addTriangle(double a, double b, double c) {
+        if (triangleCount == side1.length) {
+            side1 = Arrays.copyOf(side1, triangleCount * 2);
+            side2 = Arrays.copyOf(side2, triangleCount * 2);
+            side3 = Arrays.copyOf(side3, triangleCount * 2);
+        }
+        side1[triangleCount] = a;
+        side2[triangleCount] = b;
+        side3[triangleCount++] = c;
+    }
+
+    // Copies the dimensions of an existing shape into the matching columns
+    public void add(Shape shape) {
+        if (shape instanceof Circle) {
+            addCircle(((Circle) shape).getRadius());
+        } else if (shape instanceof Rectangle) {
+            Rectangle rectangle = (Rectangle) shape;
+            addRectangle(rectangle.getWidth(), rectangle.getHeight());
+        } else if (shape instanceof Triangle) {
+            Triangle triangle = (Triangle) shape;
+            addTriangle(triangle.getSide1(), triangle.getSide2(), triangle.getSide3());
+        } else {
+            throw new IllegalArgumentException("Unsupported shape: " + shape.getClass().getSimpleName());
+        }
+    }
+
+    public int size() {
+        return circleCount + rectangleCount + triangleCount;
+    }
+
+    public int getCircleCount() { return circleCount; }
+    public int getRectangleCount() { return rectangleCount; }
+    public int getTriangleCount() { return triangleCount; }
+
+    public double totalArea() {
+        return circleArea() + rectangleArea() + triangleArea();
+    }
+
+    public double totalPerimeter() {
+        return circlePerimeter() + rectanglePerimeter() + trianglePerimeter();
+    }
+
+    // Sum of r^2, scaled by PI once at the end
+    public double circleArea() {
+        double[] r = radius;
+        int n = circleCount;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += r[i] * r[i];
+            s1 += r[i + 1] * r[i + 1];
+            s2 += r[i + 2] * r[i + 2];
+            s3 += r[i + 3] * r[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += r[i] * r[i];
+        }
+        return Math.PI * ((s0 + s1) + (s2 + s3));
+    }
+
+    public double circlePerimeter() {
+        return 2 * Math.PI * sum(radius, circleCount);
+    }
+
+    public double rectangleArea() {
+        double[] w = width;
+        double[] h = height;
+        int n = rectangleCount;
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += w[i] * h[i];
+            s1 += w[i + 1] * h[i + 1];
+            s2 += w[i + 2] * h[i + 2];
+            s3 += w[i + 3] * h[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += w[i] * h[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    public double rectanglePerimeter() {
+        return 2 * (sum(width, rectangleCount) + sum(height, rectangleCount));
+    }
+
+    // Heron's formula over the three side columns
+    public double triangleArea() {
+        double[] a = side1;
+        double[] b = side2;
+        double[] c = side3;
+        int n = triangleCount;
+        double s0 = 0, s1 = 0;
+        int i = 0;
+        for (; i + 1 < n; i += 2) {
+            s0 += heron(a[i], b[i], c[i]);
+            s1 += heron(a[i + 1], b[i + 1], c[i + 1]);
+        }
+        for (; i < n; i++) {
+            s0 += heron(a[i], b[i], c[i]);
+        }
+        return s0 + s1;
+    }
+
+    public double trianglePerimeter() {
+        return sum(side1, triangleCount) + sum(side2, triangleCount) + sum(side3, triangleCount);
+    }
+
+    private static double heron(double a, double b, double c) {
+        double s = (a + b + c) * 0.5;
+        return Math.sqrt(s * (s - a) * (s - b) * (s - c));
+    }
+
+    private static double sum(double[] values, int n) {
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < n; i += 4) {
+            s0 += values[i];
+            s1 += values[i + 1];
+            s2 += values[i + 2];
+            s3 += values[i + 3];
+        }
+        for (; i < n; i++) {
+            s0 += values[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static Shape[] generateShapes(int count, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        Shape[] shapes = new Shape[count];
+        for (int i = 0; i < count; i++) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    shapes[i] = new Circle("red", 1 + random.nextDouble() * 9);
+                    break;
+                case 1:
+                    shapes[i] = new Rectangle("blue", 1 + random.nextDouble() * 9, 1 + random.nextDouble() * 9);
+                    break;
+                default:
+                    // Scaled 3-4-5 style triangles are always valid
+                    double scale = 1 + random.nextDouble() * 4;
+                    shapes[i] = new Triangle("green", 3 * scale, 4 * scale, 5 * scale);
+                    break;
+            }
+        }
+        return shapes;
+    }
+
+    // The loop from Polymorphism.calculateTotalArea, without the output
+    static double virtualTotalArea(Shape[] shapes) {
+        double totalArea = 0;
+        for (Shape shape : shapes) {
+            totalArea += shape.calculateArea();
+        }
+        return totalArea;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        System.out.println("=== Columnar Shape Store ===");
+
+        Shape[] shapes = generateShapes(count, 99L);
+        ShapeStore store = new ShapeStore();
+        for (Shape shape : shapes) {
+            store.add(shape);
+        }
+        System.out.println("Shapes: " + store.size() + " (" + store.getCircleCount() + " circles, " +
+                           store.getRectangleCount() + " rectangles, " + store.getTriangleCount() + " triangles)");
+
+        double virtualTotal = 0;
+        double columnarTotal = 0;
+        for (int round = 0; round < 5; round++) {
+            virtualTotal = virtualTotalArea(shapes);
+            columnarTotal = store.totalArea();
+        }
+
+        int rounds = 10;
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            virtualTotal = virtualTotalArea(shapes);
+        }
+        long virtualNanos = (System.nanoTime() - start) / rounds;
+
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            columnarTotal = store.totalArea();
+        }
+        long columnarNanos = (System.nanoTime() - start) / rounds;
+
+        System.out.println("Virtual dispatch: " + String.format("%.2f", virtualNanos / 1e6) + " ms, total area " +
+                           String.format("%.2f", virtualTotal));
+        System.out.println("Columnar store:   " + String.format("%.2f", columnarNanos / 1e6) + " ms, total area " +
+                           String.format("%.2f", columnarTotal));
+        System.out.println("Speedup: " + String.format("%.2f", (double) virtualNanos / columnarNanos) + "x");
+        System.out.println("Total perimeter: " + String.format("%.2f", store.totalPerimeter()));
+    }
+}
@@ -0,0 +1,393 @@
+// Uniform-grid spatial index for GameShape in Java
+//
+// Buckets GameShape positions from Polymorphism.java into square cells over a
+// fixed world rectangle. Every shape gets an int slot; positions are kept in
+// primitive arrays, and each cell holds a compact int list of slots. A shape
+// registered with insert() calls update() from its move() method, and moving
+// between cells is an O(1) swap-remove plus append. Positions outside the world
+// are clamped into the border cells, so the bounds should cover the play area.
+// remove() takes a shape out in O(1) by moving the shape in the last slot into
+// the freed one, so slots stay dense but the moved shape's slot changes.
+//
+// Queries write slots into caller-supplied arrays, keep their own working space
+// in the grid, and are meant to be run from one thread at a time, like the moves
+// themselves.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Polymorphism.java SpatialGrid.java && java -cp bin SpatialGrid [entities]
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class SpatialGrid {
+    // Receives each pair of slots found by collisionPairs()
+    public interface PairHandler {
+        void onPair(int first, int second);
+    }
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final double inverseCellSize;
+    private final int columns;
+    private final int rows;
+
+    private final int[][] cellItems;
+    private final int[] cellCounts;
+
+    private GameShape[] shapes = new GameShape[1024];
+    private double[] xs = new double[1024];
+    private double[] ys = new double[1024];
+    private int[] cellOf = new int[1024];
+    private int[] positionInCell = new int[1024];
+    private int size;
+
+    // Distances of the candidates nearest() is holding, reused across queries
+    private double[] nearestDistances = new double[8];
+
+    public SpatialGrid(double minX, double minY, double width, double height, double cellSize) {
+        if (cellSize <= 0 || width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("World size and cell size must be positive");
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0 / cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        this.cellItems = new int[columns * rows][];
+        this.cellCounts = new int[columns * rows];
+    }
+
+    // Registers a shape at its current position and returns its slot
+    public int insert(GameShape shape) {
+        if (size == shapes.length) {
+            int capacity = size * 2;
+            shapes = Arrays.copyOf(shapes, capacity);
+            xs = Arrays.copyOf(xs, capacity);
+            ys = Arrays.copyOf(ys, capacity);
+            cellOf = Arrays.copyOf(cellOf, capacity);
+            positionInCell = Arrays.copyOf(positionInCell, capacity);
+        }
+        int slot = size++;
+        shapes[slot] = shape;
+        xs[slot] = shape.getX();
+        ys[slot] = shape.getY();
+        addToCell(cellIndex(xs[slot], ys[slot]), slot);
+        shape.attachIndex(this, slot);
+        return slot;
+    }
+
+    // Takes a shape out of the grid; returns false if it was not in it. The
+    // shape that held the last slot moves into the freed slot.
+    public boolean remove(GameShape shape) {
+        int slot = shape.slotIn(this);
+        if (slot < 0) {
+            return false;
+        }
+        removeFromCell(slot);
+        int last = --size;
+        if (slot != last) {
+            GameShape moved = shapes[last];
+            shapes[slot] = moved;
+            xs[slot] = xs[last];
+            ys[slot] = ys[last];
+            cellOf[slot] = cellOf[last];
+            positionInCell[slot] = positionInCell[last];
+            cellItems[cellOf[slot]][positionInCell[slot]] = slot;
+            moved.attachIndex(this, slot);
+        }
+        shapes[last] = null;
+        shape.attachIndex(null, -1);
+        return true;
+    }
+
+    // Called from GameShape.move()
+    void update(int slot, double x, double y) {
+        xs[slot] = x;
+        ys[slot] = y;
+        int cell = cellIndex(x, y);
+        if (cell != cellOf[slot]) {
+            removeFromCell(slot);
+            addToCell(cell, slot);
+        }
+    }
+
+    public int size() { return size; }
+    public GameShape getShape(int slot) { return shapes[slot]; }
+    public double getX(int slot) { return xs[slot]; }
+    public double getY(int slot) { return ys[slot]; }
+
+    private int column(double x) {
+        int column = (int) ((x - minX) * inverseCellSize);
+        return column < 0 ? 0 : (column >= columns ? columns - 1 : column);
+    }
+
+    private int row(double y) {
+        int row = (int) ((y - minY) * inverseCellSize);
+        return row < 0 ? 0 : (row >= rows ? rows - 1 : row);
+    }
+
+    private int cellIndex(double x, double y) {
+        return row(y) * columns + column(x);
+    }
+
+    private void addToCell(int cell, int slot) {
+        int[] items = cellItems[cell];
+        int count = cellCounts[cell];
+        if (items == null) {
+            items = new int[4];
+            cellItems[cell] = items;
+        } else if (count == items.length) {
+            items = Arrays.copyOf(items, count * 2);
+            cellItems[cell] = items;
+        }
+        items[count] = slot;
+        cellCounts[cell] = count + 1;
+        cellOf[slot] = cell;
+        positionInCell[slot] = count;
+    }
+
+    private void removeFromCell(int slot) {
+        int cell = cellOf[slot];
+        int[] items = cellItems[cell];
+        int last = --cellCounts[cell];
+        int moved = items[last];
+        items[positionInCell[slot]] = moved;
+        positionInCell[moved] = positionInCell[slot];
+    }
+
+    // Finds every shape inside the rectangle. Returns the number found; at most
+    // out.length slots are written.
+    public int queryRange(double fromX, double fromY, double toX, double toY, int[] out) {
+        int found = 0;
+        int lastRow = row(toY);
+        int lastColumn = column(toX);
+        for (int row = row(fromY); row <= lastRow; row++) {
+            for (int column = column(fromX); column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                int[] items = cellItems[cell];
+                for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+                    int slot = items[i];
+                    double x = xs[slot];
+                    double y = ys[slot];
+                    if (x >= fromX && x <= toX && y >= fromY && y <= toY) {
+                        if (found < out.length) {
+                            out[found] = slot;
+                        }
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Finds the k shapes closest to (x, y), nearest first, by searching rings of
+    // cells outwards until no unvisited cell can hold anything closer.
+    public int nearest(double x, double y, int k, int[] out) {
+        if (k <= 0 || size == 0) {
+            return 0;
+        }
+        if (nearestDistances.length < k) {
+            nearestDistances = new double[Math.max(k, nearestDistances.length * 2)];
+        }
+        double[] bestDistances = nearestDistances;
+        int found = 0;
+        int centerColumn = column(x);
+        int centerRow = row(y);
+        int maxRing = Math.max(columns, rows);
+
+        for (int ring = 0; ring <= maxRing; ring++) {
+            // Anything in this ring or beyond is at least (ring - 1) cells away
+            if (found == k) {
+                double bound = (ring - 1) * cellSize;
+                if (ring > 0 && bestDistances[k - 1] <= bound * bound) {
+                    break;
+                }
+            }
+            int fromRow = centerRow - ring;
+            int toRow = centerRow + ring;
+            for (int row = Math.max(0, fromRow); row <= Math.min(rows - 1, toRow); row++) {
+                boolean edgeRow = row == fromRow || row == toRow;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(1, step)) {
+                    if (column < 0 || column >= columns) {
+                        continue;
+                    }
+                    int cell = row * columns + column;
+                    int[] items = cellItems[cell];
+                    for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+                        int slot = items[i];
+                        double dx = xs[slot] - x;
+                        double dy = ys[slot] - y;
+                        found = offerNearest(slot, dx * dx + dy * dy, k, found, out, bestDistances);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // Keeps the k best candidates sorted by distance (insertion sort; k is small)
+    private static int offerNearest(int slot, double distance, int k, int found, int[] out, double[] distances) {
+        if (found == k && distance >= distances[k - 1]) {
+            return found;
+        }
+        int position = found < k ? found++ : k - 1;
+        while (position > 0 && distances[position - 1] > distance) {
+            distances[position] = distances[position - 1];
+            out[position] = out[position - 1];
+            position--;
+        }
+        distances[position] = distance;
+        out[position] = slot;
+        return found;
+    }
+
+    // Reports every pair of shapes closer than the given distance, each pair once.
+    // The distance may not exceed the cell size, so only neighbouring cells are checked.
+    public long collisionPairs(double distance, PairHandler handler) {
+        if (distance > cellSize) {
+            throw new IllegalArgumentException("Collision distance " + distance + " exceeds cell size " + cellSize);
+        }
+        double limit = distance * distance;
+        long pairs = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                int count = cellCounts[cell];
+                if (count == 0) {
+                    continue;
+                }
+                pairs += pairsWithinCell(cell, limit, handler);
+                // Half of the neighbourhood, so that each pair of cells is visited once
+                if (column + 1 < columns) {
+                    pairs += pairsBetweenCells(cell, cell + 1, limit, handler);
+                }
+                if (row + 1 < rows) {
+                    int below = cell + columns;
+                    pairs += pairsBetweenCells(cell, below, limit, handler);
+                    if (column > 0) {
+                        pairs += pairsBetweenCells(cell, below - 1, limit, handler);
+                    }
+                    if (column + 1 < columns) {
+                        pairs += pairsBetweenCells(cell, below + 1, limit, handler);
+                    }
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private long pairsWithinCell(int cell, double limit, PairHandler handler) {
+        int[] items = cellItems[cell];
+        int count = cellCounts[cell];
+        long pairs = 0;
+        for (int i = 0; i < count; i++) {
+            int a = items[i];
+            for (int j = i + 1; j < count; j++) {
+                int b = items[j];
+                double dx = xs[a] - xs[b];
+                double dy = ys[a] - ys[b];
+                if (dx * dx + dy * dy < limit) {
+                    handler.onPair(a, b);
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    private long pairsBetweenCells(int cell, int other, double limit, PairHandler handler) {
+        int otherCount = cellCounts[other];
+        if (otherCount == 0) {
+            return 0;
+        }
+        int[] items = cellItems[cell];
+        int[] otherItems = cellItems[other];
+        long pairs = 0;
+        for (int i = 0, count = cellCounts[cell]; i < count; i++) {
+            int a = items[i];
+            for (int j = 0; j < otherCount; j++) {
+                int b = otherItems[j];
+                double dx = xs[a] - xs[b];
+                double dy = ys[a] - ys[b];
+                if (dx * dx + dy * dy < limit) {
+                    handler.onPair(a, b);
+                    pairs++;
+                }
+            }
+        }
+        return pairs;
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        double worldSize = 10_000;
+        System.out.println("=== GameShape Spatial Index ===");
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            SplittableRandom random = new SplittableRandom(3L);
+            SpatialGrid grid = new SpatialGrid(0, 0, worldSize, worldSize, 20);
+            GameShape[] entities = new GameShape[count];
+            for (int i = 0; i < count; i++) {
+                entities[i] = new GameShape("Entity " + i, random.nextDouble() * worldSize, random.nextDouble() * worldSize);
+                grid.insert(entities[i]);
+            }
+
+            // Each frame every entity moves a short distance through GameShape.move()
+            long frameNanos = 0;
+            int frames = 10;
+            for (int frame = 0; frame < frames; frame++) {
+                long start = System.nanoTime();
+                for (GameShape entity : entities) {
+                    entity.move(entity.getX() + random.nextDouble() * 4 - 2, entity.getY() + random.nextDouble() * 4 - 2);
+                }
+                frameNanos += System.nanoTime() - start;
+            }
+
+            int queries = 10_000;
+            int[] results = new int[4096];
+            long hits = 0;
+            long start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                double x = random.nextDouble() * worldSize;
+                double y = random.nextDouble() * worldSize;
+                hits += grid.queryRange(x, y, x + 100, y + 100, results);
+            }
+            long rangeNanos = (System.nanoTime() - start) / queries;
+
+            int[] nearest = new int[8];
+            start = System.nanoTime();
+            for (int q = 0; q < queries; q++) {
+                grid.nearest(random.nextDouble() * worldSize, random.nextDouble() * worldSize, nearest.length, nearest);
+            }
+            long nearestNanos = (System.nanoTime() - start) / queries;
+
+            start = System.nanoTime();
+            long pairs = grid.collisionPairs(2.0, (a, b) -> { });
+            long collisionNanos = System.nanoTime() - start;
+
+            // Take out every other entity and check the survivors are all still found;
+            // moves may have carried some outside the world, so search beyond it
+            for (int i = 0; i < count; i += 2) {
+                grid.remove(entities[i]);
+            }
+            int found = grid.queryRange(-worldSize, -worldSize, 2 * worldSize, 2 * worldSize, new int[0]);
+
+            System.out.println("Entities: " + count + ", cells: " + grid.columns + "x" + grid.rows);
+            System.out.println("Move all entities: " + String.format("%.2f", frameNanos / 1e6 / frames) + " ms per frame");
+            System.out.println("Range query (100x100): " + String.format("%.1f", rangeNanos / 1e3) + " us, " +
+                               String.format("%.1f", (double) hits / queries) + " hits on average");
+            System.out.println("8-nearest query: " + String.format("%.1f", nearestNanos / 1e3) + " us");
+            System.out.println("Collision pairs within 2.0: " + pairs + " in " +
+                               String.format("%.2f", collisionNanos / 1e6) + " ms");
+            System.out.println("After removing every other entity: " + grid.size() + " left, " + found +
+                               " found by a whole-world query");
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+}
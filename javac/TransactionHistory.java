@@ -0,0 +1,369 @@
+// Transaction history for BankAccount in Java
+//
+// BankAccount from Encapsulation.java kept its history as a list of strings, each
+// starting with the time it was written, and displayTransactionHistory() could
+// only print all of them. TransactionHistory keeps each entry's time as a number
+// beside its text, in fixed-size chunks that stay where they are as the history
+// grows. Entries are appended in time order, and a clock that steps back is held
+// at the last time written, so the entries in a time range are found by binary
+// search over the times.
+//
+// An entry made of text around two amounts, such as "Deposited: $12.50. New
+// balance: $112.50", keeps the amounts as numbers and formats them to two
+// decimal places only when the entry is read, so writing it costs no formatting.
+//
+// Queries return a Page: a window of at most pageSize entries, read in place
+// from the chunks. next() moves the window along the same range, so going
+// through a statement of any length holds one small Page at a time instead of a
+// copy of the history.
+// - between(from, to, pageSize): entries with from <= time < to
+// - last(count, pageSize): the most recent count entries, oldest first
+// - all(pageSize): every entry
+//
+// Appends are serialised; reads take no lock and see every entry appended
+// before the query was made.
+//
+// main() builds a history of millions of entries and times a one-day statement
+// and the last 20 entries against scanning the old list of strings, with the
+// bytes each allocates.
+//
+// Compile and run from the javac directory:
+//   javac -d bin TransactionHistory.java && java -Xmx3g -cp bin TransactionHistory [entries]
+
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+public final class TransactionHistory {
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    // Most accounts have a handful of entries, so the first chunk starts small
+    // and doubles until it is full size; only it is ever copied
+    private static final int FIRST_CHUNK_CAPACITY = 8;
+
+    private static final long MICROS_PER_SECOND = 1_000_000;
+
+    private Chunk[] chunks = { new Chunk(FIRST_CHUNK_CAPACITY) };
+    // Written after each entry is in place, so a reader that sees it sees the entry
+    private volatile int size;
+    private long lastMicros = Long.MIN_VALUE;
+
+    private static final class Chunk {
+        final long[] micros;
+        final Object[] texts; // a String or an Amounts
+
+        Chunk(int capacity) {
+            micros = new long[capacity];
+            texts = new Object[capacity];
+        }
+
+        // A larger copy. The entries are copied here in the constructor, so the
+        // final fields publish them: a reader that finds the new chunk through a
+        // plain read of the chunks array still sees every copied entry.
+        private Chunk(Chunk from, int capacity) {
+            micros = Arrays.copyOf(from.micros, capacity);
+            texts = Arrays.copyOf(from.texts, capacity);
+        }
+
+        Chunk grow(int capacity) {
+            return new Chunk(this, capacity);
+        }
+    }
+
+    // Text around two amounts, kept unformatted until the entry is read
+    private static final class Amounts {
+        final String before;
+        final double first;
+        final String between;
+        final double second;
+
+        Amounts(String before, double first, String between, double second) {
+            this.before = before;
+            this.first = first;
+            this.between = between;
+            this.second = second;
+        }
+
+        @Override
+        public String toString() {
+            return format(before, first, between, second);
+        }
+    }
+
+    // before + first + between + second, with both amounts to two decimal places
+    static String format(String before, double first, String between, double second) {
+        return before + String.format("%.2f", first) + between + String.format("%.2f", second);
+    }
+
+    public void append(String text) {
+        append(nowMicros(), text);
+    }
+
+    // An entry that reads as format(before, first, between, second)
+    public void append(String before, double first, String between, double second) {
+        add(nowMicros(), new Amounts(before, first, between, second));
+    }
+
+    // Microseconds since the epoch; a time before the last entry's is moved up to it
+    void append(long epochMicros, String text) {
+        add(epochMicros, text);
+    }
+
+    private synchronized void add(long epochMicros, Object text) {
+        int index = size;
+        Chunk[] current = chunks;
+        int chunkIndex = index >>> CHUNK_BITS;
+        int offset = index & CHUNK_MASK;
+        if (chunkIndex == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        Chunk chunk = current[chunkIndex];
+        if (chunk == null) {
+            chunk = current[chunkIndex] = new Chunk(CHUNK_SIZE);
+        } else if (offset == chunk.micros.length) {
+            chunk = current[chunkIndex] = chunk.grow(Math.min(offset * 2, CHUNK_SIZE));
+        }
+        lastMicros = Math.max(epochMicros, lastMicros);
+        chunk.micros[offset] = lastMicros;
+        chunk.texts[offset] = text;
+        chunks = current;
+        size = index + 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Page all(int pageSize) {
+        int end = size;
+        return new Page(chunks, 0, end, pageSize);
+    }
+
+    public Page last(int count, int pageSize) {
+        int end = size;
+        return new Page(chunks, Math.max(0, end - count), end, pageSize);
+    }
+
+    public Page between(Instant from, Instant to, int pageSize) {
+        return between(toMicros(from), toMicros(to), pageSize);
+    }
+
+    Page between(long fromMicros, long toMicros, int pageSize) {
+        int end = size;
+        Chunk[] snapshot = chunks;
+        int first = firstAtOrAfter(snapshot, end, fromMicros);
+        int last = Math.max(first, firstAtOrAfter(snapshot, end, toMicros));
+        return new Page(snapshot, first, last, pageSize);
+    }
+
+    // Index of the first of the first 'end' entries with a time >= micros, or end
+    private static int firstAtOrAfter(Chunk[] chunks, int end, long micros) {
+        int low = 0;
+        int high = end;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunks[middle >>> CHUNK_BITS].micros[middle & CHUNK_MASK] < micros) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // ---- Pages ----
+
+    // Up to pageSize entries of a query's range, oldest first, read from the
+    // history in place. Entries are never changed or removed, so a page stays
+    // valid however long it is kept.
+    public static final class Page {
+        private final Chunk[] chunks;
+        private final int start;
+        private final int end;
+        private final int rangeEnd;
+        private final int pageSize;
+
+        private Page(Chunk[] chunks, int start, int rangeEnd, int pageSize) {
+            if (pageSize < 1) {
+                throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+            }
+            this.chunks = chunks;
+            this.start = start;
+            this.end = (int) Math.min((long) start + pageSize, rangeEnd);
+            this.rangeEnd = rangeEnd;
+            this.pageSize = pageSize;
+        }
+
+        public int size() {
+            return end - start;
+        }
+
+        public long epochMicros(int i) {
+            int index = index(i);
+            return chunks[index >>> CHUNK_BITS].micros[index & CHUNK_MASK];
+        }
+
+        public LocalDateTime time(int i) {
+            return localTime(epochMicros(i));
+        }
+
+        public String description(int i) {
+            int index = index(i);
+            return chunks[index >>> CHUNK_BITS].texts[index & CHUNK_MASK].toString();
+        }
+
+        // The entry as the history used to store it: "<local time>: <description>"
+        public String format(int i) {
+            return time(i) + ": " + description(i);
+        }
+
+        public boolean hasNext() {
+            return end < rangeEnd;
+        }
+
+        // The following page of the same query
+        public Page next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return new Page(chunks, end, rangeEnd, pageSize);
+        }
+
+        private int index(int i) {
+            if (i < 0 || i >= end - start) {
+                throw new IndexOutOfBoundsException("Entry " + i + " of a page of " + (end - start));
+            }
+            return start + i;
+        }
+    }
+
+    // Microseconds since the epoch as a time in the default zone
+    static LocalDateTime localTime(long epochMicros) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochMicros, MICROS_PER_SECOND),
+                                                Math.floorMod(epochMicros, MICROS_PER_SECOND) * 1000);
+        ZoneOffset offset = ZoneId.systemDefault().getRules().getOffset(instant);
+        return LocalDateTime.ofEpochSecond(instant.getEpochSecond(), instant.getNano(), offset);
+    }
+
+    static long nowMicros() {
+        return toMicros(Instant.now());
+    }
+
+    static long toMicros(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), MICROS_PER_SECOND),
+                             instant.getNano() / 1000);
+    }
+
+    // ---- Benchmark ----
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        System.out.println("=== Transaction History ===");
+        System.out.println("Entries: " + entries);
+
+        // A year of activity ending now, as the new history and as the old list of
+        // "<time>: <text>" strings
+        long end = nowMicros();
+        long span = TimeUnit.DAYS.toMicros(365);
+        long step = span / entries;
+        TransactionHistory history = new TransactionHistory();
+        List<String> oldHistory = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(48L);
+        double balance = 1000;
+        for (int i = 0; i < entries; i++) {
+            long micros = end - span + i * step;
+            double amount = 1 + random.nextInt(50_000) / 100.0;
+            balance += random.nextBoolean() ? amount : -amount;
+            String text = "Deposited: $" + String.format("%.2f", amount) + ". New balance: $" + String.format("%.2f", balance);
+            history.append(micros, text);
+            oldHistory.add(history.last(1, 1).time(0) + ": " + text);
+        }
+
+        long dayStart = end - TimeUnit.DAYS.toMicros(30);
+        long dayEnd = dayStart + TimeUnit.DAYS.toMicros(1);
+        String fromPrefix = history.between(dayStart, Long.MAX_VALUE, 1).time(0).toString();
+        String toPrefix = history.between(dayEnd, Long.MAX_VALUE, 1).time(0).toString();
+
+        for (int i = 0; i < 5; i++) {
+            statement(history.between(dayStart, dayEnd, 100));
+            statement(history.last(20, 100));
+            scan(oldHistory, fromPrefix, toPrefix);
+        }
+        report("One-day statement, pages of 100", () -> statement(history.between(dayStart, dayEnd, 100)));
+        report("Last 20 entries", () -> statement(history.last(20, 100)));
+        report("Same day by scanning the old list", () -> scan(oldHistory, fromPrefix, toPrefix));
+        report("Whole history, pages of 100", () -> statement(history.all(100)));
+    }
+
+    // Keeps the entries read by statement() from being optimised away
+    private static volatile long sink;
+
+    // Reads every entry of every page of a query; returns how many there were
+    private static long statement(Page page) {
+        long count = 0;
+        long check = 0;
+        while (true) {
+            for (int i = 0; i < page.size(); i++) {
+                check += page.epochMicros(i) + page.description(i).length();
+                count++;
+            }
+            if (!page.hasNext()) {
+                break;
+            }
+            page = page.next();
+        }
+        sink = check;
+        return count;
+    }
+
+    // The old history had no index, so a range meant testing every string. ISO
+    // times of equal length compare as strings in time order.
+    private static long scan(List<String> history, String fromPrefix, String toPrefix) {
+        long count = 0;
+        for (String entry : history) {
+            if (entry.compareTo(fromPrefix) >= 0 && entry.compareTo(toPrefix) < 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private interface Query {
+        long run();
+    }
+
+    private static void report(String label, Query query) {
+        int runs = 20;
+        long count = 0;
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < runs; i++) {
+            count = query.run();
+        }
+        long nanos = (System.nanoTime() - start) / runs;
+        long allocated = (allocatedBytes() - allocatedBefore) / runs;
+        System.out.println(label + ": " + count + " entries in " + String.format("%.3f", nanos / 1e6) + " ms, " +
+                           (allocatedBefore < 0 ? "allocation unknown" : allocated + " bytes allocated"));
+    }
+
+    // Bytes allocated by the current thread, or -1 when the JVM cannot report it
+    static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+        return -1;
+    }
+}
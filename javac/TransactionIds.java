@@ -0,0 +1,190 @@
+// Unique transaction IDs in Java
+//
+// Snowflake-style 64-bit IDs: 41 bits of milliseconds since 2024-01-01, 10 bits
+// of worker number and 12 bits of sequence within the millisecond. Each generator
+// is one worker; it keeps its last timestamp and sequence packed in one AtomicLong
+// and claims the next ID with a compare-and-set, so any number of threads can
+// share it without locking. IDs from one worker always increase. When more than
+// 4096 IDs are needed within a millisecond, or the wall clock steps backwards,
+// the sequence carries into the timestamp field and the generator runs slightly
+// ahead of the clock until the clock catches up, instead of repeating an ID.
+//
+// IDs are numbers; appendTo() and encode() write them as 13 fixed-width
+// Crockford base-32 characters into a caller's buffer without allocating.
+//
+// Compile and run the multi-threaded collision check from the javac directory:
+//   javac -d bin TransactionIds.java && java -cp bin TransactionIds [threads] [idsPerThread]
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class TransactionIds {
+    public static final long EPOCH_MILLIS = 1_704_067_200_000L; // 2024-01-01T00:00:00Z
+    public static final int WORKER_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_WORKER = (1 << WORKER_BITS) - 1;
+    public static final int ENCODED_LENGTH = 13;
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final char[] DIGITS = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private static volatile TransactionIds defaultGenerator =
+            new TransactionIds(Integer.getInteger("transaction.worker", 0));
+
+    private final long workerBits;
+    // (milliseconds since EPOCH_MILLIS << SEQUENCE_BITS) | sequence of the last ID issued
+    private final AtomicLong state = new AtomicLong();
+
+    public TransactionIds(int workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER) {
+            throw new IllegalArgumentException("Worker id must be between 0 and " + MAX_WORKER + ": " + workerId);
+        }
+        this.workerBits = (long) workerId << SEQUENCE_BITS;
+    }
+
+    // ---- Static access used by the payment processors ----
+
+    public static long next() {
+        return defaultGenerator.nextId();
+    }
+
+    // Replaces the generator behind next(), e.g. to give each process its own worker number
+    public static void install(TransactionIds generator) {
+        defaultGenerator = generator;
+    }
+
+    // ---- Generation ----
+
+    public long nextId() {
+        while (true) {
+            long previous = state.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            long claimed = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (state.compareAndSet(previous, claimed)) {
+                long timestamp = claimed >>> SEQUENCE_BITS;
+                return (timestamp << (WORKER_BITS + SEQUENCE_BITS)) | workerBits | (claimed & SEQUENCE_MASK);
+            }
+        }
+    }
+
+    public static long timestampMillis(long id) {
+        return (id >>> (WORKER_BITS + SEQUENCE_BITS)) + EPOCH_MILLIS;
+    }
+
+    public static int workerId(long id) {
+        return (int) (id >>> SEQUENCE_BITS) & MAX_WORKER;
+    }
+
+    public static int sequence(long id) {
+        return (int) (id & SEQUENCE_MASK);
+    }
+
+    // ---- Encoding ----
+
+    // Writes the ID as ENCODED_LENGTH base-32 characters starting at offset
+    public static void encode(long id, char[] out, int offset) {
+        for (int i = offset + ENCODED_LENGTH - 1; i >= offset; i--) {
+            out[i] = DIGITS[(int) (id & 31)];
+            id >>>= 5;
+        }
+    }
+
+    public static StringBuilder appendTo(StringBuilder out, long id) {
+        for (int shift = 5 * (ENCODED_LENGTH - 1); shift >= 0; shift -= 5) {
+            out.append(DIGITS[(int) (id >>> shift) & 31]);
+        }
+        return out;
+    }
+
+    public static String toString(long id) {
+        return appendTo(new StringBuilder(ENCODED_LENGTH), id).toString();
+    }
+
+    public static long decode(CharSequence text) {
+        if (text.length() != ENCODED_LENGTH) {
+            throw new IllegalArgumentException("Not a transaction id: " + text);
+        }
+        long id = 0;
+        for (int i = 0; i < ENCODED_LENGTH; i++) {
+            int digit = Arrays.binarySearch(DIGITS, Character.toUpperCase(text.charAt(i)));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a transaction id: " + text);
+            }
+            id = (id << 5) | digit;
+        }
+        return id;
+    }
+
+    // Generates IDs from several threads sharing one worker and checks that none repeat
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int perThread = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+        System.out.println("=== Transaction ID Collision Check ===");
+        System.out.println("Threads: " + threads + ", IDs per thread: " + perThread);
+
+        TransactionIds generator = new TransactionIds(7);
+        // Warm up the CAS loop before timing
+        for (int i = 0; i < 1_000_000; i++) {
+            generator.nextId();
+        }
+
+        long[][] ids = new long[threads][perThread];
+        boolean[] increasing = new boolean[threads];
+        CountDownLatch ready = new CountDownLatch(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            long[] out = ids[t];
+            int index = t;
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < out.length; i++) {
+                    out[i] = generator.nextId();
+                }
+                boolean ordered = true;
+                for (int i = 1; i < out.length; i++) {
+                    ordered &= out[i] > out[i - 1];
+                }
+                increasing[index] = ordered;
+            }, "id-generator-" + t);
+            workers[t].start();
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long nanos = System.nanoTime() - start;
+
+        long total = (long) threads * perThread;
+        long[] all = new long[(int) total];
+        boolean ordered = true;
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(ids[t], 0, all, t * perThread, perThread);
+            ordered &= increasing[t];
+        }
+        Arrays.sort(all);
+        long duplicates = 0;
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                duplicates++;
+            }
+        }
+
+        long last = all[all.length - 1];
+        System.out.println("Generated " + total + " IDs in " + String.format("%.1f", nanos / 1e6) + " ms (" +
+                           String.format("%.2f", total / (nanos / 1e9) / 1e6) + " million/s)");
+        System.out.println("Duplicates: " + duplicates + ", increasing within each thread: " + ordered);
+        System.out.println("Last ID: " + toString(last) + " (worker " + workerId(last) + ", " +
+                           (timestampMillis(last) - System.currentTimeMillis()) + " ms ahead of the clock)");
+        System.out.println("Round trip: " + (decode(toString(last)) == last));
+    }
+}
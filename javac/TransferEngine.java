@@ -0,0 +1,155 @@
+// Atomic transfers between BankAccounts in Java
+//
+// Before this, moving money from one account from Encapsulation.java to another
+// took a withdraw() and a separate deposit(), and anything could happen in
+// between. transfer() holds both accounts' locks and moves the money in a single
+// step under them, so no other thread ever sees it missing from one account but
+// not yet in the other. A logged account writes one record for the whole transfer.
+//
+// Two transfers in opposite directions between the same pair could deadlock if
+// each took its source lock first. Locks are therefore always taken in one global
+// order, lowest identity hash first. The rare pair of accounts with the same
+// identity hash is ordered by taking a shared tie-breaking lock first.
+//
+// main() runs random transfers from many threads, first spread over a large
+// number of accounts and then concentrated on a handful, and checks that no money
+// was created or lost and that no balance went negative.
+//
+// Compile and run from the javac directory:
+//   javac -d bin Encapsulation.java TransferEngine.java && java -Xmx2g -cp bin TransferEngine [accounts] [threads] [seconds]
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+public class TransferEngine {
+    public enum Result { COMPLETED, INVALID_PIN, LOCKED_OUT, INVALID_AMOUNT, INSUFFICIENT_FUNDS, SAME_ACCOUNT }
+
+    private static final Object TIE_LOCK = new Object();
+
+    private final LongAdder[] results = new LongAdder[Result.values().length];
+
+    public TransferEngine() {
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new LongAdder();
+        }
+    }
+
+    // Moves amount from one account to the other if the PIN matches the source
+    // account and it has the funds; either both balances change or neither does
+    public Result transfer(BankAccount from, BankAccount to, double amount, String pin) {
+        if (from == to) {
+            return count(Result.SAME_ACCOUNT);
+        }
+        int fromOrder = System.identityHashCode(from);
+        int toOrder = System.identityHashCode(to);
+        Result result;
+        if (fromOrder < toOrder) {
+            synchronized (from) {
+                synchronized (to) {
+                    result = from.transferTo(to, amount, pin);
+                }
+            }
+        } else if (fromOrder > toOrder) {
+            synchronized (to) {
+                synchronized (from) {
+                    result = from.transferTo(to, amount, pin);
+                }
+            }
+        } else {
+            synchronized (TIE_LOCK) {
+                synchronized (from) {
+                    synchronized (to) {
+                        result = from.transferTo(to, amount, pin);
+                    }
+                }
+            }
+        }
+        return count(result);
+    }
+
+    private Result count(Result result) {
+        results[result.ordinal()].increment();
+        return result;
+    }
+
+    public long getCount(Result result) {
+        return results[result.ordinal()].sum();
+    }
+
+    // Whole-dollar balances and amounts keep double arithmetic exact, so the
+    // conservation check can compare totals exactly
+    private static final double OPENING_BALANCE = 1000;
+
+    public static void main(String[] args) throws InterruptedException {
+        int accountCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+        System.out.println("=== Transfer Engine ===");
+        System.out.println("Accounts: " + accountCount + ", threads: " + threads + ", seconds per phase: " + seconds);
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            // One cheap hash shared by every account, so opening them stays quick
+            PinVerifier.HashedPin pin = PinVerifier.hash("1234", 1);
+            BankAccount[] accounts = new BankAccount[accountCount];
+            for (int i = 0; i < accountCount; i++) {
+                accounts[i] = new BankAccount(String.format("%09d", i), "Holder " + i, OPENING_BALANCE, pin);
+            }
+            run("Spread over all accounts", accounts, accountCount, threads, seconds);
+            run("Concentrated on 8 accounts", accounts, Math.min(8, accountCount), threads, seconds);
+        } finally {
+            OutputSink.install(previous);
+        }
+    }
+
+    // Random transfers among the first 'hot' accounts; one in a hundred uses a
+    // wrong PIN and some ask for more than the source holds
+    private static void run(String label, BankAccount[] accounts, int hot, int threads, int seconds)
+            throws InterruptedException {
+        TransferEngine engine = new TransferEngine();
+        CountDownLatch done = new CountDownLatch(threads);
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    for (int i = 0; i < 64; i++) {
+                        BankAccount from = accounts[random.nextInt(hot)];
+                        BankAccount to = accounts[random.nextInt(hot)];
+                        String pin = random.nextInt(100) == 0 ? "0000" : "1234";
+                        engine.transfer(from, to, 1 + random.nextInt(400), pin);
+                    }
+                }
+                done.countDown();
+            }, "transfer-" + t).start();
+        }
+        done.await();
+        long nanos = System.nanoTime() - start;
+
+        double total = 0;
+        int negative = 0;
+        for (BankAccount account : accounts) {
+            double balance = account.getBalance();
+            total += balance;
+            if (balance < 0) {
+                negative++;
+            }
+        }
+        long attempts = 0;
+        for (Result result : Result.values()) {
+            attempts += engine.getCount(result);
+        }
+        System.out.println(label + ": " + attempts + " transfers in " + String.format("%.1f", nanos / 1e6) + " ms (" +
+                           String.format("%.0f", attempts / (nanos / 1e9)) + "/s)");
+        StringBuilder line = new StringBuilder("  ");
+        for (Result result : Result.values()) {
+            line.append(result).append('=').append(engine.getCount(result)).append(' ');
+        }
+        System.out.println(line);
+        System.out.println("  Money conserved: " + (total == OPENING_BALANCE * accounts.length) +
+                           ", negative balances: " + negative);
+    }
+}
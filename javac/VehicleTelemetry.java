@@ -0,0 +1,353 @@
+// Vehicle lifecycle telemetry in Java
+//
+// A preallocated ring buffer of mutable event slots. Producers (vehicles) claim a
+// sequence, fill the slot in place and publish it; each registered consumer runs on
+// its own thread and reads the slots in batches. No objects are created per event.
+//
+// Shared by Abstraction.java and Inheritance.java, so it only deals in primitive
+// vehicle ids and never refers to a Vehicle class directly.
+//
+// A handler that throws is taken out of the ring: its error is kept for
+// getFailures(), producers stop waiting for it, and the other consumers carry on.
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+public final class VehicleTelemetry {
+    // Event types emitted by the lifecycle methods
+    public static final int ENGINE_STARTED = 0;
+    public static final int ENGINE_STOPPED = 1;
+    public static final int ACCELERATED = 2;
+    public static final int BRAKED = 3;
+    public static final int EVENT_TYPE_COUNT = 4;
+
+    private static final String[] EVENT_NAMES = {"ENGINE_STARTED", "ENGINE_STOPPED", "ACCELERATED", "BRAKED"};
+
+    public static String eventName(int eventType) {
+        return EVENT_NAMES[eventType];
+    }
+
+    // A reusable event slot. Consumers must copy what they need before returning,
+    // because the slot is overwritten once the ring wraps around.
+    public static final class Event {
+        long sequence;
+        long timestampNanos;
+        int vehicleId;
+        int eventType;
+
+        public long getSequence() { return sequence; }
+        public long getTimestampNanos() { return timestampNanos; }
+        public int getVehicleId() { return vehicleId; }
+        public int getEventType() { return eventType; }
+    }
+
+    // Pluggable consumer; endOfBatch lets sinks flush once per batch instead of per event
+    public interface EventHandler {
+        void onEvent(Event event, long sequence, boolean endOfBatch);
+
+        default void onShutdown() {
+        }
+    }
+
+    private final Event[] slots;
+    private final int mask;
+    private final AtomicLongArray published;
+    // Last sequence claimed, or CLOSED once shutdown() has stopped publishing
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long lastClaimed = -1;
+    private final List<Consumer> consumers = new ArrayList<>();
+    private volatile long cachedMinimumConsumed = -1;
+    private volatile boolean running;
+
+    private static final long CLOSED = Long.MIN_VALUE;
+    // A consumer's position once its handler has failed, so it never holds back producers
+    private static final long FAILED = Long.MAX_VALUE;
+
+    public VehicleTelemetry(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.slots = new Event[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Event();
+        }
+        this.mask = capacity - 1;
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+    }
+
+    // Consumers must be registered before start()
+    public void addHandler(EventHandler handler) {
+        if (running) {
+            throw new IllegalStateException("Handlers must be added before the telemetry is started");
+        }
+        consumers.add(new Consumer(handler));
+    }
+
+    public void start() {
+        if (consumers.isEmpty()) {
+            throw new IllegalStateException("At least one handler is required");
+        }
+        running = true;
+        int index = 0;
+        for (Consumer consumer : consumers) {
+            consumer.thread = new Thread(consumer, "vehicle-telemetry-" + index++);
+            consumer.thread.setDaemon(true);
+            consumer.thread.start();
+        }
+    }
+
+    // Records one lifecycle event; safe to call from any number of producer threads.
+    // Events are dropped while the telemetry is not running or is shutting down.
+    public void publish(int vehicleId, int eventType) {
+        if (!running) {
+            return;
+        }
+        long sequence;
+        long current;
+        do {
+            current = claimed.get();
+            if (current == CLOSED) {
+                return;
+            }
+            sequence = current + 1;
+        } while (!claimed.compareAndSet(current, sequence));
+        waitForCapacity(sequence);
+
+        int index = (int) (sequence & mask);
+        Event event = slots[index];
+        event.sequence = sequence;
+        event.timestampNanos = System.nanoTime();
+        event.vehicleId = vehicleId;
+        event.eventType = eventType;
+        published.lazySet(index, sequence);
+    }
+
+    // Back-pressure: a producer may not lap the slowest consumer
+    private void waitForCapacity(long sequence) {
+        long wrapPoint = sequence - slots.length;
+        if (wrapPoint <= cachedMinimumConsumed) {
+            return;
+        }
+        long minimum;
+        while (wrapPoint > (minimum = minimumConsumed())) {
+            LockSupport.parkNanos(1);
+        }
+        cachedMinimumConsumed = minimum;
+    }
+
+    private long minimumConsumed() {
+        long minimum = Long.MAX_VALUE;
+        for (int i = 0; i < consumers.size(); i++) {
+            minimum = Math.min(minimum, consumers.get(i).consumed.get());
+        }
+        return minimum;
+    }
+
+    public long getPublishedCount() {
+        long current = claimed.get();
+        return (current == CLOSED ? lastClaimed : current) + 1;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    // Stops publishing, drains every event already claimed, then stops the
+    // consumer threads. Consumers whose handler failed are not waited for.
+    public void shutdown() {
+        long last = close();
+        while (minimumConsumed() < last) {
+            LockSupport.parkNanos(1000);
+        }
+        running = false;
+        for (Consumer consumer : consumers) {
+            try {
+                consumer.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Closes publishing with a CAS, so no sequence can be claimed after the one returned
+    private long close() {
+        while (true) {
+            long current = claimed.get();
+            if (current == CLOSED) {
+                return lastClaimed;
+            }
+            lastClaimed = current;
+            if (claimed.compareAndSet(current, CLOSED)) {
+                return current;
+            }
+        }
+    }
+
+    // What each failed handler threw, in registration order; read after shutdown()
+    public List<Throwable> getFailures() {
+        List<Throwable> failures = new ArrayList<>();
+        for (Consumer consumer : consumers) {
+            if (consumer.failure != null) {
+                failures.add(consumer.failure);
+            }
+        }
+        return failures;
+    }
+
+    // One thread per handler, each with its own read position
+    private final class Consumer implements Runnable {
+        private final EventHandler handler;
+        private final AtomicLong consumed = new AtomicLong(-1);
+        private Thread thread;
+        private volatile Throwable failure;
+
+        Consumer(EventHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } catch (Throwable e) {
+                failure = e;
+                consumed.set(FAILED);
+            }
+            try {
+                handler.onShutdown();
+            } catch (Throwable e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+
+        private void consume() {
+            long next = 0;
+            int idleSpins = 0;
+            while (true) {
+                int index = (int) (next & mask);
+                if (published.get(index) != next) {
+                    if (!running) {
+                        break;
+                    }
+                    if (++idleSpins > 100) {
+                        LockSupport.parkNanos(10_000);
+                    } else {
+                        Thread.yield();
+                    }
+                    continue;
+                }
+                idleSpins = 0;
+
+                // Process every contiguous published slot as one batch
+                long available = next;
+                while (published.get((int) ((available + 1) & mask)) == available + 1) {
+                    available++;
+                }
+                for (long sequence = next; sequence <= available; sequence++) {
+                    handler.onEvent(slots[(int) (sequence & mask)], sequence, sequence == available);
+                }
+                consumed.lazySet(available);
+                next = available + 1;
+            }
+        }
+    }
+
+    // Consumer that keeps per-type counters for a fleet summary
+    public static final class Aggregator implements EventHandler {
+        private final long[] countsByType = new long[EVENT_TYPE_COUNT];
+        private long totalEvents;
+        private long firstTimestamp;
+        private long lastTimestamp;
+
+        @Override
+        public void onEvent(Event event, long sequence, boolean endOfBatch) {
+            if (totalEvents == 0) {
+                firstTimestamp = event.timestampNanos;
+            }
+            countsByType[event.eventType]++;
+            totalEvents++;
+            lastTimestamp = event.timestampNanos;
+        }
+
+        // Read after VehicleTelemetry.shutdown(), which joins the consumer thread
+        public long getCount(int eventType) { return countsByType[eventType]; }
+        public long getTotalEvents() { return totalEvents; }
+
+        public void displaySummary() {
+            System.out.println("Telemetry summary: " + totalEvents + " events");
+            for (int type = 0; type < EVENT_TYPE_COUNT; type++) {
+                System.out.println("  " + eventName(type) + ": " + countsByType[type]);
+            }
+            if (totalEvents > 1) {
+                double seconds = (lastTimestamp - firstTimestamp) / 1e9;
+                System.out.println("  Span: " + String.format("%.3f", seconds) + "s");
+            }
+        }
+    }
+
+    // Consumer that appends fixed-size binary records (timestamp, vehicle id, type) to a file
+    public static final class FileSink implements EventHandler {
+        public static final int RECORD_BYTES = 16;
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+        private long recordsWritten;
+
+        public FileSink(Path file, int bufferBytes) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            this.buffer = ByteBuffer.allocateDirect(Math.max(RECORD_BYTES, bufferBytes - bufferBytes % RECORD_BYTES));
+        }
+
+        @Override
+        public void onEvent(Event event, long sequence, boolean endOfBatch) {
+            buffer.putLong(event.timestampNanos);
+            buffer.putInt(event.vehicleId);
+            buffer.putInt(event.eventType);
+            recordsWritten++;
+            if (endOfBatch || !buffer.hasRemaining()) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to write telemetry records", e);
+            } finally {
+                buffer.clear();
+            }
+        }
+
+        @Override
+        public void onShutdown() {
+            flush();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to close telemetry file", e);
+            }
+        }
+
+        public long getRecordsWritten() { return recordsWritten; }
+    }
+}
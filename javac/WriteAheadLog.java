@@ -0,0 +1,923 @@
+// Write-ahead log for BankAccount in Java
+//
+// Lets the accounts from Encapsulation.java survive a crash. Once an account is
+// registered with the log, every deposit, withdrawal, transfer, PIN change and
+// day of interest is written as a record before it is applied, and it is
+// acknowledged only once the record is on disk. A transfer is one record naming
+// both accounts. Records are added to an in-memory buffer. One flusher thread
+// writes whatever has built up and calls FileChannel.force() once for the whole
+// batch (group commit), so concurrent operations share one fsync.
+//
+// Settings trade latency for throughput:
+// - A batch is written as soon as it holds batchSize records, or once its oldest
+//   record has waited maxDelayMicros.
+// - With syncAcknowledge off, an operation returns as soon as its record is
+//   queued, and the most recent records can be lost in a crash.
+// - Every snapshotEvery records, a background thread starts a new log segment and
+//   writes each account's state to a snapshot file. It then deletes the segments
+//   the snapshot covers, so recovery reads one snapshot plus the tail of the log.
+//
+// Records are numbered by a log sequence number (LSN) and carry a CRC32. If the
+// process died in the middle of a write, recovery cuts off the torn record at the
+// end of the log. PINs are only ever logged as the salted hashes from
+// PinVerifier, never as the PIN itself. Files in the log directory:
+//   wal-<first LSN>.log        records: body length, CRC32, type, account, payload
+//   snapshot-<LSN>.bin         account states up to the segment starting at LSN
+//
+// Compile and run the recovery benchmark from the javac directory:
+//   javac -d bin Encapsulation.java WriteAheadLog.java && java -cp bin WriteAheadLog [operations] [accounts]
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+public final class WriteAheadLog implements Closeable {
+    static final byte OPENED = 1;
+    static final byte DEPOSITED = 2;
+    static final byte WITHDREW = 3;
+    static final byte PIN_CHANGED = 4;
+    static final byte TRANSFERRED = 5;
+    static final byte ACCRUED = 6;
+
+    private static final int RECORD_HEADER = 8; // body length and CRC32 of the body
+    private static final int MAX_BODY = 2 + 255 + 8 + 2 * (2 + 0xffff);
+    private static final int SNAPSHOT_MAGIC = 0x57414c53; // "WALS"
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    public static final class Settings {
+        final int batchSize;
+        final long maxDelayNanos;
+        final boolean syncAcknowledge;
+        final long snapshotEvery;
+
+        // snapshotEvery = 0 leaves snapshots to explicit snapshot() calls
+        public Settings(int batchSize, long maxDelayMicros, boolean syncAcknowledge, long snapshotEvery) {
+            if (batchSize < 1 || maxDelayMicros < 0 || snapshotEvery < 0) {
+                throw new IllegalArgumentException("Batch size must be positive, delay and snapshot interval not negative");
+            }
+            this.batchSize = batchSize;
+            this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+            this.syncAcknowledge = syncAcknowledge;
+            this.snapshotEvery = snapshotEvery;
+        }
+    }
+
+    // The log's view of one account. BankAccount calls it with the account's lock
+    // held, so lastLsn always matches the state a snapshot reads.
+    static final class Journal {
+        private final WriteAheadLog log;
+        private final byte[] key;
+        long lastLsn;
+
+        Journal(WriteAheadLog log, String accountNumber) {
+            this.log = log;
+            this.key = accountNumber.getBytes(StandardCharsets.UTF_8);
+            if (key.length > 255) {
+                throw new IllegalArgumentException("Account number too long for the log");
+            }
+        }
+
+        void opened(String holderName, double balance, String pinHash) {
+            record(OPENED, balance, utf8(holderName), utf8(pinHash));
+        }
+
+        void deposited(double amount) {
+            record(DEPOSITED, amount, null, null);
+        }
+
+        void withdrew(double amount) {
+            record(WITHDREW, amount, null, null);
+        }
+
+        void pinChanged(String pinHash) {
+            record(PIN_CHANGED, 0, utf8(pinHash), null);
+        }
+
+        // A day's net interest and fees from InterestBatch; the day is kept so a
+        // recovered account still knows it has had that day
+        void accrued(double change, int epochDay) {
+            record(ACCRUED, change, utf8(Integer.toString(epochDay)), null);
+        }
+
+        // As accrued(), but returns the LSN without waiting for it to reach disk,
+        // so InterestBatch can wait once for a whole chunk of accounts
+        long accruedWithoutWaiting(double change, int epochDay) {
+            long lsn = log.append(ACCRUED, key, change, utf8(Integer.toString(epochDay)), null);
+            lastLsn = lsn;
+            return lsn;
+        }
+
+        void awaitDurable(long lsn) {
+            log.awaitDurable(lsn);
+        }
+
+        private void record(byte type, double amount, byte[] first, byte[] second) {
+            long lsn = log.append(type, key, amount, first, second);
+            log.awaitDurable(lsn);
+            lastLsn = lsn;
+        }
+
+        // One record for both sides of a transfer, so recovery never sees half of
+        // it. Called with both accounts' locks held; either journal may be null
+        // for an account that is not logged, but not just one of them.
+        static void transferred(Journal from, Journal to, double amount) {
+            if (from == null && to == null) {
+                return;
+            }
+            if (from == null || to == null || from.log != to.log) {
+                throw new IllegalStateException("Both accounts of a transfer must use the same write-ahead log");
+            }
+            long lsn = from.log.append(TRANSFERRED, from.key, amount, to.key, null);
+            from.log.awaitDurable(lsn);
+            from.lastLsn = lsn;
+            to.lastLsn = lsn;
+        }
+    }
+
+    private final Path directory;
+    private final Settings settings;
+    private final Map<String, BankAccount> accounts = new ConcurrentHashMap<>();
+    private final LongAdder flushes = new LongAdder();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    private final Condition durable = lock.newCondition();
+    private final Condition snapshotNeeded = lock.newCondition();
+    // Guarded by lock
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    private final CRC32 crc = new CRC32();
+    private int pendingRecords;
+    private long firstPendingNanos;
+    private long nextLsn = 1;
+    private long durableLsn;
+    private long segmentStart;
+    private int rotatePosition = -1; // where in pending a requested new segment begins
+    private long rotateLsn;
+    private long sinceSnapshot;
+    private boolean snapshotRequested;
+    private boolean closed;
+    private IOException failure;
+
+    private final Object snapshotLock = new Object();
+    private FileChannel segment; // written only by the flusher once it has started
+    private Thread flusher;
+    private Thread snapshotter;
+
+    private WriteAheadLog(Path directory, Settings settings) {
+        this.directory = directory;
+        this.settings = settings;
+    }
+
+    // Opens the log in the directory, rebuilding every account it holds from the
+    // newest snapshot and the records after it
+    public static WriteAheadLog open(Path directory, Settings settings) throws IOException {
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory, settings);
+        log.recover();
+        log.flusher = new Thread(log::flushLoop, "wal-flusher");
+        log.flusher.setDaemon(true);
+        log.flusher.start();
+        log.snapshotter = new Thread(log::snapshotLoop, "wal-snapshot");
+        log.snapshotter.setDaemon(true);
+        log.snapshotter.start();
+        return log;
+    }
+
+    // Starts logging an account; its current state becomes its first record
+    public void register(BankAccount account) {
+        account.attachJournal(this, false);
+    }
+
+    public BankAccount account(String accountNumber) {
+        return accounts.get(accountNumber);
+    }
+
+    public Collection<BankAccount> accounts() {
+        return Collections.unmodifiableCollection(accounts.values());
+    }
+
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+
+    Journal newJournal(BankAccount account, String accountNumber) {
+        Journal journal = new Journal(this, accountNumber);
+        if (accounts.putIfAbsent(accountNumber, account) != null) {
+            throw new IllegalArgumentException("An account with this number is already logged");
+        }
+        return journal;
+    }
+
+    // ---- Appending and group commit ----
+
+    long append(byte type, byte[] key, double amount, byte[] first, byte[] second) {
+        int body = 2 + key.length + 8 + textLength(first) + textLength(second);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+            if (pending.remaining() < RECORD_HEADER + body) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER + body));
+                pending.flip();
+                pending = larger.put(pending);
+            }
+            ByteBuffer out = pending;
+            int start = out.position();
+            out.putInt(body).putInt(0).put(type).put((byte) key.length).put(key).putDouble(amount);
+            putText(out, first);
+            putText(out, second);
+            crc.reset();
+            crc.update(out.array(), start + RECORD_HEADER, body);
+            out.putInt(start + 4, (int) crc.getValue());
+
+            if (pendingRecords++ == 0) {
+                firstPendingNanos = System.nanoTime();
+                work.signal();
+            } else if (pendingRecords == settings.batchSize) {
+                work.signal();
+            }
+            return nextLsn++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void awaitDurable(long lsn) {
+        lock.lock();
+        try {
+            while (settings.syncAcknowledge && durableLsn < lsn && failure == null) {
+                durable.await();
+            }
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the log to reach disk", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean readyToFlush(long now) {
+        return rotatePosition >= 0
+            || pendingRecords >= settings.batchSize
+            || pendingRecords > 0 && (closed || now - firstPendingNanos >= settings.maxDelayNanos);
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            int split;
+            long newSegment;
+            int records;
+            lock.lock();
+            try {
+                long now;
+                while (!readyToFlush(now = System.nanoTime())) {
+                    if (closed) {
+                        return;
+                    }
+                    if (pendingRecords == 0) {
+                        work.awaitUninterruptibly();
+                    } else {
+                        work.awaitNanos(settings.maxDelayNanos - (now - firstPendingNanos));
+                    }
+                }
+                batch = pending;
+                pending = spare;
+                spare = null;
+                batchEnd = nextLsn - 1;
+                records = pendingRecords;
+                pendingRecords = 0;
+                split = rotatePosition;
+                newSegment = rotateLsn;
+                rotatePosition = -1;
+            } catch (InterruptedException e) {
+                fail(new IOException("Log flusher interrupted", e));
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                batch.flip();
+                if (split >= 0) {
+                    ByteBuffer head = batch.duplicate();
+                    head.limit(split);
+                    writeFully(head);
+                    segment.force(false);
+                    segment.close();
+                    segment = openSegment(newSegment);
+                    batch.position(split);
+                }
+                writeFully(batch);
+                segment.force(false);
+                flushes.increment();
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.clear();
+
+            lock.lock();
+            try {
+                spare = batch;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableLsn = batchEnd;
+                    if (split >= 0) {
+                        segmentStart = newSegment;
+                    }
+                    sinceSnapshot += records;
+                    if (settings.snapshotEvery > 0 && sinceSnapshot >= settings.snapshotEvery && !snapshotRequested) {
+                        snapshotRequested = true;
+                        snapshotNeeded.signal();
+                    }
+                }
+                durable.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            if (error != null) {
+                return;
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+    }
+
+    private void fail(IOException error) {
+        lock.lock();
+        try {
+            failure = error;
+            durable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---- Snapshots ----
+
+    // Starts a new segment, writes every account's state, then deletes the
+    // segments and snapshots the new one makes unnecessary
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            long start;
+            lock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Write-ahead log is closed");
+                }
+                start = nextLsn;
+                if (start != segmentStart) {
+                    rotatePosition = pending.position();
+                    rotateLsn = start;
+                    work.signal();
+                    while (segmentStart != start && failure == null) {
+                        durable.awaitUninterruptibly();
+                    }
+                }
+                if (failure != null) {
+                    throw new IOException("Write-ahead log failed", failure);
+                }
+                sinceSnapshot = nextLsn - start;
+            } finally {
+                lock.unlock();
+            }
+
+            Path target = directory.resolve(SNAPSHOT_PREFIX + hex(start) + SNAPSHOT_SUFFIX);
+            Path temp = directory.resolve(SNAPSHOT_PREFIX + hex(start) + ".tmp");
+            try (FileOutputStream file = new FileOutputStream(temp.toFile())) {
+                CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file, 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(SNAPSHOT_MAGIC);
+                out.writeLong(start);
+                for (BankAccount account : accounts.values()) {
+                    account.writeSnapshot(out);
+                }
+                out.writeByte(0);
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+                file.getChannel().force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            syncDirectory();
+
+            for (Path path : list(SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(start).values()) {
+                Files.deleteIfExists(path);
+            }
+            for (Path path : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).headMap(start).values()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    // Called by BankAccount.writeSnapshot() with the account's lock held
+    static void writeAccount(DataOutput out, String accountNumber, String holderName, double balance,
+                             String pinHash, int lastAccrualDay, long lastLsn) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(accountNumber);
+        out.writeUTF(holderName);
+        out.writeUTF(pinHash);
+        out.writeDouble(balance);
+        out.writeInt(lastAccrualDay);
+        out.writeLong(lastLsn);
+    }
+
+    private void snapshotLoop() {
+        while (true) {
+            lock.lock();
+            try {
+                while (!snapshotRequested && !closed) {
+                    snapshotNeeded.awaitUninterruptibly();
+                }
+                if (closed) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                snapshot();
+            } catch (IOException | RuntimeException e) {
+                OutputSink.warn("Write-ahead log snapshot failed: " + e.getMessage());
+            }
+            lock.lock();
+            try {
+                snapshotRequested = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Flushes what is buffered and stops the background threads
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            work.signal();
+            snapshotNeeded.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            snapshotter.join();
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the log", e);
+        }
+        segment.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // ---- Recovery ----
+
+    // State of one account while the log is replayed
+    private static final class Recovered {
+        String holderName;
+        String pinHash;
+        double balance;
+        int lastAccrualDay;
+        long lastLsn;
+    }
+
+    private void recover() throws IOException {
+        Map<String, Recovered> states = new HashMap<>();
+        long snapshotLsn = 1;
+        for (Map.Entry<Long, Path> snapshot : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).descendingMap().entrySet()) {
+            Map<String, Recovered> loaded = readSnapshot(snapshot.getValue(), snapshot.getKey());
+            if (loaded != null) {
+                states = loaded;
+                snapshotLsn = snapshot.getKey();
+                break;
+            }
+        }
+
+        TreeMap<Long, Path> segments = list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long expected = -1;
+        long end = snapshotLsn;
+        for (Map.Entry<Long, Path> entry : segments.entrySet()) {
+            long start = entry.getKey();
+            Long next = segments.higherKey(start);
+            if (next != null && next <= snapshotLsn) {
+                continue; // entirely covered by the snapshot
+            }
+            if (expected < 0 ? start > snapshotLsn : start != expected) {
+                throw new IOException("Log records missing before " + entry.getValue());
+            }
+            end = replaySegment(entry.getValue(), start, next == null, states, snapshotLsn);
+            expected = end;
+        }
+
+        for (Map.Entry<String, Recovered> entry : states.entrySet()) {
+            Recovered state = entry.getValue();
+            BankAccount account = new BankAccount(entry.getKey(), state.holderName, state.balance,
+                                                  PinVerifier.HashedPin.decode(state.pinHash));
+            account.restoreAccrualDay(state.lastAccrualDay);
+            account.attachJournal(this, true);
+        }
+        nextLsn = Math.max(end, snapshotLsn);
+        durableLsn = nextLsn - 1;
+        segmentStart = nextLsn;
+        segment = openSegment(nextLsn);
+    }
+
+    // Applies one segment's records and returns the LSN after its last one. A torn
+    // or corrupt record ends the last segment there; anywhere else it is an error.
+    private long replaySegment(Path file, long start, boolean last, Map<String, Recovered> states,
+                               long snapshotLsn) throws IOException {
+        long lsn = start;
+        long validBytes = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+            boolean endOfFile = false;
+            boolean torn = false;
+            while (!torn) {
+                while (!endOfFile && buffer.hasRemaining()) {
+                    endOfFile = channel.read(buffer) < 0;
+                }
+                buffer.flip();
+                while (buffer.remaining() >= RECORD_HEADER) {
+                    int position = buffer.position();
+                    int body = buffer.getInt(position);
+                    if (body < 10 || body > MAX_BODY) {
+                        torn = true;
+                        break;
+                    }
+                    if (buffer.remaining() < RECORD_HEADER + body) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(buffer.array(), position + RECORD_HEADER, body);
+                    if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                        torn = true;
+                        break;
+                    }
+                    buffer.position(position + RECORD_HEADER);
+                    apply(buffer, lsn, states, snapshotLsn);
+                    buffer.position(position + RECORD_HEADER + body);
+                    lsn++;
+                    validBytes += RECORD_HEADER + body;
+                }
+                if (endOfFile) {
+                    torn |= buffer.hasRemaining();
+                    break;
+                }
+                buffer.compact();
+            }
+            if (torn) {
+                if (!last) {
+                    throw new IOException("Corrupt record " + lsn + " in " + file);
+                }
+                channel.truncate(validBytes);
+                channel.force(true);
+            }
+        }
+        return lsn;
+    }
+
+    private static void apply(ByteBuffer in, long lsn, Map<String, Recovered> states, long snapshotLsn)
+            throws IOException {
+        byte type = in.get();
+        byte[] key = new byte[in.get() & 0xff];
+        in.get(key);
+        String accountNumber = new String(key, StandardCharsets.UTF_8);
+        double amount = in.getDouble();
+        Recovered state = states.get(accountNumber);
+        if (state == null && type != OPENED) {
+            throw new IOException("Record " + lsn + " is for an account that was never opened");
+        }
+        if (type == TRANSFERRED) {
+            String targetNumber = getText(in);
+            Recovered target = states.get(targetNumber);
+            if (target == null) {
+                throw new IOException("Record " + lsn + " transfers to an account that was never opened");
+            }
+            // Each side was snapshotted on its own, so each side is checked on its own
+            if (lsn >= snapshotLsn && lsn > state.lastLsn) {
+                state.balance -= amount;
+                state.lastLsn = lsn;
+            }
+            if (lsn >= snapshotLsn && lsn > target.lastLsn) {
+                target.balance += amount;
+                target.lastLsn = lsn;
+            }
+            return;
+        }
+        if (lsn < snapshotLsn || state != null && lsn <= state.lastLsn) {
+            return; // already part of the snapshot
+        }
+        switch (type) {
+            case OPENED:
+                state = new Recovered();
+                state.balance = amount;
+                state.holderName = getText(in);
+                state.pinHash = getText(in);
+                states.put(accountNumber, state);
+                break;
+            case DEPOSITED:
+                state.balance += amount;
+                break;
+            case WITHDREW:
+                state.balance -= amount;
+                break;
+            case PIN_CHANGED:
+                state.pinHash = getText(in);
+                break;
+            case ACCRUED:
+                state.balance += amount;
+                state.lastAccrualDay = Integer.parseInt(getText(in));
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " at " + lsn);
+        }
+        state.lastLsn = lsn;
+    }
+
+    // The accounts in a snapshot, or null if the file is incomplete or damaged
+    private static Map<String, Recovered> readSnapshot(Path file, long lsn) {
+        try (InputStream stream = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readLong() != lsn) {
+                return null;
+            }
+            Map<String, Recovered> states = new HashMap<>();
+            while (in.readByte() == 1) {
+                String accountNumber = in.readUTF();
+                Recovered state = new Recovered();
+                state.holderName = in.readUTF();
+                state.pinHash = in.readUTF();
+                state.balance = in.readDouble();
+                state.lastAccrualDay = in.readInt();
+                state.lastLsn = in.readLong();
+                states.put(accountNumber, state);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected ? states : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // ---- Files ----
+
+    private FileChannel openSegment(long start) throws IOException {
+        // A segment that already has this name cannot hold any valid records
+        FileChannel channel = FileChannel.open(directory.resolve(SEGMENT_PREFIX + hex(start) + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        syncDirectory();
+        return channel;
+    }
+
+    // Files with the prefix and suffix, by the LSN in their name
+    private TreeMap<Long, Path> list(String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseUnsignedLong(name.substring(prefix.length(), name.length() - suffix.length()), 16), path);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    // Makes a new or renamed file's directory entry durable; not every platform allows it
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // best effort
+        }
+    }
+
+    private static String hex(long lsn) {
+        return String.format("%016x", lsn);
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int textLength(byte[] text) {
+        return text == null ? 0 : 2 + text.length;
+    }
+
+    private static void putText(ByteBuffer out, byte[] text) {
+        if (text != null) {
+            out.putShort((short) text.length).put(text);
+        }
+    }
+
+    private static String getText(ByteBuffer in) {
+        byte[] text = new byte[in.getShort() & 0xffff];
+        in.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // ---- Benchmark ----
+
+    // Writes 'operations' deposits and withdrawals across 'accounts' accounts,
+    // then times recovery from the full log, and from a snapshot plus a tail of
+    // a tenth as many records
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int accountCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        Path directory = Files.createTempDirectory("wal-benchmark");
+        System.out.println("=== Write-Ahead Log Recovery ===");
+        System.out.println("Operations: " + operations + ", accounts: " + accountCount + ", directory: " + directory);
+
+        OutputSink previous = OutputSink.install(OutputSink.noOp());
+        try {
+            groupCommit(directory.resolve("durable"), 8, 2);
+
+            Path logDirectory = directory.resolve("bulk");
+            Settings bulk = new Settings(4096, 2_000, false, 0);
+            double[] expected = new double[accountCount];
+            SplittableRandom random = new SplittableRandom(44L);
+
+            PinVerifier.HashedPin pin = PinVerifier.hash("1234", 1);
+            long start = System.nanoTime();
+            try (WriteAheadLog log = open(logDirectory, bulk)) {
+                for (int i = 0; i < accountCount; i++) {
+                    expected[i] = 1000.0;
+                    log.register(new BankAccount(accountNumber(i), "Holder " + i, expected[i], pin));
+                }
+                writeOperations(log, expected, operations, random);
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.println("Wrote " + operations + " records in " + String.format("%.1f", nanos / 1e6) + " ms, " +
+                               "log size " + size(logDirectory) / (1 << 20) + " MB");
+
+            try (WriteAheadLog log = timedOpen("Recovery from the full log", logDirectory, bulk, expected)) {
+                long snapshotStart = System.nanoTime();
+                log.snapshot();
+                System.out.println("Snapshot of " + accountCount + " accounts took " +
+                                   String.format("%.1f", (System.nanoTime() - snapshotStart) / 1e6) + " ms");
+                writeOperations(log, expected, operations / 10, random);
+            }
+            timedOpen("Recovery from snapshot + " + operations / 10 + " records", logDirectory, bulk, expected).close();
+
+            // A crash in the middle of a write leaves part of a record at the end
+            Path last = list(logDirectory).lastEntry().getValue();
+            Files.write(last, new byte[] { 42, 0, 0, 0, 1, 2, 3 }, StandardOpenOption.APPEND);
+            timedOpen("Recovery with a torn final record", logDirectory, bulk, expected).close();
+        } finally {
+            OutputSink.install(previous);
+            deleteRecursively(directory);
+        }
+    }
+
+    // Several threads making real deposits that each wait for their fsync
+    private static void groupCommit(Path logDirectory, int threads, int seconds) throws IOException, InterruptedException {
+        try (WriteAheadLog log = open(logDirectory, new Settings(256, 1_000, true, 0))) {
+            BankAccount[] accounts = new BankAccount[threads];
+            for (int i = 0; i < threads; i++) {
+                accounts[i] = new BankAccount(accountNumber(i), "Holder " + i, 0, "1234");
+                log.register(accounts[i]);
+            }
+            LongAdder deposits = new LongAdder();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+            List<Thread> workers = new ArrayList<>();
+            for (BankAccount account : accounts) {
+                Thread worker = new Thread(() -> {
+                    while (System.nanoTime() < end) {
+                        account.deposit(1.0);
+                        deposits.increment();
+                    }
+                }, "depositor");
+                workers.add(worker);
+                worker.start();
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            long flushCount = Math.max(1, log.getFlushCount());
+            System.out.println("Durable deposits from " + threads + " threads: " +
+                               String.format("%.0f", deposits.sum() / (double) seconds) + "/s, " +
+                               String.format("%.1f", deposits.sum() / (double) flushCount) + " per fsync");
+        }
+    }
+
+    private static void writeOperations(WriteAheadLog log, double[] expected, int operations, SplittableRandom random) {
+        Journal[] journals = new Journal[expected.length];
+        for (int i = 0; i < journals.length; i++) {
+            journals[i] = new Journal(log, accountNumber(i));
+        }
+        for (int i = 0; i < operations; i++) {
+            int account = random.nextInt(expected.length);
+            double amount = 1 + random.nextInt(20_000) / 100.0;
+            if (random.nextBoolean() && amount <= expected[account]) {
+                journals[account].withdrew(amount);
+                expected[account] -= amount;
+            } else {
+                journals[account].deposited(amount);
+                expected[account] += amount;
+            }
+        }
+    }
+
+    private static WriteAheadLog timedOpen(String label, Path logDirectory, Settings settings, double[] expected)
+            throws IOException {
+        long start = System.nanoTime();
+        WriteAheadLog log = open(logDirectory, settings);
+        long nanos = System.nanoTime() - start;
+        int mismatches = 0;
+        for (int i = 0; i < expected.length; i++) {
+            BankAccount account = log.account(accountNumber(i));
+            if (account == null || account.getBalance() != expected[i]) {
+                mismatches++;
+            }
+        }
+        System.out.println(label + ": " + String.format("%.1f", nanos / 1e6) + " ms, " +
+                           log.accounts().size() + " accounts, balance mismatches: " + mismatches);
+        return log;
+    }
+
+    private static String accountNumber(int i) {
+        return String.format("ACC%09d", i);
+    }
+
+    private static TreeMap<Long, Path> list(Path logDirectory) throws IOException {
+        return new WriteAheadLog(logDirectory, null).list(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+    }
+
+    private static long size(Path logDirectory) throws IOException {
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(logDirectory)) {
+            for (Path path : stream) {
+                total += Files.size(path);
+            }
+        }
+        return total;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path child : stream) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,76 @@
+package abstraction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// PaymentProcessor.executePayment and AbstractDatabaseConnection.performOperation
+// from Abstraction.java, one implementation per run.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AbstractionBenchmark {
+    @State(Scope.Thread)
+    public static class Payment {
+        @Param({"CreditCard", "PayPal", "BankTransfer"})
+        String method;
+
+        PaymentProcessor processor;
+
+        @Setup
+        public void create() {
+            OutputSink.install(OutputSink.noOp());
+            switch (method) {
+                case "CreditCard":
+                    processor = new CreditCardProcessor(299.99, "USD", "4111111111111111", "12/25", "123");
+                    break;
+                case "PayPal":
+                    processor = new PayPalProcessor(149.50, "USD", "user@example.com", "password123");
+                    break;
+                default:
+                    processor = new BankTransferProcessor(500.00, "USD", "12345678901", "123456789");
+                    break;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Database {
+        @Param({"MySQL", "PostgreSQL"})
+        String database;
+
+        AbstractDatabaseConnection connection;
+
+        @Setup
+        public void connect() {
+            OutputSink.install(OutputSink.noOp());
+            if (database.equals("MySQL")) {
+                connection = new MySQLConnection("localhost", 3306, "myapp_db", "admin", "password");
+            } else {
+                connection = new PostgreSQLConnection("localhost", 5432, "app_database", "postgres", "secret");
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean executePayment(Payment state) {
+        return state.processor.executePayment();
+    }
+
+    @Benchmark
+    public void performOperation(Database state) {
+        state.connection.performOperation("SELECT * FROM users");
+    }
+}
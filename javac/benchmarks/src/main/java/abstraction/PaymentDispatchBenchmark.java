@@ -0,0 +1,97 @@
+package abstraction;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// executePayment() over a batch of payments that uses one, two or all three
+// processor types, through the original PaymentProcessor classes, the sealed
+// copies' virtual template method, and the sealed copies' type-pattern execute().
+// Every payment builds a few log strings for the no-op sink, so the dispatch
+// cost is a smaller share here than in DispatchBenchmark.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PaymentDispatchBenchmark {
+    @Param({"mono", "bi", "mega"})
+    String mix;
+
+    @Param({"1024"})
+    int size;
+
+    PaymentProcessor[] processors;
+    SealedPayments.PaymentProcessor[] sealedProcessors;
+
+    @Setup
+    public void build() {
+        OutputSink.install(OutputSink.noOp());
+        int types = mix.equals("mono") ? 1 : mix.equals("bi") ? 2 : 3;
+        SplittableRandom random = new SplittableRandom(59L);
+        processors = new PaymentProcessor[size];
+        sealedProcessors = new SealedPayments.PaymentProcessor[size];
+        for (int i = 0; i < size; i++) {
+            double amount = 10 + random.nextInt(50_000) / 100.0;
+            switch (random.nextInt(types)) {
+                case 0:
+                    processors[i] = new CreditCardProcessor(amount, "USD", "4111111111111111", "12/25", "123");
+                    sealedProcessors[i] = new SealedPayments.CreditCardProcessor(amount, "USD", "4111111111111111", "123");
+                    break;
+                case 1:
+                    processors[i] = new PayPalProcessor(amount, "USD", "user@example.com", "password123");
+                    sealedProcessors[i] = new SealedPayments.PayPalProcessor(amount, "USD", "user@example.com", "password123");
+                    break;
+                default:
+                    processors[i] = new BankTransferProcessor(amount, "USD", "12345678901", "123456789");
+                    sealedProcessors[i] = new SealedPayments.BankTransferProcessor(amount, "USD", "12345678901", "123456789");
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public int executeVirtual() {
+        int completed = 0;
+        for (PaymentProcessor processor : processors) {
+            if (processor.executePayment()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    @Benchmark
+    public int executeSealedVirtual() {
+        int completed = 0;
+        for (SealedPayments.PaymentProcessor processor : sealedProcessors) {
+            if (processor.executePayment()) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+
+    @Benchmark
+    public int executeSealedPattern() {
+        int completed = 0;
+        for (SealedPayments.PaymentProcessor processor : sealedProcessors) {
+            if (SealedPayments.execute(processor)) {
+                completed++;
+            }
+        }
+        return completed;
+    }
+}
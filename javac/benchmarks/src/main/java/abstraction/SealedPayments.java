@@ -0,0 +1,237 @@
+package abstraction;
+
+// Sealed copy of the PaymentProcessor hierarchy from Abstraction.java.
+//
+// PaymentProcessor.executePayment() is a template method: its calls to
+// validatePayment(), processPayment() and sendConfirmation() are single call
+// sites shared by every processor type, so they go megamorphic as soon as three
+// kinds of payment flow through them. execute() below runs the same template but
+// resolves each step with type patterns over the final leaf classes, which the
+// JIT can inline. The steps do the same work as the originals: the same
+// PaymentValidation rules, the same guarded logging and an execute timer.
+final class SealedPayments {
+    private static final MetricsRegistry.Timer EXECUTE_TIMER = MetricsRegistry.timer("payment.executePayment.sealed");
+
+    private SealedPayments() {
+    }
+
+    abstract static sealed class PaymentProcessor permits CreditCardProcessor, PayPalProcessor, BankTransferProcessor {
+        protected final double amount;
+        protected final String currency;
+        protected long transactionId;
+
+        PaymentProcessor(double amount, String currency) {
+            this.amount = amount;
+            this.currency = currency;
+        }
+
+        abstract boolean validatePayment();
+        abstract boolean processPayment();
+        abstract void sendConfirmation();
+
+        protected long issueTransactionId(String prefix) {
+            transactionId = TransactionIds.next();
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                StringBuilder line = new StringBuilder(40).append("Transaction ID: ").append(prefix);
+                OutputSink.info(TransactionIds.appendTo(line, transactionId).toString());
+            }
+            return transactionId;
+        }
+
+        // Same template method as the original, dispatching virtually
+        boolean executePayment() {
+            long start = EXECUTE_TIMER.start();
+            try {
+                OutputSink.info("\n--- Starting payment process ---");
+                if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                    OutputSink.info("Amount: " + amount + " " + currency);
+                }
+                if (!validatePayment()) {
+                    OutputSink.warn("Payment validation failed");
+                    return false;
+                }
+                if (!processPayment()) {
+                    OutputSink.warn("Payment processing failed");
+                    return false;
+                }
+                sendConfirmation();
+                OutputSink.info("Payment completed successfully");
+                return true;
+            } finally {
+                EXECUTE_TIMER.stop(start);
+            }
+        }
+    }
+
+    static final class CreditCardProcessor extends PaymentProcessor {
+        private final String cardNumber;
+        private final String cvv;
+
+        CreditCardProcessor(double amount, String currency, String cardNumber, String cvv) {
+            super(amount, currency);
+            this.cardNumber = cardNumber;
+            this.cvv = cvv;
+        }
+
+        @Override
+        boolean validatePayment() {
+            OutputSink.debug("Validating credit card details...");
+            int failed = PaymentValidation.CREDIT_CARD.check(cardNumber, cvv);
+            if (failed != PaymentValidation.VALID) {
+                OutputSink.warn(PaymentValidation.CREDIT_CARD.message(failed));
+                return false;
+            }
+            OutputSink.info("Credit card validation successful");
+            return true;
+        }
+
+        @Override
+        boolean processPayment() {
+            OutputSink.info("Processing credit card payment...");
+            OutputSink.info("Contacting bank for authorization...");
+            OutputSink.info("Payment authorized by bank");
+            return true;
+        }
+
+        @Override
+        void sendConfirmation() {
+            OutputSink.info("Credit card payment confirmation sent");
+            issueTransactionId("CC");
+        }
+    }
+
+    static final class PayPalProcessor extends PaymentProcessor {
+        private final String email;
+        private final String password;
+
+        PayPalProcessor(double amount, String currency, String email, String password) {
+            super(amount, currency);
+            this.email = email;
+            this.password = password;
+        }
+
+        @Override
+        boolean validatePayment() {
+            OutputSink.debug("Validating PayPal credentials...");
+            int failed = PaymentValidation.PAYPAL.check(email, password);
+            if (failed != PaymentValidation.VALID) {
+                OutputSink.warn(PaymentValidation.PAYPAL.message(failed));
+                return false;
+            }
+            OutputSink.info("PayPal validation successful");
+            return true;
+        }
+
+        @Override
+        boolean processPayment() {
+            OutputSink.info("Processing PayPal payment...");
+            OutputSink.info("Connecting to PayPal servers...");
+            OutputSink.info("Payment processed through PayPal");
+            return true;
+        }
+
+        @Override
+        void sendConfirmation() {
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("PayPal payment confirmation sent to " + email);
+            }
+            issueTransactionId("PP");
+        }
+    }
+
+    static final class BankTransferProcessor extends PaymentProcessor {
+        private final String accountNumber;
+        private final String routingNumber;
+
+        BankTransferProcessor(double amount, String currency, String accountNumber, String routingNumber) {
+            super(amount, currency);
+            this.accountNumber = accountNumber;
+            this.routingNumber = routingNumber;
+        }
+
+        @Override
+        boolean validatePayment() {
+            OutputSink.debug("Validating bank account details...");
+            int failed = PaymentValidation.BANK_TRANSFER.check(accountNumber, routingNumber);
+            if (failed != PaymentValidation.VALID) {
+                OutputSink.warn(PaymentValidation.BANK_TRANSFER.message(failed));
+                return false;
+            }
+            OutputSink.info("Bank account validation successful");
+            return true;
+        }
+
+        @Override
+        boolean processPayment() {
+            OutputSink.info("Processing bank transfer...");
+            OutputSink.info("Initiating ACH transfer...");
+            OutputSink.info("Bank transfer initiated (may take 1-3 business days)");
+            return true;
+        }
+
+        @Override
+        void sendConfirmation() {
+            OutputSink.info("Bank transfer confirmation sent");
+            issueTransactionId("BT");
+        }
+    }
+
+    // executePayment() with each step dispatched through type patterns instead of
+    // the shared virtual call sites
+    static boolean execute(PaymentProcessor processor) {
+        long start = EXECUTE_TIMER.start();
+        try {
+            OutputSink.info("\n--- Starting payment process ---");
+            if (OutputSink.isEnabled(OutputSink.Level.INFO)) {
+                OutputSink.info("Amount: " + processor.amount + " " + processor.currency);
+            }
+            if (!validate(processor)) {
+                OutputSink.warn("Payment validation failed");
+                return false;
+            }
+            if (!process(processor)) {
+                OutputSink.warn("Payment processing failed");
+                return false;
+            }
+            confirm(processor);
+            OutputSink.info("Payment completed successfully");
+            return true;
+        } finally {
+            EXECUTE_TIMER.stop(start);
+        }
+    }
+
+    static boolean validate(PaymentProcessor processor) {
+        if (processor instanceof CreditCardProcessor card) {
+            return card.validatePayment();
+        } else if (processor instanceof PayPalProcessor payPal) {
+            return payPal.validatePayment();
+        } else if (processor instanceof BankTransferProcessor transfer) {
+            return transfer.validatePayment();
+        }
+        throw new IllegalArgumentException("Unknown processor: " + processor);
+    }
+
+    static boolean process(PaymentProcessor processor) {
+        if (processor instanceof CreditCardProcessor card) {
+            return card.processPayment();
+        } else if (processor instanceof PayPalProcessor payPal) {
+            return payPal.processPayment();
+        } else if (processor instanceof BankTransferProcessor transfer) {
+            return transfer.processPayment();
+        }
+        throw new IllegalArgumentException("Unknown processor: " + processor);
+    }
+
+    static void confirm(PaymentProcessor processor) {
+        if (processor instanceof CreditCardProcessor card) {
+            card.sendConfirmation();
+        } else if (processor instanceof PayPalProcessor payPal) {
+            payPal.sendConfirmation();
+        } else if (processor instanceof BankTransferProcessor transfer) {
+            transfer.sendConfirmation();
+        } else {
+            throw new IllegalArgumentException("Unknown processor: " + processor);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package abstraction;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// TransactionIds throughput, alone and with four threads sharing one worker, and
+// the cost of encoding an ID compared with the old "CC" + currentTimeMillis()
+// string. Uniqueness under concurrency is checked by TransactionIds.main.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionIdBenchmark {
+    final TransactionIds generator = new TransactionIds(1);
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        final char[] chars = new char[TransactionIds.ENCODED_LENGTH];
+    }
+
+    @Benchmark
+    public long nextId() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long nextIdShared() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    public char[] nextIdEncoded(Buffer buffer) {
+        TransactionIds.encode(generator.nextId(), buffer.chars, 0);
+        return buffer.chars;
+    }
+
+    @Benchmark
+    public String currentTimeMillisString() {
+        return "CC" + System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,135 @@
+package abstraction;
+
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost per card payment of validating a batch of 1024, drawn from a pool of
+// 'distinct' card numbers: the old length-only String checks, and the compiled
+// rules with the Luhn check on Strings and on ASCII bytes.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidationBenchmark {
+    static final int BATCH = 1024;
+    static final int CARD_LENGTH = 16;
+    static final int CVV_LENGTH = 3;
+
+    @Param({"16", "100000"})
+    int distinct;
+
+    String[] cardNumbers;
+    String[] cvvs;
+    // Card number then CVV, back to back, for each payment
+    byte[] packed;
+    int next;
+
+    @Setup
+    public void build() {
+        OutputSink.install(OutputSink.noOp());
+        SplittableRandom random = new SplittableRandom(43L);
+        String[] poolCards = new String[distinct];
+        String[] poolCvvs = new String[distinct];
+        for (int i = 0; i < distinct; i++) {
+            poolCards[i] = luhnNumber(random);
+            poolCvvs[i] = String.valueOf(100 + random.nextInt(900));
+        }
+
+        // A whole number of batches, enough to visit most of the pool
+        int payments = Math.max(1, Math.min(distinct, 1 << 17) / BATCH) * BATCH;
+        cardNumbers = new String[payments];
+        cvvs = new String[payments];
+        packed = new byte[payments * (CARD_LENGTH + CVV_LENGTH)];
+        for (int i = 0; i < payments; i++) {
+            int pick = random.nextInt(distinct);
+            cardNumbers[i] = poolCards[pick];
+            cvvs[i] = poolCvvs[pick];
+            byte[] card = cardNumbers[i].getBytes(StandardCharsets.US_ASCII);
+            byte[] cvv = cvvs[i].getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(card, 0, packed, i * (CARD_LENGTH + CVV_LENGTH), CARD_LENGTH);
+            System.arraycopy(cvv, 0, packed, i * (CARD_LENGTH + CVV_LENGTH) + CARD_LENGTH, CVV_LENGTH);
+            if (PaymentValidation.CREDIT_CARD.check(cardNumbers[i], cvvs[i]) != PaymentValidation.VALID) {
+                throw new IllegalStateException("Generated an invalid card: " + cardNumbers[i]);
+            }
+        }
+    }
+
+    // 15 random digits and the Luhn check digit that makes them valid
+    static String luhnNumber(SplittableRandom random) {
+        char[] digits = new char[CARD_LENGTH];
+        int sum = 0;
+        for (int i = 0; i < CARD_LENGTH - 1; i++) {
+            int digit = i == 0 ? 4 : random.nextInt(10);
+            digits[i] = (char) ('0' + digit);
+            // Position counted from the check digit: odd positions are doubled
+            boolean doubled = (CARD_LENGTH - 1 - i) % 2 == 1;
+            sum += doubled ? (digit * 2 > 9 ? digit * 2 - 9 : digit * 2) : digit;
+        }
+        digits[CARD_LENGTH - 1] = (char) ('0' + (10 - sum % 10) % 10);
+        return new String(digits);
+    }
+
+    // Window of BATCH payments that moves through the whole list between calls
+    int nextBatch() {
+        int start = next;
+        next = start + BATCH == cardNumbers.length ? 0 : start + BATCH;
+        return start;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int lengthChecksOnly() {
+        int start = nextBatch();
+        int valid = 0;
+        for (int i = start; i < start + BATCH; i++) {
+            if (cardNumbers[i].length() == 16 && cvvs[i].length() == 3) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int checkStrings() {
+        int start = nextBatch();
+        int valid = 0;
+        for (int i = start; i < start + BATCH; i++) {
+            if (PaymentValidation.CREDIT_CARD.check(cardNumbers[i], cvvs[i]) == PaymentValidation.VALID) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public int checkBytes() {
+        int start = nextBatch();
+        int valid = 0;
+        for (int i = start; i < start + BATCH; i++) {
+            int offset = i * (CARD_LENGTH + CVV_LENGTH);
+            if (PaymentValidation.CREDIT_CARD.check(packed, offset, CARD_LENGTH,
+                    offset + CARD_LENGTH, CVV_LENGTH) == PaymentValidation.VALID) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+}
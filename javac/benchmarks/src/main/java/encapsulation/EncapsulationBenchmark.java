@@ -0,0 +1,105 @@
+package encapsulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// BankAccount, Student and Library from Encapsulation.java. Output is sent to the
+// no-op sink so the numbers measure the domain logic, not the console.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncapsulationBenchmark {
+    @State(Scope.Thread)
+    public static class Account {
+        BankAccount account;
+
+        // Every deposit and withdrawal appends to the transaction history, so a
+        // fresh account per iteration keeps it from growing across the whole run
+        @Setup(Level.Iteration)
+        public void open() {
+            OutputSink.install(OutputSink.noOp());
+            account = new BankAccount("ACC123456", "Benchmark Holder", 1_000_000_000.0, "1234");
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Grades {
+        @Param({"10", "1000", "100000"})
+        int grades;
+
+        Student student;
+
+        @Setup
+        public void fill() {
+            OutputSink.install(OutputSink.noOp());
+            student = new Student("Benchmark Student", 1, "student@example.com");
+            for (int i = 0; i < grades; i++) {
+                student.addGrade(50 + i % 51);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Shelf {
+        @Param({"10", "1000", "100000"})
+        int books;
+
+        Library library;
+        String lastIsbn;
+
+        @Setup
+        public void fill() {
+            OutputSink.install(OutputSink.noOp());
+            library = new Library("Benchmark Library", books);
+            for (int i = 0; i < books; i++) {
+                library.addBook("Title " + i, "Author " + (i % 100), "ISBN-" + i);
+            }
+            lastIsbn = "ISBN-" + (books - 1);
+        }
+    }
+
+    @Benchmark
+    public boolean deposit(Account state) {
+        return state.account.deposit(25.0);
+    }
+
+    @Benchmark
+    public boolean withdraw(Account state) {
+        return state.account.withdraw(10.0, "1234");
+    }
+
+    // After three wrong PINs the account is locked out, so past the first few
+    // calls this measures the refusal, which skips hashing
+    @Benchmark
+    public boolean withdrawWrongPin(Account state) {
+        return state.account.withdraw(10.0, "0000");
+    }
+
+    @Benchmark
+    public double getAverage(Grades state) {
+        return state.student.getAverage();
+    }
+
+    // Checks out the last book on the shelf (a full scan) and returns it again so
+    // every invocation does the same work
+    @Benchmark
+    public boolean checkOutBook(Shelf state) {
+        boolean checkedOut = state.library.checkOutBook(state.lastIsbn);
+        state.library.returnBook(state.lastIsbn);
+        return checkedOut;
+    }
+}
@@ -0,0 +1,70 @@
+package encapsulation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of MetricsRegistry instrumentation with collection switched off and on:
+// a bare timer and counter, and Library.checkOutBook on a small shelf where the
+// timer is a noticeable share of the call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    @Param({"false", "true"})
+    boolean enabled;
+
+    MetricsRegistry.Timer timer;
+    MetricsRegistry.Counter counter;
+    Library library;
+
+    @Setup
+    public void setUp() {
+        OutputSink.install(OutputSink.noOp());
+        MetricsRegistry.setEnabled(enabled);
+        timer = MetricsRegistry.timer("benchmark.timer");
+        counter = MetricsRegistry.counter("benchmark.counter");
+        library = new Library("Benchmark Library", 10);
+        for (int i = 0; i < 10; i++) {
+            library.addBook("Title " + i, "Author", "ISBN-" + i);
+        }
+    }
+
+    @Benchmark
+    public void timer() {
+        timer.stop(timer.start());
+    }
+
+    @Benchmark
+    public void counter() {
+        counter.increment();
+    }
+
+    // Same counter hit from four threads at once; LongAdder spreads the updates
+    @Benchmark
+    @Threads(4)
+    public void counterContended() {
+        counter.increment();
+    }
+
+    @Benchmark
+    public boolean checkOutBook() {
+        boolean checkedOut = library.checkOutBook("ISBN-9");
+        library.returnBook("ISBN-9");
+        return checkedOut;
+    }
+}
@@ -0,0 +1,54 @@
+package inheritance;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Vehicle.calculateInsurance() from Inheritance.java over a fleet that mixes the
+// base class with all three overriding subclasses.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InheritanceBenchmark {
+    @Param({"16", "1024", "65536"})
+    int fleetSize;
+
+    Vehicle[] fleet;
+
+    @Setup
+    public void buildFleet() {
+        OutputSink.install(OutputSink.noOp());
+        fleet = new Vehicle[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            double price = 15_000 + (i % 50) * 1_000;
+            switch (i % 4) {
+                case 0: fleet[i] = new Vehicle("Generic", "Base", 2020, price); break;
+                case 1: fleet[i] = new Car("Toyota", "Camry", 2023, price, 4, "Gasoline"); break;
+                case 2: fleet[i] = new Motorcycle("Yamaha", "R1", 2023, price, 1000, i % 8 == 2); break;
+                default: fleet[i] = new ElectricCar("Tesla", "Model 3", 2023, price, 4, 75.0, 300); break;
+            }
+        }
+    }
+
+    @Benchmark
+    public double calculateInsurance() {
+        double total = 0;
+        for (Vehicle vehicle : fleet) {
+            total += vehicle.calculateInsurance();
+        }
+        return total;
+    }
+}
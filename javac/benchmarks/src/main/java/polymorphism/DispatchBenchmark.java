@@ -0,0 +1,133 @@
+package polymorphism;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Cost of the shape.calculateArea() and employee.calculateSalary() call sites as
+// the number of receiver types grows: one type (monomorphic), two (bimorphic,
+// still inlined by HotSpot behind a type check) and three (megamorphic, a real
+// virtual call). Each mix is summed three ways: the original classes from
+// Polymorphism.java, the sealed copies through the same virtual methods, and the
+// sealed copies through type-pattern dispatch. Types are shuffled within the
+// array so the order gives the branch predictor no help.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DispatchBenchmark {
+    @Param({"mono", "bi", "mega"})
+    String mix;
+
+    @Param({"1024", "65536"})
+    int size;
+
+    Shape[] shapes;
+    SealedShapes.Shape[] sealedShapes;
+    Employee[] employees;
+    SealedEmployees.Employee[] sealedEmployees;
+
+    @Setup
+    public void build() {
+        OutputSink.install(OutputSink.noOp());
+        int types = mix.equals("mono") ? 1 : mix.equals("bi") ? 2 : 3;
+        SplittableRandom random = new SplittableRandom(53L);
+        shapes = new Shape[size];
+        sealedShapes = new SealedShapes.Shape[size];
+        employees = new Employee[size];
+        sealedEmployees = new SealedEmployees.Employee[size];
+        for (int i = 0; i < size; i++) {
+            double a = 1 + random.nextDouble() * 10;
+            double b = 1 + random.nextDouble() * 10;
+            switch (random.nextInt(types)) {
+                case 0:
+                    shapes[i] = new Circle("Red", a);
+                    sealedShapes[i] = new SealedShapes.Circle("Red", a);
+                    employees[i] = new FullTimeEmployee("Employee " + i, i, a * 10_000, b * 500);
+                    sealedEmployees[i] = new SealedEmployees.FullTimeEmployee("Employee " + i, i, a * 10_000, b * 500);
+                    break;
+                case 1:
+                    shapes[i] = new Rectangle("Blue", a, b);
+                    sealedShapes[i] = new SealedShapes.Rectangle("Blue", a, b);
+                    employees[i] = new PartTimeEmployee("Employee " + i, i, (int) (a * 4), b * 5);
+                    sealedEmployees[i] = new SealedEmployees.PartTimeEmployee("Employee " + i, i, (int) (a * 4), b * 5);
+                    break;
+                default:
+                    // Sides a, a and b/4 + 1 always form a valid triangle
+                    double c = Math.min(b / 4 + 1, 2 * a - 0.01);
+                    shapes[i] = new Triangle("Green", a, a, c);
+                    sealedShapes[i] = new SealedShapes.Triangle("Green", a, a, c);
+                    employees[i] = new Contractor("Employee " + i, i, (int) a, b * 300);
+                    sealedEmployees[i] = new SealedEmployees.Contractor("Employee " + i, i, (int) a, b * 300);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public double areaVirtual() {
+        double total = 0;
+        for (Shape shape : shapes) {
+            total += shape.calculateArea();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double areaSealedVirtual() {
+        double total = 0;
+        for (SealedShapes.Shape shape : sealedShapes) {
+            total += shape.calculateArea();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double areaSealedPattern() {
+        double total = 0;
+        for (SealedShapes.Shape shape : sealedShapes) {
+            total += SealedShapes.area(shape);
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double salaryVirtual() {
+        double total = 0;
+        for (Employee employee : employees) {
+            total += employee.calculateSalary();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double salarySealedVirtual() {
+        double total = 0;
+        for (SealedEmployees.Employee employee : sealedEmployees) {
+            total += employee.calculateSalary();
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double salarySealedPattern() {
+        double total = 0;
+        for (SealedEmployees.Employee employee : sealedEmployees) {
+            total += SealedEmployees.salary(employee);
+        }
+        return total;
+    }
+}
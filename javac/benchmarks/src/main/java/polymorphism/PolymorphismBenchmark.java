@@ -0,0 +1,68 @@
+package polymorphism;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Polymorphism.calculateTotalArea and calculateTotalPayroll over mixed arrays of
+// Circle/Rectangle/Triangle and FullTimeEmployee/PartTimeEmployee/Contractor.
+// Both methods format the total for the (no-op) sink once per call, which
+// dominates at the smallest size.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PolymorphismBenchmark {
+    @Param({"16", "1024", "65536"})
+    int size;
+
+    Shape[] shapes;
+    Employee[] employees;
+
+    @Setup
+    public void build() {
+        OutputSink.install(OutputSink.noOp());
+        SplittableRandom random = new SplittableRandom(37L);
+        shapes = new Shape[size];
+        employees = new Employee[size];
+        for (int i = 0; i < size; i++) {
+            switch (i % 3) {
+                case 0:
+                    shapes[i] = new Circle("Red", 1 + random.nextDouble() * 10);
+                    employees[i] = new FullTimeEmployee("Employee " + i, i, 40_000 + random.nextInt(60_000), 5_000);
+                    break;
+                case 1:
+                    shapes[i] = new Rectangle("Blue", 1 + random.nextDouble() * 10, 1 + random.nextDouble() * 10);
+                    employees[i] = new PartTimeEmployee("Employee " + i, i, 10 + random.nextInt(30), 15 + random.nextDouble() * 20);
+                    break;
+                default:
+                    shapes[i] = new Triangle("Green", 3, 4, 5);
+                    employees[i] = new Contractor("Employee " + i, i, 1 + random.nextInt(10), 2_000 + random.nextDouble() * 3_000);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public void calculateTotalArea() {
+        Polymorphism.calculateTotalArea(shapes);
+    }
+
+    @Benchmark
+    public void calculateTotalPayroll() {
+        Polymorphism.calculateTotalPayroll(employees);
+    }
+}
@@ -0,0 +1,80 @@
+package polymorphism;
+
+// Sealed copy of the Employee hierarchy from Polymorphism.java, with
+// calculateSalary() available both as a virtual method and as type-pattern
+// dispatch in salary(). See SealedShapes for why.
+final class SealedEmployees {
+    private SealedEmployees() {
+    }
+
+    abstract static sealed class Employee permits FullTimeEmployee, PartTimeEmployee, Contractor {
+        protected final String name;
+        protected final int id;
+        protected final double baseSalary;
+
+        Employee(String name, int id, double baseSalary) {
+            this.name = name;
+            this.id = id;
+            this.baseSalary = baseSalary;
+        }
+
+        abstract double calculateSalary();
+    }
+
+    static final class FullTimeEmployee extends Employee {
+        final double benefits;
+
+        FullTimeEmployee(String name, int id, double baseSalary, double benefits) {
+            super(name, id, baseSalary);
+            this.benefits = benefits;
+        }
+
+        @Override
+        double calculateSalary() {
+            return baseSalary + benefits;
+        }
+    }
+
+    static final class PartTimeEmployee extends Employee {
+        final int hoursWorked;
+        final double hourlyRate;
+
+        PartTimeEmployee(String name, int id, int hoursWorked, double hourlyRate) {
+            super(name, id, 0);
+            this.hoursWorked = hoursWorked;
+            this.hourlyRate = hourlyRate;
+        }
+
+        @Override
+        double calculateSalary() {
+            return hoursWorked * hourlyRate;
+        }
+    }
+
+    static final class Contractor extends Employee {
+        final int projectsCompleted;
+        final double ratePerProject;
+
+        Contractor(String name, int id, int projectsCompleted, double ratePerProject) {
+            super(name, id, 0);
+            this.projectsCompleted = projectsCompleted;
+            this.ratePerProject = ratePerProject;
+        }
+
+        @Override
+        double calculateSalary() {
+            return projectsCompleted * ratePerProject;
+        }
+    }
+
+    static double salary(Employee employee) {
+        if (employee instanceof FullTimeEmployee f) {
+            return f.baseSalary + f.benefits;
+        } else if (employee instanceof PartTimeEmployee p) {
+            return p.hoursWorked * p.hourlyRate;
+        } else if (employee instanceof Contractor c) {
+            return c.projectsCompleted * c.ratePerProject;
+        }
+        throw new IllegalArgumentException("Unknown employee: " + employee);
+    }
+}
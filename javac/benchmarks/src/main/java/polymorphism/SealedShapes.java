@@ -0,0 +1,112 @@
+package polymorphism;
+
+// Sealed copy of the Shape hierarchy from Polymorphism.java.
+//
+// The compiler knows every subtype, so area() and perimeter() can dispatch with
+// type patterns instead of a virtual call. That keeps a call site over a mixed
+// array free of megamorphic virtual dispatch: the JIT sees a short chain of
+// exact type checks it can inline. The leaves still override calculateArea() and
+// calculatePerimeter() so virtual dispatch can be measured on the same objects.
+// The dispatch uses instanceof patterns; a pattern-matching switch would read
+// better but is still a preview feature on JDK 17.
+final class SealedShapes {
+    private SealedShapes() {
+    }
+
+    abstract static sealed class Shape permits Circle, Rectangle, Triangle {
+        protected final String color;
+
+        Shape(String color) {
+            this.color = color;
+        }
+
+        abstract double calculateArea();
+        abstract double calculatePerimeter();
+    }
+
+    static final class Circle extends Shape {
+        final double radius;
+
+        Circle(String color, double radius) {
+            super(color);
+            this.radius = radius;
+        }
+
+        @Override
+        double calculateArea() {
+            return Math.PI * radius * radius;
+        }
+
+        @Override
+        double calculatePerimeter() {
+            return 2 * Math.PI * radius;
+        }
+    }
+
+    static final class Rectangle extends Shape {
+        final double width;
+        final double height;
+
+        Rectangle(String color, double width, double height) {
+            super(color);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        double calculateArea() {
+            return width * height;
+        }
+
+        @Override
+        double calculatePerimeter() {
+            return 2 * (width + height);
+        }
+    }
+
+    static final class Triangle extends Shape {
+        final double side1, side2, side3;
+
+        Triangle(String color, double side1, double side2, double side3) {
+            super(color);
+            this.side1 = side1;
+            this.side2 = side2;
+            this.side3 = side3;
+        }
+
+        @Override
+        double calculateArea() {
+            // Using Heron's formula
+            double s = (side1 + side2 + side3) / 2;
+            return Math.sqrt(s * (s - side1) * (s - side2) * (s - side3));
+        }
+
+        @Override
+        double calculatePerimeter() {
+            return side1 + side2 + side3;
+        }
+    }
+
+    static double area(Shape shape) {
+        if (shape instanceof Circle c) {
+            return Math.PI * c.radius * c.radius;
+        } else if (shape instanceof Rectangle r) {
+            return r.width * r.height;
+        } else if (shape instanceof Triangle t) {
+            double s = (t.side1 + t.side2 + t.side3) / 2;
+            return Math.sqrt(s * (s - t.side1) * (s - t.side2) * (s - t.side3));
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+
+    static double perimeter(Shape shape) {
+        if (shape instanceof Circle c) {
+            return 2 * Math.PI * c.radius;
+        } else if (shape instanceof Rectangle r) {
+            return 2 * (r.width + r.height);
+        } else if (shape instanceof Triangle t) {
+            return t.side1 + t.side2 + t.side3;
+        }
+        throw new IllegalArgumentException("Unknown shape: " + shape);
+    }
+}